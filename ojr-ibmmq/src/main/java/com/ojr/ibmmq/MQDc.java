@@ -4,6 +4,7 @@ import com.ojr.core.AbstractDc;
 import com.ojr.core.DcUtil;
 import com.ojr.core.ResourceEnricher;
 import com.ojr.core.metric.RawMetric;
+import com.ojr.core.schedule.CycleContext;
 import com.ojr.ibmmq.mqclient.DataQuerier;
 import com.ojr.ibmmq.mqclient.MQClient;
 import com.ojr.ibmmq.mqclient.queriers.ChannelQuerier;
@@ -92,6 +93,10 @@ public class MQDc extends AbstractDc<MQDcConfig> {
         try {
             mqClient.connect();
             for (DataQuerier querier : queriers) {
+                if (CycleContext.current().isCancelled()) {
+                    // The connection was closed to abort the cycle, the remaining requests would fail
+                    break;
+                }
                 querier.collectData();
             }
         } catch (Exception e) {
@@ -7,6 +7,7 @@ import com.ibm.mq.constants.MQConstants;
 import com.ibm.mq.headers.MQDataException;
 import com.ibm.mq.headers.pcf.PCFMessage;
 import com.ibm.mq.headers.pcf.PCFMessageAgent;
+import com.ojr.core.schedule.CycleContext;
 import com.ojr.ibmmq.MQDc;
 import org.apache.commons.lang3.StringUtils;
 
@@ -86,12 +87,18 @@ public class MQClient {
     }
 
 
+    /**
+     * Sends a PCF request and waits for the responses. If the collection cycle is cancelled meanwhile, the connection
+     * is closed to abort the request; the next cycle connects again.
+     */
     public PCFMessage[] sendPcfMsg(PCFMessage request) throws IOException, MQDataException {
-        return pcfAgent.send(request);
+        try (CycleContext.Registration ignored = CycleContext.current().onCancel(this::disconnect)) {
+            return pcfAgent.send(request);
+        }
     }
 
     public PCFMessage sendPcfMsg1(PCFMessage request) throws IOException, MQDataException {
-        PCFMessage[] responses = pcfAgent.send(request);
+        PCFMessage[] responses = sendPcfMsg(request);
         if (responses.length > 0) {
             return responses[0];
         } else {
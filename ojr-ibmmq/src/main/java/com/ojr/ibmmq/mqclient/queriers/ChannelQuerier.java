@@ -32,6 +32,12 @@ public class ChannelQuerier implements DataQuerier {
     @Override
     public void collectData() {
         MQDc dc = mqClient.getMqDc();
+        // The requests are only sent if one of their metrics is due, see otel.metrics/<name>/poll.interval
+        boolean statusDue = dc.isMetricDue(CHANNEL_STATUS, CHANNEL_INDOUBT_STATUS, CHANNEL_BUFFERS_SENT, CHANNEL_BUFFERS_RECEIVED, CHANNEL_BYTES_SENT, CHANNEL_BYTES_RECEIVED);
+        boolean configDue = dc.isMetricDue(CHANNEL_TYPE);
+        if (!statusDue && !configDue) {
+            return;
+        }
         try {
             PCFMessage[] resps = mqClient.sendPcfMsg(inqChannelStatusReq);
             for (PCFMessage resp : resps) {
@@ -39,6 +45,12 @@ public class ChannelQuerier implements DataQuerier {
                     continue;
 
                 String chnName = PcfMsgUtil.getString(resp, CMQCFC.MQCACH_CHANNEL_NAME);
+                if (configDue) {
+                    collectChannelConfig(chnName);
+                }
+                if (!statusDue) {
+                    continue;
+                }
 
                 int status = PcfMsgUtil.getInt(resp, CMQCFC.MQIACH_CHANNEL_STATUS, -1);
                 dc.getRawMetric(CHANNEL_STATUS).setValue(getSimpleChannelMetricResult(chnName, status));
@@ -55,8 +67,6 @@ public class ChannelQuerier implements DataQuerier {
                 int bytesReceived = PcfMsgUtil.getInt(resp, CMQCFC.MQIACH_BYTES_RECEIVED, -1);
                 dc.getRawMetric(CHANNEL_BYTES_SENT).setValue(getSimpleChannelMetricResult(chnName, bytesSent));
                 dc.getRawMetric(CHANNEL_BYTES_RECEIVED).setValue(getSimpleChannelMetricResult(chnName, bytesReceived));
-
-                collectChannelConfig(chnName);
             }
         } catch (Exception e) {
             logger.log(Level.WARNING, "handleInqChannelsReq failed! " + e.getMessage());
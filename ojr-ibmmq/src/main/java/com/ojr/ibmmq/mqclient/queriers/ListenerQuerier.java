@@ -37,6 +37,10 @@ public class ListenerQuerier implements DataQuerier {
 
     @Override
     public void collectData() {
+        // The listeners are only inquired if one of their metrics is due, see otel.metrics/<name>/poll.interval
+        if (!mqClient.getMqDc().isMetricDue(LISTENER_STATUS, LISTENER_META)) {
+            return;
+        }
         Set<String> lsnAllNames = handleInqListenerReq();
         handleInqListenerStatusReq(lsnAllNames);
     }
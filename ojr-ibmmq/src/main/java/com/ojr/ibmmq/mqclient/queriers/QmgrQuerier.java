@@ -75,10 +75,18 @@ public class QmgrQuerier implements DataQuerier {
         }
     }
 
+    // A request is only sent if one of its metrics is due, see otel.metrics/<name>/poll.interval
     public void collectData() {
-        handleQmgrRequest();
-        handleQmgrStatusRequest();
-        handlePubsubStatusRequest();
+        MQDc dc = mqClient.getMqDc();
+        if (dc.isMetricDue(QMGR_META, QMGR_CMD_LEVEL, QMGR_MAX_HANDLES)) {
+            handleQmgrRequest();
+        }
+        if (dc.isMetricDue(QMGR_CONNECTION_COUNT, QMGR_STATUS, QMGR_CHINIT_STATUS, QMGR_START_TIME, QMGR_START_TIME_FORMATED)) {
+            handleQmgrStatusRequest();
+        }
+        if (dc.isMetricDue(QMGR_PUBSUB_STATUS)) {
+            handlePubsubStatusRequest();
+        }
     }
 
 }
@@ -3,6 +3,7 @@ package com.ojr.ibmmq.mqclient.queriers;
 import com.ibm.mq.constants.CMQC;
 import com.ibm.mq.constants.CMQCFC;
 import com.ibm.mq.headers.pcf.PCFMessage;
+import com.ojr.core.metric.MetricHandle;
 import com.ojr.ibmmq.MQDc;
 import com.ojr.ibmmq.mqclient.DataQuerier;
 import com.ojr.ibmmq.mqclient.MQClient;
@@ -21,8 +22,27 @@ public class QueueQuerier implements DataQuerier {
     private final MQClient mqClient;
     private final List<String> namePatterns;
 
+    // Handles of the per-queue metrics, so the rows of a large queue manager are recorded without name lookups
+    private final MetricHandle queueMeta;
+    private final MetricHandle queueDepth;
+    private final MetricHandle queueMaxDepth;
+    private final MetricHandle queueUncommitedMsg;
+    private final MetricHandle queueOpenInput;
+    private final MetricHandle queueOpenOutput;
+    private final MetricHandle queueEnqCount;
+    private final MetricHandle queueDeqCount;
+
     public QueueQuerier(MQClient mqClient, String queuesMonitored) {
         this.mqClient = mqClient;
+        MQDc dc = mqClient.getMqDc();
+        queueMeta = dc.getMetricHandle(QUEUE_META);
+        queueDepth = dc.getMetricHandle(QUEUE_DEPTH);
+        queueMaxDepth = dc.getMetricHandle(QUEUE_MAX_DEPTH);
+        queueUncommitedMsg = dc.getMetricHandle(QUEUE_UNCOMMITED_MSG);
+        queueOpenInput = dc.getMetricHandle(QUEUE_OPEN_INPUT);
+        queueOpenOutput = dc.getMetricHandle(QUEUE_OPEN_OUTPUT);
+        queueEnqCount = dc.getMetricHandle(QUEUE_ENQ_COUNT);
+        queueDeqCount = dc.getMetricHandle(QUEUE_DEQ_COUNT);
         String[] names = queuesMonitored.split("\\|");
         namePatterns = new ArrayList<>();
         for (String name : names) {
@@ -33,9 +53,23 @@ public class QueueQuerier implements DataQuerier {
         }
     }
 
+    // A request is only sent if one of its metrics is due, see otel.metrics/<name>/poll.interval. The due metrics are
+    // claimed once per cycle, not once per name pattern.
     public void collectData() {
+        MQDc dc = mqClient.getMqDc();
+        boolean queuesDue = dc.isMetricDue(QUEUE_META, QUEUE_DEPTH, QUEUE_MAX_DEPTH);
+        boolean statusDue = dc.isMetricDue(QUEUE_UNCOMMITED_MSG, QUEUE_OPEN_INPUT, QUEUE_OPEN_OUTPUT);
+        boolean statsDue = dc.isMetricDue(QUEUE_ENQ_COUNT, QUEUE_DEQ_COUNT);
         for (String namePattern : namePatterns) {
-            this.collectData(namePattern);
+            if (queuesDue) {
+                handleQueuesRequest(namePattern);
+            }
+            if (statusDue) {
+                handleQueuesStatusRequest(namePattern);
+            }
+            if (statsDue) {
+                handleQueuesResetStatsRequest(namePattern);
+            }
         }
     }
 
@@ -59,10 +93,10 @@ public class QueueQuerier implements DataQuerier {
                 String qType = PcfMsgUtil.getQueueType(PcfMsgUtil.getInt(resp, CMQC.MQIA_Q_TYPE, -1));
                 String qDelivery = PcfMsgUtil.getQueueDelivery(PcfMsgUtil.getInt(resp, CMQC.MQIA_MSG_DELIVERY_SEQUENCE, -1));
                 String qUsage = PcfMsgUtil.getQueueUsage(PcfMsgUtil.getInt(resp, CMQC.MQIA_USAGE, -1));
-                dc.getRawMetric(QUEUE_META).setValue(getQueueMetadataResult(qName, qType, qDelivery, qUsage));
+                dc.getRawMetric(queueMeta).setValue(getQueueMetadataResult(qName, qType, qDelivery, qUsage));
 
-                dc.getRawMetric(QUEUE_DEPTH).setValue(getSimpleQueueMetricResult(qName, PcfMsgUtil.getInt(resp, CMQC.MQIA_CURRENT_Q_DEPTH, -1)));
-                dc.getRawMetric(QUEUE_MAX_DEPTH).setValue(getSimpleQueueMetricResult(qName, PcfMsgUtil.getInt(resp, CMQC.MQIA_MAX_Q_DEPTH, -1)));
+                dc.getRawMetric(queueDepth).setValue(getSimpleQueueMetricResult(qName, PcfMsgUtil.getInt(resp, CMQC.MQIA_CURRENT_Q_DEPTH, -1)));
+                dc.getRawMetric(queueMaxDepth).setValue(getSimpleQueueMetricResult(qName, PcfMsgUtil.getInt(resp, CMQC.MQIA_MAX_Q_DEPTH, -1)));
             }
         } catch (Exception e) {
             logger.log(Level.SEVERE, "handleQueuesRequest() failed!", e);
@@ -80,9 +114,9 @@ public class QueueQuerier implements DataQuerier {
                     continue;
 
                 String qName = PcfMsgUtil.getString(resp, CMQC.MQCA_Q_NAME);
-                dc.getRawMetric(QUEUE_UNCOMMITED_MSG).setValue(getSimpleQueueMetricResult(qName, PcfMsgUtil.getInt(resp, CMQCFC.MQIACF_UNCOMMITTED_MSGS, -1)));
-                dc.getRawMetric(QUEUE_OPEN_INPUT).setValue(getSimpleQueueMetricResult(qName, PcfMsgUtil.getInt(resp, CMQC.MQIA_OPEN_INPUT_COUNT, -1)));
-                dc.getRawMetric(QUEUE_OPEN_OUTPUT).setValue(getSimpleQueueMetricResult(qName, PcfMsgUtil.getInt(resp, CMQC.MQIA_OPEN_OUTPUT_COUNT, -1)));
+                dc.getRawMetric(queueUncommitedMsg).setValue(getSimpleQueueMetricResult(qName, PcfMsgUtil.getInt(resp, CMQCFC.MQIACF_UNCOMMITTED_MSGS, -1)));
+                dc.getRawMetric(queueOpenInput).setValue(getSimpleQueueMetricResult(qName, PcfMsgUtil.getInt(resp, CMQC.MQIA_OPEN_INPUT_COUNT, -1)));
+                dc.getRawMetric(queueOpenOutput).setValue(getSimpleQueueMetricResult(qName, PcfMsgUtil.getInt(resp, CMQC.MQIA_OPEN_OUTPUT_COUNT, -1)));
             }
         } catch (Exception e) {
             logger.log(Level.SEVERE, "handleQueuesStatusRequest() failed!", e);
@@ -100,8 +134,8 @@ public class QueueQuerier implements DataQuerier {
                     continue;
 
                 String qName = PcfMsgUtil.getString(resp, CMQC.MQCA_Q_NAME);
-                dc.getRawMetric(QUEUE_ENQ_COUNT).setValue(getSimpleQueueMetricResult(qName, PcfMsgUtil.getInt(resp, CMQC.MQIA_MSG_ENQ_COUNT, -1)));
-                dc.getRawMetric(QUEUE_DEQ_COUNT).setValue(getSimpleQueueMetricResult(qName, PcfMsgUtil.getInt(resp, CMQC.MQIA_MSG_DEQ_COUNT, -1)));
+                dc.getRawMetric(queueEnqCount).setValue(getSimpleQueueMetricResult(qName, PcfMsgUtil.getInt(resp, CMQC.MQIA_MSG_ENQ_COUNT, -1)));
+                dc.getRawMetric(queueDeqCount).setValue(getSimpleQueueMetricResult(qName, PcfMsgUtil.getInt(resp, CMQC.MQIA_MSG_DEQ_COUNT, -1)));
             }
         } catch (Exception e) {
             logger.log(Level.SEVERE, "handleQueuesResetStatsRequest() failed!", e);
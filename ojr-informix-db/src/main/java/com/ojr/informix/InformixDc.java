@@ -4,6 +4,7 @@ import com.ojr.core.DcUtil;
 import com.ojr.core.ResourceEnricher;
 import com.ojr.core.metric.MetricCalculationMode;
 import com.ojr.core.metric.MetricQueryResult;
+import com.ojr.core.schedule.TaskGraph;
 import com.ojr.informix.metrics.MetricCollectionMode;
 import com.ojr.informix.metrics.MetricDataConfig;
 import com.ojr.informix.metrics.MetricsDataConfigRegister;
@@ -20,9 +21,6 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -43,8 +41,6 @@ public class InformixDc extends AbstractDbDc<DbDcConfig> {
     private String sequentialScanQuery;
     private String sequentialScanTableQuery;
     private String sqlElapsedTimeQuery;
-    private boolean customPollRateEnabled = true;
-    private ScheduledExecutorService executorService;
     private BasicDataSource dataSource;
     private MetricsDataQueryConfig metricDataQueryConfig;
 
@@ -174,42 +170,48 @@ public class InformixDc extends AbstractDbDc<DbDcConfig> {
     private void parseCustomPollRate(Map<String, Object> properties) {
         Map<String, Object> customInput = (Map<String, Object>) properties.get("custom.poll.interval");
         if (null == customInput || customInput.isEmpty()) {
-            customPollRateEnabled = false;
             logger.info("No custom polling interval fallback to default");
             return;
         }
 
-        executorService = Executors.newScheduledThreadPool(3);
-
         for (Map.Entry<String, Object> entry : customInput.entrySet()) {
             IntervalType type = getPollingInterval(entry.getKey());
+            if (type == null) {
+                continue;
+            }
             int pollInterval = (int) entry.getValue();
-            assert type != null;
             scheduleCustomPollRate(pollInterval, type);
         }
     }
 
 
     /**
-     * Util method to schedule custom Poll Rate based on the user Input
+     * Util method to schedule custom Poll Rate based on the user Input. Each tier becomes a poll group on the shared
+     * collection scheduler, and is no longer collected by collectData().
      *
      * @param pollInterval : Polling value
      * @param intervalType : Type of the Interval
      */
     private void scheduleCustomPollRate(int pollInterval, IntervalType intervalType) {
+        logger.info("Polling the " + intervalType.getGroupName() + " tier every " + pollInterval + "s");
+        registerPollGroup(intervalType.getGroupName(), pollInterval, getTierCollector(intervalType));
+    }
+
+    /**
+     * Util method to get the collector of a polling tier
+     *
+     * @param intervalType : Type of the Interval
+     * @return : Collector of the tier
+     */
+    private Runnable getTierCollector(IntervalType intervalType) {
         switch (intervalType) {
             case HIGH:
-                logger.info("Starting Long Polling Scheduler");
-                executorService.scheduleWithFixedDelay(this::longPollingInterval, 1, pollInterval, TimeUnit.SECONDS);
-                break;
+                return this::longPollingInterval;
             case MEDIUM:
-                logger.info("Starting Medium Polling Scheduler");
-                executorService.scheduleWithFixedDelay(this::mediumPollingInterval, 1, pollInterval, TimeUnit.SECONDS);
-                break;
+                return this::mediumPollingInterval;
             case LOW:
-                logger.info("Starting Low Polling Scheduler");
-                executorService.scheduleWithFixedDelay(this::shortPollingInterval, 1, pollInterval, TimeUnit.SECONDS);
-                break;
+            default:
+                return this::shortPollingInterval;
         }
     }
 
@@ -232,7 +234,12 @@ public class InformixDc extends AbstractDbDc<DbDcConfig> {
     }
 
     private enum IntervalType {
-        HIGH, MEDIUM, LOW
+        HIGH, MEDIUM, LOW;
+
+        // Name of the poll group, its interval can also be set under otel.poll.groups
+        String getGroupName() {
+            return name().toLowerCase();
+        }
     }
 
     /**
@@ -251,59 +258,92 @@ public class InformixDc extends AbstractDbDc<DbDcConfig> {
         return null;
     }
 
+    // The tiers query over connections of their own from the pool, so they run concurrently
     private void getallMetrics() {
-        longPollingInterval();
-        mediumPollingInterval();
-        shortPollingInterval();
+        TaskGraph graph = newTaskGraph();
+        for (IntervalType type : IntervalType.values()) {
+            if (!getPollGroups().containsKey(type.getGroupName())) {
+                graph.add(type.getGroupName(), getTierCollector(type)::run);
+            }
+        }
+        runTaskGraph(graph);
     }
 
-    @SuppressWarnings("unchecked")
     private void mediumPollingInterval() {
         if (sqlTraceEnabled) {
-            getRawMetric(DB_SQL_COUNT_NAME).setValue((Number) metricCollector.collectMetrics(DB_SQL_COUNT_NAME));
-            getRawMetric(DB_SQL_ELAPSED_TIME_NAME).setValue((List<MetricQueryResult>) metricCollector.collectMetrics(DB_SQL_ELAPSED_TIME_NAME));
+            collectIfDue(DB_SQL_COUNT_NAME);
+            collectIfDue(DB_SQL_ELAPSED_TIME_NAME);
         }
-        getRawMetric(DB_SQL_RATE_NAME).setValue((Number) metricCollector.collectMetrics(DB_SQL_RATE_NAME));
-        getRawMetric(DB_TRANSACTION_COUNT_NAME).setValue((Number) metricCollector.collectMetrics(DB_TRANSACTION_COUNT_NAME));
-        getRawMetric(DB_TRANSACTION_RATE_NAME).setValue((Number) metricCollector.collectMetrics(DB_TRANSACTION_COUNT_NAME));
+        collectIfDue(DB_SQL_RATE_NAME);
+        collectIfDue(DB_TRANSACTION_COUNT_NAME);
+        collectIfDue(DB_TRANSACTION_RATE_NAME, DB_TRANSACTION_COUNT_NAME);
     }
 
-    @SuppressWarnings("unchecked")
     private void shortPollingInterval() {
         getRawMetric(DbDcUtil.DB_STATUS_NAME).setValue(1);
-        getRawMetric(DB_INSTANCE_COUNT_NAME).setValue((Number) metricCollector.collectMetrics(DB_INSTANCE_COUNT_NAME));
-        getRawMetric(DB_INSTANCE_ACTIVE_COUNT_NAME).setValue((Number) metricCollector.collectMetrics(DB_INSTANCE_ACTIVE_COUNT_NAME));
-        getRawMetric(DB_LOCK_TABLE_OVERFLOW_NAME).setValue((Number) metricCollector.collectMetrics(DB_LOCK_TABLE_OVERFLOW_NAME));
-        getRawMetric(DB_TRANSACTION_OVERFLOW_NAME).setValue((Number) metricCollector.collectMetrics(DB_TRANSACTION_OVERFLOW_NAME));
-        getRawMetric(DB_USER_OVERFLOW_NAME).setValue((Number) metricCollector.collectMetrics(DB_USER_OVERFLOW_NAME));
-        getRawMetric(DB_SESSION_COUNT_NAME).setValue((Number) metricCollector.collectMetrics(DB_SESSION_COUNT_NAME));
-        getRawMetric(DB_SEQ_SCAN_NAME).setValue((List<MetricQueryResult>) metricCollector.collectMetrics(DB_SEQ_SCAN_NAME));
-        getRawMetric(DB_SEQ_SCAN_TABLE_NAME).setValue((Number) metricCollector.collectMetrics(DB_SEQ_SCAN_TABLE_NAME));
-        getRawMetric(DB_SESSION_ACTIVE_COUNT_NAME).setValue((Number) metricCollector.collectMetrics(DB_SESSION_ACTIVE_COUNT_NAME));
-        getRawMetric(DB_IO_READ_RATE_NAME).setValue((Number) metricCollector.collectMetrics(DB_IO_READ_RATE_NAME));
-        getRawMetric(DB_IO_WRITE_RATE_NAME).setValue((Number) metricCollector.collectMetrics(DB_IO_WRITE_RATE_NAME));
-        getRawMetric(DB_MEM_UTILIZATION_NAME).setValue((Number) metricCollector.collectMetrics(DB_MEM_UTILIZATION_NAME));
-        getRawMetric(DB_DISK_WRITE_COUNT_NAME).setValue((Number) metricCollector.collectMetrics(DB_DISK_WRITE_COUNT_NAME));
-        getRawMetric(DB_DISK_READ_COUNT_NAME).setValue((Number) metricCollector.collectMetrics(DB_DISK_READ_COUNT_NAME));
-        getRawMetric(DB_LOCK_WAITS_NAME).setValue((Number) metricCollector.collectMetrics(DB_LOCK_WAITS_NAME));
-        getRawMetric(DB_CACHE_READ_RATIO_NAME).setValue((Number) metricCollector.collectMetrics(DB_CACHE_READ_RATIO_NAME));
-        getRawMetric(DB_CACHE_WRITE_RATIO_NAME).setValue((Number) metricCollector.collectMetrics(DB_CACHE_WRITE_RATIO_NAME));
-        getRawMetric(DB_LRU_WRITES_NAME).setValue((Number) metricCollector.collectMetrics(DB_LRU_WRITES_NAME));
+        collectIfDue(DB_INSTANCE_COUNT_NAME);
+        collectIfDue(DB_INSTANCE_ACTIVE_COUNT_NAME);
+        collectIfDue(DB_LOCK_TABLE_OVERFLOW_NAME);
+        collectIfDue(DB_TRANSACTION_OVERFLOW_NAME);
+        collectIfDue(DB_USER_OVERFLOW_NAME);
+        collectIfDue(DB_SESSION_COUNT_NAME);
+        collectIfDue(DB_SEQ_SCAN_NAME);
+        collectIfDue(DB_SEQ_SCAN_TABLE_NAME);
+        collectIfDue(DB_SESSION_ACTIVE_COUNT_NAME);
+        collectIfDue(DB_IO_READ_RATE_NAME);
+        collectIfDue(DB_IO_WRITE_RATE_NAME);
+        collectIfDue(DB_MEM_UTILIZATION_NAME);
+        collectIfDue(DB_DISK_WRITE_COUNT_NAME);
+        collectIfDue(DB_DISK_READ_COUNT_NAME);
+        collectIfDue(DB_LOCK_WAITS_NAME);
+        collectIfDue(DB_CACHE_READ_RATIO_NAME);
+        collectIfDue(DB_CACHE_WRITE_RATIO_NAME);
+        collectIfDue(DB_LRU_WRITES_NAME);
     }
 
-    @SuppressWarnings("unchecked")
     private void longPollingInterval() {
         //TODO: A method to execute the query, store it in object, call that object in subsequent lines
-        metricDataQueryConfig.fetchQueryResults();
-        getRawMetric(DB_TABLESPACE_SIZE_NAME).setValue(metricDataQueryConfig.getResults(SemanticAttributes.TOTAL_KB.getKey()));
-        getRawMetric(DB_TABLESPACE_USED_NAME).setValue(metricDataQueryConfig.getResults(SemanticAttributes.USED_KB.getKey()));
-        getRawMetric(DB_TABLESPACE_UTILIZATION_NAME).setValue(metricDataQueryConfig.getResults(SemanticAttributes.TABLE_UTILIZATION.getKey()));
-        getRawMetric(DB_TABLESPACE_MAX_NAME).setValue(metricDataQueryConfig.getResults(SemanticAttributes.TOTAL_KB.getKey()));
-        getRawMetric(DB_DATABASE_LOG_ENABLED_NAME).setValue((List<MetricQueryResult>) metricCollector.collectMetrics(DB_DATABASE_LOG_ENABLED_NAME));
-        getRawMetric(DB_DATABASE_BUFF_LOG_ENABLED_NAME).setValue((List<MetricQueryResult>) metricCollector.collectMetrics(DB_DATABASE_BUFF_LOG_ENABLED_NAME));
-        getRawMetric(DB_DATABASE_ANSI_COMPLAINT_NAME).setValue((List<MetricQueryResult>) metricCollector.collectMetrics(DB_DATABASE_ANSI_COMPLAINT_NAME));
-        getRawMetric(DB_DATABASE_NLS_ENABLED_NAME).setValue((List<MetricQueryResult>) metricCollector.collectMetrics(DB_DATABASE_NLS_ENABLED_NAME));
-        getRawMetric(DB_DATABASE_CASE_INCENSITIVE_NAME).setValue((List<MetricQueryResult>) metricCollector.collectMetrics(DB_DATABASE_CASE_INCENSITIVE_NAME));
+        if (isMetricDue(DB_TABLESPACE_SIZE_NAME, DB_TABLESPACE_USED_NAME, DB_TABLESPACE_UTILIZATION_NAME, DB_TABLESPACE_MAX_NAME)) {
+            metricDataQueryConfig.fetchQueryResults();
+            getRawMetric(DB_TABLESPACE_SIZE_NAME).setValues(metricDataQueryConfig.getResults(SemanticAttributes.TOTAL_KB.getKey()));
+            getRawMetric(DB_TABLESPACE_USED_NAME).setValues(metricDataQueryConfig.getResults(SemanticAttributes.USED_KB.getKey()));
+            getRawMetric(DB_TABLESPACE_UTILIZATION_NAME).setValues(metricDataQueryConfig.getResults(SemanticAttributes.TABLE_UTILIZATION.getKey()));
+            getRawMetric(DB_TABLESPACE_MAX_NAME).setValues(metricDataQueryConfig.getResults(SemanticAttributes.TOTAL_KB.getKey()));
+        }
+        collectIfDue(DB_DATABASE_LOG_ENABLED_NAME);
+        collectIfDue(DB_DATABASE_BUFF_LOG_ENABLED_NAME);
+        collectIfDue(DB_DATABASE_ANSI_COMPLAINT_NAME);
+        collectIfDue(DB_DATABASE_NLS_ENABLED_NAME);
+        collectIfDue(DB_DATABASE_CASE_INCENSITIVE_NAME);
+    }
+
+    /**
+     * Util method to collect a metric if it is due in this cycle. A metric with its own polling interval
+     * (otel.metrics/&lt;name&gt;/poll.interval) is not queried in between, and keeps its last value.
+     *
+     * @param name : Name of the metric
+     */
+    private void collectIfDue(String name) {
+        collectIfDue(name, name);
+    }
+
+    /**
+     * Util method to collect a metric if it is due in this cycle
+     *
+     * @param name   : Name of the metric
+     * @param source : Name of the metric whose query or command provides the value
+     */
+    @SuppressWarnings("unchecked")
+    private void collectIfDue(String name, String source) {
+        if (!isMetricDue(name)) {
+            return;
+        }
+        Object value = metricCollector.collectMetrics(source);
+        if (value instanceof List) {
+            getRawMetric(name).setValue((List<MetricQueryResult>) value);
+        } else {
+            getRawMetric(name).setValue((Number) value);
+        }
     }
 
 }
@@ -1,18 +1,21 @@
 package com.ojr.informix.metrics;
 
-import com.ojr.core.metric.MetricQueryResult;
+import com.ojr.core.metric.MetricColumns;
+import com.ojr.core.schedule.CycleContext;
 import org.apache.commons.dbcp2.BasicDataSource;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * A query whose result set feeds several metrics: the second column is the name attribute of every row, each other
+ * column holds the values of one metric. The rows are collected in columnar form, see {@link MetricColumns}.
+ */
 public class MetricsDataQueryConfig {
     private static final Logger logger = Logger.getLogger(MetricsDataQueryConfig.class.getName());
 
@@ -24,7 +27,7 @@ public class MetricsDataQueryConfig {
     private ResultSet rs;
     private final String[] attr;
 
-    private final HashMap<String, List<MetricQueryResult>> results;
+    private final HashMap<String, MetricColumns> results; // Rows of the latest fetch, by value column
 
 
     public MetricsDataQueryConfig(String query, Class<?> returnType, BasicDataSource dataSource, String... attr) {
@@ -34,17 +37,25 @@ public class MetricsDataQueryConfig {
         this.dataSource = dataSource;
         this.results = new HashMap<>();
         for (int attrIndex = 0;attrIndex<attr.length;attrIndex++) {
-            this.results.put(this.attr[attrIndex],new ArrayList<>());
+            if (attrIndex != 1) {
+                this.results.put(this.attr[attrIndex], new MetricColumns(this.attr[1]));
+            }
         }
     }
 
     public void fetchQueryResults() {
-        try (Connection connection = this.dataSource.getConnection()) {
+        // The statement is cancelled if the collection cycle exceeds its deadline
+        try (Connection connection = this.dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             CycleContext.Registration ignored = CycleContext.current().onCancel(statement::cancel)) {
 
-            ResultSet rs = executeQuery(connection, this.query);
+            ResultSet rs = statement.executeQuery(this.query);
             if (rs.isClosed()) {
                 logger.severe("getMetricWithSql: ResultSet is closed");
             }
+            for (MetricColumns columns : this.results.values()) {
+                columns.clear();
+            }
             while (rs.next()) {
                 Object obj = rs.getObject(2);
                 if (obj == null) {
@@ -57,12 +68,18 @@ public class MetricsDataQueryConfig {
                     if(attrIndex == 1) {
                         continue;
                     }
-                    MetricQueryResult result = new MetricQueryResult((Number) rs.getObject(attrIndex+1));
-                    result.setAttribute(this.attr[1], obj);
-                    result.setKey(obj.toString());
-                    List<MetricQueryResult> ls = this.results.get(this.attr[attrIndex]);
-                    ls.add(result);
-                    this.results.put(this.attr[attrIndex],ls);
+                    Object value = rs.getObject(attrIndex+1);
+                    if (!(value instanceof Number)) {
+                        continue;
+                    }
+                    MetricColumns columns = this.results.get(this.attr[attrIndex]);
+                    int row;
+                    if (value instanceof Integer || value instanceof Long || value instanceof Short) {
+                        row = columns.addRow(obj.toString(), ((Number) value).longValue());
+                    } else {
+                        row = columns.addRow(obj.toString(), ((Number) value).doubleValue());
+                    }
+                    columns.setAttribute(row, 0, obj);
                 }
             }
         }
@@ -93,7 +110,13 @@ public class MetricsDataQueryConfig {
         return returnType;
     }
 
-    public List<MetricQueryResult> getResults(String key) {
+    /**
+     * Returns the rows of a value column fetched by the latest {@link #fetchQueryResults()}.
+     *
+     * @param key Name of the value column
+     * @return The rows, recorded with {@code RawMetric.setValues(MetricColumns)}
+     */
+    public MetricColumns getResults(String key) {
         return this.results.get(key);
     }
 }
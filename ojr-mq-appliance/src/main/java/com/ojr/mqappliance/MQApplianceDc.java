@@ -12,9 +12,6 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import static com.ojr.core.metric.MetricInstrumentType.GAUGE;
@@ -116,7 +113,7 @@ public class MQApplianceDc extends AbstractHostDc<HostDcConfig> {
             process = processBuilder.start();
             bufferedReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
             addShutdownHook();
-            exec.scheduleWithFixedDelay(this::collectData, 1, getPollInterval(), TimeUnit.SECONDS);
+            super.start();
         } catch (IOException e) {
             logger.severe("Cannot start the data collector: " + e.getMessage());
         }
@@ -137,11 +134,6 @@ public class MQApplianceDc extends AbstractHostDc<HostDcConfig> {
         if (process != null) {
             process.destroy();
         }
-        if (!exec.isShutdown()) {
-            exec.shutdownNow();
-        }
     }
 
-    private final ScheduledExecutorService exec = Executors.newSingleThreadScheduledExecutor();
-
 }
@@ -1,9 +1,27 @@
 package com.ojr.core;
 
+import com.ojr.core.metric.GenerationClock;
+import com.ojr.core.metric.MetricAggregation;
+import com.ojr.core.metric.MetricCalculationMode;
+import com.ojr.core.metric.MetricHandle;
+import com.ojr.core.metric.MetricInstrumentType;
 import com.ojr.core.metric.OjrPrometheusHttpServer;
 import com.ojr.core.metric.RawMetric;
+import com.ojr.core.metric.SeriesBudget;
+import com.ojr.core.metric.SeriesLimiter;
+import com.ojr.core.metric.SeriesPriority;
 import com.ojr.core.resources.ContainerResource;
+import com.ojr.core.schedule.AdaptiveInterval;
+import com.ojr.core.schedule.AlignedScheduledExecutor;
+import com.ojr.core.schedule.AsyncCycle;
+import com.ojr.core.schedule.CollectionScheduler;
+import com.ojr.core.schedule.CollectionTask;
+import com.ojr.core.schedule.CycleContext;
+import com.ojr.core.schedule.OverrunPolicy;
+import com.ojr.core.schedule.PollGroup;
+import com.ojr.core.schedule.TaskGraph;
 import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.api.metrics.Meter;
 import io.opentelemetry.exporter.otlp.http.logs.OtlpHttpLogRecordExporter;
@@ -25,10 +43,14 @@ import io.opentelemetry.sdk.common.export.MemoryMode;
 import io.opentelemetry.sdk.logs.SdkLoggerProvider;
 import io.opentelemetry.sdk.logs.export.BatchLogRecordProcessor;
 import io.opentelemetry.sdk.logs.export.LogRecordExporter;
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentSelector;
 import io.opentelemetry.sdk.metrics.SdkMeterProvider;
 import io.opentelemetry.sdk.metrics.SdkMeterProviderBuilder;
+import io.opentelemetry.sdk.metrics.View;
 import io.opentelemetry.sdk.metrics.export.MetricExporter;
 import io.opentelemetry.sdk.metrics.export.PeriodicMetricReader;
+import io.opentelemetry.sdk.metrics.export.PeriodicMetricReaderBuilder;
 import io.opentelemetry.sdk.resources.Resource;
 import io.opentelemetry.sdk.trace.SdkTracerProvider;
 import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
@@ -43,14 +65,19 @@ import io.opentelemetry.semconv.incubating.ServiceIncubatingAttributes;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
+import java.util.logging.Logger;
 
 import static com.ojr.core.DcUtil.getCert;
 
@@ -58,12 +85,32 @@ import static com.ojr.core.DcUtil.getCert;
  * Abstract base class for Data Collectors (DCs) that provides common functionality.
  */
 public abstract class AbstractDc<Cfg extends BasicDcConfig> implements IDc<Cfg> {
+    private static final Logger logger = Logger.getLogger(AbstractDc.class.getName());
+
     // Thread-safe map to store meters
     private final Map<String, Meter> meters = new ConcurrentHashMap<>();
     // Map to store raw metrics
     private final Map<String, RawMetric> rawMetricsMap = new ConcurrentHashMap<>();
+    // Handles of the raw metrics by name, and the raw metrics by the index of their handle
+    private final Map<String, MetricHandle> metricHandles = new ConcurrentHashMap<>();
+    private volatile RawMetric[] metricsByIndex = new RawMetric[0];
+    // Map to store poll groups
+    private final Map<String, PollGroup> pollGroups = new ConcurrentHashMap<>();
+    private Map<String, Object> pollGroupIntervals = null;
 
     private int pollInterval = DcUtil.DEFAULT_OTEL_POLL_INTERVAL;
+    private int pollJitter = DcUtil.DEFAULT_OTEL_POLL_JITTER;
+    private int pollTimeout = DcUtil.DEFAULT_OTEL_POLL_TIMEOUT;
+    private OverrunPolicy overrunPolicy = OverrunPolicy.of(DcUtil.DEFAULT_OTEL_POLL_OVERRUN, OverrunPolicy.DELAY);
+    private boolean pollAlign = DcUtil.DEFAULT_OTEL_POLL_ALIGN;
+    private boolean pollAdaptive = DcUtil.DEFAULT_OTEL_POLL_ADAPTIVE;
+    private int pollIntervalMin = 0;
+    private int pollIntervalMax = 0;
+    private int pollDutyCycle = DcUtil.DEFAULT_OTEL_POLL_DUTY_CYCLE;
+    private int pollConcurrency = DcUtil.DEFAULT_OTEL_POLL_CONCURRENCY;
+    // Durations of the collection tasks of the latest task graph, by task name
+    private volatile Map<String, Long> taskDurations = Collections.emptyMap();
+    private boolean pollFlush = DcUtil.DEFAULT_OTEL_POLL_FLUSH;
     private int callbackInterval = DcUtil.DEFAULT_OTEL_CALLBACK_INTERVAL;
 
     private String backendUrl = DcUtil.DEFAULT_OTEL_BACKEND_URL;
@@ -72,6 +119,13 @@ public abstract class AbstractDc<Cfg extends BasicDcConfig> implements IDc<Cfg>
     private int prometheusPort = DcUtil.DEFAULT_PROMETHEUS_PORT;
     private String prometheusHost = DcUtil.DEFAULT_PROMETHEUS_HOST;
     private String[] prometheusMetricRestrictions = null;
+    private boolean prometheusPull = DcUtil.DEFAULT_PROMETHEUS_PULL;
+    private int prometheusPullMinAge = DcUtil.DEFAULT_PROMETHEUS_PULL_MIN_AGE;
+
+    private int maxSeries = DcUtil.DEFAULT_OTEL_MAX_SERIES; // Maximal number of series of the instance, 0 for no limit
+    private int metricMaxSeries = DcUtil.DEFAULT_OTEL_METRIC_MAX_SERIES; // Default maximal number of series of a metric
+    private SeriesLimiter seriesLimiter = new SeriesLimiter(0);
+    private final GenerationClock generationClock = new GenerationClock(); // Publishes the updates of a cycle at its end
 
     private String[] metricRestrictions = null;
 
@@ -85,6 +139,15 @@ public abstract class AbstractDc<Cfg extends BasicDcConfig> implements IDc<Cfg>
     private Long pid = null;
     private String containerId = null;
 
+    public static final String TASK_DURATION_NAME = "ojr.collection.task.duration";
+    private static final AttributeKey<String> TASK_KEY = AttributeKey.stringKey("ojr.task");
+    public static final String SERIES_OVERFLOWED_NAME = "ojr.metric.series.overflowed";
+    public static final String SERIES_EVICTED_NAME = "ojr.metric.series.evicted";
+    public static final String EXPORT_SUPPRESSED_NAME = "ojr.metric.export.suppressed";
+    public static final String EXPORT_SUPPRESSED_BYTES_NAME = "ojr.metric.export.suppressed.bytes";
+    private static final AttributeKey<String> METRIC_KEY = AttributeKey.stringKey("ojr.metric");
+    private static final int MAX_EXPONENTIAL_SCALE = 20; // Initial scale of exponential histograms, the SDK default
+
     private static final String METRICS_SUFFIX = "/v1/metrics";
     private static final String TRACES_SUFFIX = "/v1/traces";
     private static final String LOGS_SUFFIX = "/v1/logs";
@@ -128,6 +191,250 @@ public abstract class AbstractDc<Cfg extends BasicDcConfig> implements IDc<Cfg>
         this.pollInterval = pollInterval;
     }
 
+    /**
+     * Registers a group of metrics collected by its own task at its own interval, on the same scheduler as
+     * collectData(). The interval can be overridden in the configuration under otel.poll.groups, e.g.
+     * <pre>
+     * otel.poll.groups:
+     *   catalog: 300
+     * </pre>
+     *
+     * @param name      Name of the group.
+     * @param interval  Default polling interval in seconds.
+     * @param collector Collects the metrics of the group.
+     */
+    public void registerPollGroup(String name, int interval, Runnable collector) {
+        pollGroups.put(name, new PollGroup(name, interval, collector));
+    }
+
+    /**
+     * Returns the registered poll groups.
+     *
+     * @return Map of poll groups by name.
+     */
+    public Map<String, PollGroup> getPollGroups() {
+        return pollGroups;
+    }
+
+    /**
+     * Checks if any of the given metrics is due to be polled in this cycle, and records the poll of the due ones.
+     * Metrics without their own polling interval (otel.metrics/poll.interval) are always due. Use it to skip
+     * expensive queries of slowly changing metrics, e.g. <code>if (isMetricDue(DB_VERSION_NAME)) {...}</code>.
+     *
+     * @param names Names of the metrics.
+     * @return True if at least one of the metrics is due, false otherwise.
+     */
+    public boolean isMetricDue(String... names) {
+        long now = System.currentTimeMillis();
+        boolean due = false;
+        for (String name : names) {
+            RawMetric rawMetric = rawMetricsMap.get(name);
+            if (rawMetric == null || rawMetric.claimPoll(now)) {
+                due = true;
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Returns the upper bound of the random jitter added to the first poll.
+     *
+     * @return The jitter in seconds.
+     */
+    public int getPollJitter() {
+        return pollJitter;
+    }
+
+    /**
+     * Sets the upper bound of the random jitter added to the first poll.
+     *
+     * @param pollJitter The jitter in seconds.
+     */
+    public void setPollJitter(int pollJitter) {
+        this.pollJitter = pollJitter;
+    }
+
+    /**
+     * Returns the deadline of a collection cycle. A cycle running longer is cancelled.
+     *
+     * @return The timeout in seconds, 0 for no deadline.
+     */
+    public int getPollTimeout() {
+        return pollTimeout;
+    }
+
+    /**
+     * Sets the deadline of a collection cycle.
+     *
+     * @param pollTimeout The timeout in seconds, 0 for no deadline.
+     */
+    public void setPollTimeout(int pollTimeout) {
+        this.pollTimeout = pollTimeout;
+    }
+
+    /**
+     * Returns what happens when a collection cycle is due while the previous one is still running.
+     *
+     * @return The overrun policy.
+     */
+    public OverrunPolicy getOverrunPolicy() {
+        return overrunPolicy;
+    }
+
+    /**
+     * Sets the overrun policy by name: delay, skip, coalesce or concurrent. Unknown names fall back to delay.
+     *
+     * @param overrunPolicy The name of the overrun policy.
+     */
+    public void setOverrunPolicy(String overrunPolicy) {
+        this.overrunPolicy = OverrunPolicy.of(overrunPolicy, OverrunPolicy.DELAY);
+    }
+
+    /**
+     * Checks if the collection is aligned to the export ticks.
+     *
+     * @return True if collection cycles finish just before each wall-clock aligned export, false otherwise.
+     */
+    public boolean isPollAlign() {
+        return pollAlign;
+    }
+
+    /**
+     * Sets if the collection is aligned to the export ticks. In aligned mode the cycles run every callback interval
+     * and the poll interval is not used.
+     *
+     * @param pollAlign True to align the collection, false otherwise.
+     */
+    public void setPollAlign(boolean pollAlign) {
+        this.pollAlign = pollAlign;
+    }
+
+    /**
+     * Checks if the poll interval adapts to the measured collection cost, see {@link AdaptiveInterval}.
+     *
+     * @return True if the poll interval is adaptive, false otherwise.
+     */
+    public boolean isPollAdaptive() {
+        return pollAdaptive;
+    }
+
+    public void setPollAdaptive(boolean pollAdaptive) {
+        this.pollAdaptive = pollAdaptive;
+    }
+
+    /**
+     * Returns the lower bound of the adaptive poll interval.
+     *
+     * @return The lower bound in seconds, the poll interval if not set.
+     */
+    public int getPollIntervalMin() {
+        return pollIntervalMin > 0 ? pollIntervalMin : pollInterval;
+    }
+
+    public void setPollIntervalMin(int pollIntervalMin) {
+        this.pollIntervalMin = pollIntervalMin;
+    }
+
+    /**
+     * Returns the upper bound of the adaptive poll interval.
+     *
+     * @return The upper bound in seconds, ten times the poll interval if not set.
+     */
+    public int getPollIntervalMax() {
+        return pollIntervalMax > 0 ? pollIntervalMax : 10 * pollInterval;
+    }
+
+    public void setPollIntervalMax(int pollIntervalMax) {
+        this.pollIntervalMax = pollIntervalMax;
+    }
+
+    /**
+     * Returns the maximal percentage of the adaptive poll interval spent collecting.
+     *
+     * @return The duty cycle in percent.
+     */
+    public int getPollDutyCycle() {
+        return pollDutyCycle;
+    }
+
+    public void setPollDutyCycle(int pollDutyCycle) {
+        this.pollDutyCycle = pollDutyCycle;
+    }
+
+    /**
+     * Returns the maximal number of collection tasks of a task graph running at the same time against the target.
+     *
+     * @return The concurrency.
+     */
+    public int getPollConcurrency() {
+        return pollConcurrency;
+    }
+
+    public void setPollConcurrency(int pollConcurrency) {
+        this.pollConcurrency = pollConcurrency;
+    }
+
+    /**
+     * Creates a task graph for independent collection tasks of one cycle, running on the collector executor of the
+     * scheduler with at most otel.poll.concurrency tasks at a time.
+     *
+     * @return a new TaskGraph instance
+     */
+    public TaskGraph newTaskGraph() {
+        return new TaskGraph(getCollectionScheduler().getCollectorExecutor(), pollConcurrency);
+    }
+
+    /**
+     * Runs a task graph until the deadline of the current cycle, records the durations of its tasks (exported as
+     * ojr.collection.task.duration, replacing those of the previous graph) and reports an error if a task failed.
+     *
+     * @param graph The task graph.
+     * @return True if all tasks succeeded, false otherwise.
+     */
+    public boolean runTaskGraph(TaskGraph graph) {
+        boolean succeeded = graph.run(CycleContext.current().getRemainingMillis());
+        taskDurations = Collections.unmodifiableMap(new HashMap<>(graph.getDurations()));
+        if (!succeeded) {
+            reportCollectionError();
+        }
+        return succeeded;
+    }
+
+    /**
+     * Returns the durations of the collection tasks of the latest task graph.
+     *
+     * @return Map of durations in milliseconds by task name.
+     */
+    public Map<String, Long> getTaskDurations() {
+        return taskDurations;
+    }
+
+    /**
+     * Reports an error of the monitored target in the running collection cycle, e.g. a failed query. Errors widen an
+     * adaptive poll interval.
+     */
+    public void reportCollectionError() {
+        CycleContext.current().reportError();
+    }
+
+    /**
+     * Checks if the meter provider is flushed right after each collection cycle.
+     *
+     * @return True if flushed, false otherwise.
+     */
+    public boolean isPollFlush() {
+        return pollFlush;
+    }
+
+    /**
+     * Sets if the meter provider is flushed right after each collection cycle, in addition to the periodic export.
+     *
+     * @param pollFlush True to flush after each cycle, false otherwise.
+     */
+    public void setPollFlush(boolean pollFlush) {
+        this.pollFlush = pollFlush;
+    }
+
     @Override
     public int getCallbackInterval() {
         return callbackInterval;
@@ -198,6 +505,93 @@ public abstract class AbstractDc<Cfg extends BasicDcConfig> implements IDc<Cfg>
         this.prometheusHost = prometheusHost;
     }
 
+    /**
+     * Checks if data is collected on demand when Prometheus scrapes. It is only effective if Prometheus is the only
+     * transport, since OTLP exports need timer driven collection.
+     *
+     * @return True if pull mode is enabled, false otherwise.
+     */
+    public boolean isPrometheusPull() {
+        return prometheusPull && DcUtil.PROMETHEUS.equals(transport);
+    }
+
+    public void setPrometheusPull(boolean prometheusPull) {
+        this.prometheusPull = prometheusPull;
+    }
+
+    /**
+     * Returns the age of collected data below which a scrape does not trigger another collection, so that several
+     * scrapers at the same moment cause only one round of load on the target.
+     *
+     * @return The minimal age in seconds.
+     */
+    public int getPrometheusPullMinAge() {
+        return prometheusPullMinAge;
+    }
+
+    public void setPrometheusPullMinAge(int prometheusPullMinAge) {
+        this.prometheusPullMinAge = prometheusPullMinAge;
+    }
+
+    public int getMaxSeries() {
+        return maxSeries;
+    }
+
+    public void setMaxSeries(int maxSeries) {
+        this.maxSeries = maxSeries;
+    }
+
+    public int getMetricMaxSeries() {
+        return metricMaxSeries;
+    }
+
+    public void setMetricMaxSeries(int metricMaxSeries) {
+        this.metricMaxSeries = metricMaxSeries;
+    }
+
+    public SeriesLimiter getSeriesLimiter() {
+        return seriesLimiter;
+    }
+
+    public GenerationClock getGenerationClock() {
+        return generationClock;
+    }
+
+    /**
+     * Returns the interval at which the metrics are actually polled: the callback interval when the collection is aligned
+     * to the export ticks, the upper bound of an adaptive interval, or the poll interval.
+     *
+     * @return The effective poll interval in seconds
+     */
+    public int getEffectivePollInterval() {
+        if (pollAlign) {
+            return callbackInterval;
+        }
+        return pollAdaptive ? getPollIntervalMax() : pollInterval;
+    }
+
+    /**
+     * Applies the defaults of the instance to all raw metrics. The series limit of the instance is shared by its
+     * metrics and takes its series from the budget of the agent; the limiter is attached only if the instance or the
+     * agent sets a limit. Each metric gets the default limit of a metric. A series not updated for two poll intervals
+     * may be evicted for a new one, and is purged after five effective poll intervals unless the metric sets its own
+     * outdated time. The updates of a collection cycle are read by exports only once the cycle has ended, see
+     * {@link GenerationClock}.
+     */
+    protected void applyMetricDefaults() {
+        SeriesBudget budget = getSeriesBudget();
+        seriesLimiter = new SeriesLimiter(maxSeries, budget);
+        SeriesLimiter limiter = maxSeries > 0 || budget.getMaxSeries() > 0 ? seriesLimiter : null;
+        long outdatedTime = 5000L * getEffectivePollInterval();
+        for (RawMetric rawMetric : rawMetricsMap.values()) {
+            rawMetric.setDefaultOutdatedTime(outdatedTime);
+            rawMetric.setSeriesLimiter(limiter);
+            rawMetric.setGenerationClock(generationClock);
+            rawMetric.setMaxSeries(metricMaxSeries);
+            rawMetric.setEvictAfter(2000L * Math.max(pollInterval, rawMetric.getPollInterval()));
+        }
+    }
+
     @Override
     public String[] getPrometheusMetricRestrictions() {
         return prometheusMetricRestrictions;
@@ -309,8 +703,44 @@ public abstract class AbstractDc<Cfg extends BasicDcConfig> implements IDc<Cfg>
     public void registerMetrics() {
         // Iterate through the raw metrics and register each one
         for (RawMetric rawMetric : rawMetricsMap.values()) {
+            if (rawMetric.getHeartbeat() > 0 && transport.contains(DcUtil.PROMETHEUS)) {
+                // Prometheus scrapes the latest collection, so an omitted series would be stale at once
+                logger.warning("Unchanged values are exported with Prometheus, " + DcUtil.METRIC_SUPPRESS_UNCHANGED + " is ignored for " + rawMetric.getName());
+                rawMetric.setHeartbeat(0);
+            }
             DcUtil.registerMetric(meters, rawMetric, this);
         }
+        refreshMetricHandles();
+        Meter defaultMeter = meters.get(DcUtil.DEFAULT);
+        if (defaultMeter != null) {
+            CollectionTask.registerMetrics(defaultMeter, this::getCollectionTask);
+            defaultMeter.gaugeBuilder(TASK_DURATION_NAME).ofLongs().setUnit("ms").setDescription("The duration of a collection task in the latest cycle")
+                    .buildWithCallback(measurement -> taskDurations.forEach((task, duration) -> measurement.record(duration, Attributes.of(TASK_KEY, task))));
+            defaultMeter.counterBuilder(SERIES_OVERFLOWED_NAME).setUnit("{row}").setDescription("The number of rows recorded into the overflow series of a metric because a series limit was reached")
+                    .buildWithCallback(measurement -> rawMetricsMap.forEach((name, rawMetric) -> {
+                        if (rawMetric.getOverflowedRows() > 0) {
+                            measurement.record(rawMetric.getOverflowedRows(), Attributes.of(METRIC_KEY, name));
+                        }
+                    }));
+            defaultMeter.counterBuilder(SERIES_EVICTED_NAME).setUnit("{series}").setDescription("The number of series of a metric evicted for new ones because a series limit was reached")
+                    .buildWithCallback(measurement -> rawMetricsMap.forEach((name, rawMetric) -> {
+                        if (rawMetric.getEvictedSeries() > 0) {
+                            measurement.record(rawMetric.getEvictedSeries(), Attributes.of(METRIC_KEY, name));
+                        }
+                    }));
+            defaultMeter.counterBuilder(EXPORT_SUPPRESSED_NAME).setUnit("{point}").setDescription("The number of unchanged data points of a metric left out of exports")
+                    .buildWithCallback(measurement -> rawMetricsMap.forEach((name, rawMetric) -> {
+                        if (rawMetric.getSuppressedPoints() > 0) {
+                            measurement.record(rawMetric.getSuppressedPoints(), Attributes.of(METRIC_KEY, name));
+                        }
+                    }));
+            defaultMeter.counterBuilder(EXPORT_SUPPRESSED_BYTES_NAME).setUnit("By").setDescription("The estimated OTLP payload size saved by leaving unchanged data points of a metric out of exports")
+                    .buildWithCallback(measurement -> rawMetricsMap.forEach((name, rawMetric) -> {
+                        if (rawMetric.getSuppressedBytes() > 0) {
+                            measurement.record(rawMetric.getSuppressedBytes(), Attributes.of(METRIC_KEY, name));
+                        }
+                    }));
+        }
     }
 
     @Override
@@ -328,7 +758,8 @@ public abstract class AbstractDc<Cfg extends BasicDcConfig> implements IDc<Cfg>
     }
 
     /**
-     * Retrieves a raw metric by its name.
+     * Retrieves a raw metric by its name. Collection cycles updating many rows should use a handle instead, see
+     * {@link #getMetricHandle(String)}.
      *
      * @param name Name of the raw metric
      * @return RawMetric object or null if not found
@@ -338,6 +769,58 @@ public abstract class AbstractDc<Cfg extends BasicDcConfig> implements IDc<Cfg>
         return rawMetricsMap.get(name);
     }
 
+    /**
+     * Retrieves a raw metric by its handle, with an array access.
+     *
+     * @param handle Handle of the raw metric, created by this Data Collector
+     * @return RawMetric object
+     */
+    public RawMetric getRawMetric(MetricHandle handle) {
+        return metricsByIndex[handle.getIndex()];
+    }
+
+    /**
+     * Returns the handle of a raw metric, creating it on the first call. Handles of all metrics of
+     * {@link #provideInitRawMetricsMap()} are created in {@link #initEnv}, so a Data Collector can keep them in fields
+     * and use {@link #getRawMetric(MetricHandle)} in its collection cycles.
+     *
+     * @param name Name of the raw metric
+     * @return MetricHandle, or null if there is no raw metric with the name
+     */
+    public MetricHandle getMetricHandle(String name) {
+        MetricHandle handle = metricHandles.get(name);
+        if (handle != null) {
+            return handle;
+        }
+        synchronized (metricHandles) {
+            handle = metricHandles.get(name);
+            RawMetric rawMetric = rawMetricsMap.get(name);
+            if (handle != null || rawMetric == null) {
+                return handle;
+            }
+            RawMetric[] metrics = Arrays.copyOf(metricsByIndex, metricsByIndex.length + 1);
+            handle = new MetricHandle(metrics.length - 1, rawMetric);
+            metrics[handle.getIndex()] = rawMetric;
+            metricsByIndex = metrics;
+            metricHandles.put(name, handle);
+            return handle;
+        }
+    }
+
+    // Points the handles to the current raw metrics, in case a raw metric was replaced in the map after initEnv
+    private void refreshMetricHandles() {
+        synchronized (metricHandles) {
+            RawMetric[] metrics = metricsByIndex.clone();
+            for (MetricHandle handle : metricHandles.values()) {
+                RawMetric rawMetric = rawMetricsMap.get(handle.getName());
+                if (rawMetric != null) {
+                    metrics[handle.getIndex()] = rawMetric;
+                }
+            }
+            metricsByIndex = metrics;
+        }
+    }
+
     /**
      * Returns the map of raw metrics.
      *
@@ -559,24 +1042,76 @@ public abstract class AbstractDc<Cfg extends BasicDcConfig> implements IDc<Cfg>
         byte[] cert = getCert();
 
         if (transport.contains(DcUtil.GRPC)) {
-            SdkMeterProviderBuilder builder = SdkMeterProvider.builder().setResource(resource).registerMetricReader(PeriodicMetricReader.builder(createOtlpGrpcMetricExporter(headers, cert)).setInterval(Duration.ofSeconds(callbackInterval)).build());
+            SdkMeterProviderBuilder builder = SdkMeterProvider.builder().setResource(resource).registerMetricReader(createPeriodicMetricReader(createOtlpGrpcMetricExporter(headers, cert)));
+            registerMetricViews(builder);
             if (transport.contains(DcUtil.PROMETHEUS)) {
                 initPrometheus(builder);
             }
             return builder.build();
         } else if (transport.contains(DcUtil.HTTP)) {
-            SdkMeterProviderBuilder builder = SdkMeterProvider.builder().setResource(resource).registerMetricReader(PeriodicMetricReader.builder(createOtlpHttpMetricExporter(headers, cert)).setInterval(Duration.ofSeconds(callbackInterval)).build());
+            SdkMeterProviderBuilder builder = SdkMeterProvider.builder().setResource(resource).registerMetricReader(createPeriodicMetricReader(createOtlpHttpMetricExporter(headers, cert)));
+            registerMetricViews(builder);
             if (transport.contains(DcUtil.PROMETHEUS)) {
                 initPrometheus(builder);
             }
             return builder.build();
         } else if (transport.contains(DcUtil.PROMETHEUS)) {
-            return initPrometheus(SdkMeterProvider.builder().setResource(resource)).build();
+            return initPrometheus(registerMetricViews(SdkMeterProvider.builder().setResource(resource))).build();
         } else {
             return SdkMeterProvider.builder().build();
         }
     }
 
+    /**
+     * Registers a view for every raw metric with an aggregation other than the default, see {@link MetricAggregation}.
+     *
+     * @param builder The builder of the meter provider.
+     * @return The builder.
+     */
+    public SdkMeterProviderBuilder registerMetricViews(SdkMeterProviderBuilder builder) {
+        for (RawMetric rawMetric : rawMetricsMap.values()) {
+            Aggregation aggregation;
+            switch (rawMetric.getAggregation()) {
+                case DROP:
+                    aggregation = Aggregation.drop();
+                    break;
+                case EXPLICIT:
+                case EXPONENTIAL:
+                    if (rawMetric.getInstrumentType() != MetricInstrumentType.HISTOGRAM) {
+                        logger.warning("Aggregation " + rawMetric.getAggregation() + " applies to histograms only, it is ignored for metric: " + rawMetric.getName());
+                        continue;
+                    }
+                    if (rawMetric.getAggregation() == MetricAggregation.EXPONENTIAL) {
+                        aggregation = Aggregation.base2ExponentialBucketHistogram(rawMetric.getMaxBuckets(), MAX_EXPONENTIAL_SCALE);
+                    } else {
+                        List<Double> boundaries = rawMetric.getBucketBoundaries();
+                        aggregation = boundaries == null ? Aggregation.explicitBucketHistogram() : Aggregation.explicitBucketHistogram(boundaries);
+                    }
+                    break;
+                default:
+                    continue;
+            }
+            builder.registerView(InstrumentSelector.builder().setName(rawMetric.getName()).setMeterName(rawMetric.getMeterName()).build(),
+                    View.builder().setAggregation(aggregation).build());
+        }
+        return builder;
+    }
+
+    /**
+     * Creates the periodic metric reader exporting at the callback interval. In aligned mode the exports happen at
+     * wall-clock multiples of the callback interval.
+     *
+     * @param exporter The metric exporter.
+     * @return The periodic metric reader.
+     */
+    public PeriodicMetricReader createPeriodicMetricReader(MetricExporter exporter) {
+        PeriodicMetricReaderBuilder builder = PeriodicMetricReader.builder(exporter).setInterval(Duration.ofSeconds(callbackInterval));
+        if (pollAlign) {
+            builder.setExecutor(new AlignedScheduledExecutor("ojr-aligned-export"));
+        }
+        return builder.build();
+    }
+
     /**
      * Returns the default SDK tracer provider configured with the given parameters.
      *
@@ -627,9 +1162,25 @@ public abstract class AbstractDc<Cfg extends BasicDcConfig> implements IDc<Cfg>
      * @param config     An instance of the Cfg class (not used in this method).
      */
     @Override
+    @SuppressWarnings("unchecked")
     public void readBuiltinParameters(Map<String, Object> properties, Cfg config) {
         setPollInterval((Integer) properties.getOrDefault(DcUtil.OTEL_POLLING_INTERVAL, DcUtil.DEFAULT_OTEL_POLL_INTERVAL));
+        setPollJitter((Integer) properties.getOrDefault(DcUtil.OTEL_POLLING_JITTER, DcUtil.DEFAULT_OTEL_POLL_JITTER));
+        setPollTimeout((Integer) properties.getOrDefault(DcUtil.OTEL_POLLING_TIMEOUT, DcUtil.DEFAULT_OTEL_POLL_TIMEOUT));
+        setOverrunPolicy((String) properties.getOrDefault(DcUtil.OTEL_POLLING_OVERRUN, DcUtil.DEFAULT_OTEL_POLL_OVERRUN));
+        setPollAlign((Boolean) properties.getOrDefault(DcUtil.OTEL_POLLING_ALIGN, DcUtil.DEFAULT_OTEL_POLL_ALIGN));
+        setPollFlush((Boolean) properties.getOrDefault(DcUtil.OTEL_POLLING_FLUSH, DcUtil.DEFAULT_OTEL_POLL_FLUSH));
+        setPollAdaptive((Boolean) properties.getOrDefault(DcUtil.OTEL_POLLING_ADAPTIVE, DcUtil.DEFAULT_OTEL_POLL_ADAPTIVE));
+        setPollIntervalMin((Integer) properties.getOrDefault(DcUtil.OTEL_POLLING_INTERVAL_MIN, 0));
+        setPollIntervalMax((Integer) properties.getOrDefault(DcUtil.OTEL_POLLING_INTERVAL_MAX, 0));
+        setPollDutyCycle((Integer) properties.getOrDefault(DcUtil.OTEL_POLLING_DUTY_CYCLE, DcUtil.DEFAULT_OTEL_POLL_DUTY_CYCLE));
+        setPollConcurrency((Integer) properties.getOrDefault(DcUtil.OTEL_POLLING_CONCURRENCY, DcUtil.DEFAULT_OTEL_POLL_CONCURRENCY));
         setCallbackInterval((Integer) properties.getOrDefault(DcUtil.OTEL_CALLBACK_INTERVAL, DcUtil.DEFAULT_OTEL_CALLBACK_INTERVAL));
+        pollGroupIntervals = (Map<String, Object>) properties.get(DcUtil.OTEL_POLLING_GROUPS);
+        setMaxSeries((Integer) properties.getOrDefault(DcUtil.OTEL_MAX_SERIES, DcUtil.DEFAULT_OTEL_MAX_SERIES));
+        setMetricMaxSeries((Integer) properties.getOrDefault(DcUtil.OTEL_METRIC_MAX_SERIES, DcUtil.DEFAULT_OTEL_METRIC_MAX_SERIES));
+        applyMetricDefaults();
+        readMetricParameters((Map<String, Object>) properties.get(DcUtil.OTEL_METRICS));
 
         setBackendUrl((String) properties.getOrDefault(DcUtil.OTEL_BACKEND_URL, DcUtil.DEFAULT_OTEL_BACKEND_URL));
         setTransport((String) properties.getOrDefault(DcUtil.OTEL_TRANSPORT, DcUtil.DEFAULT_OTEL_TRANSPORT));
@@ -639,6 +1190,8 @@ public abstract class AbstractDc<Cfg extends BasicDcConfig> implements IDc<Cfg>
         setPrometheusPort((Integer) properties.getOrDefault(DcUtil.PROMETHEUS_PORT, DcUtil.DEFAULT_PROMETHEUS_PORT));
         setPrometheusHost((String) properties.get(DcUtil.PROMETHEUS_HOST));
         setPrometheusMetricRestrictions((String) properties.get(DcUtil.PROMETHEUS_RESTRICTED_METRICS));
+        setPrometheusPull((Boolean) properties.getOrDefault(DcUtil.PROMETHEUS_PULL, DcUtil.DEFAULT_PROMETHEUS_PULL));
+        setPrometheusPullMinAge((Integer) properties.getOrDefault(DcUtil.PROMETHEUS_PULL_MIN_AGE, DcUtil.DEFAULT_PROMETHEUS_PULL_MIN_AGE));
 
         setServiceName((String) properties.getOrDefault(DcUtil.OTEL_SERVICE_NAME, DcUtil.DEFAULT_OTEL_SERVICE_NAME));
         setServiceInstanceId((String) properties.get(DcUtil.OTEL_SERVICE_INSTANCE_ID));
@@ -647,6 +1200,94 @@ public abstract class AbstractDc<Cfg extends BasicDcConfig> implements IDc<Cfg>
         setTransportDelay((Long) properties.getOrDefault(DcUtil.OTEL_TRANSPORT_DELAY, DcUtil.DEFAULT_OTEL_TRANSPORT_DELAY));
     }
 
+    /**
+     * Applies the per-metric settings configured under otel.metrics, e.g.
+     * <pre>
+     * otel.metrics:
+     *   db.version:
+     *     poll.interval: 3600
+     *     priority: high
+     *   db.sql.elapsed_time:
+     *     aggregation: exponential
+     * </pre>
+     *
+     * @param metricProperties A map of settings by metric name, may be null.
+     */
+    @SuppressWarnings("unchecked")
+    protected void readMetricParameters(Map<String, Object> metricProperties) {
+        if (metricProperties == null) {
+            return;
+        }
+        for (Map.Entry<String, Object> entry : metricProperties.entrySet()) {
+            RawMetric rawMetric = rawMetricsMap.get(entry.getKey());
+            if (rawMetric == null || !(entry.getValue() instanceof Map)) {
+                logger.warning("Unknown metric or invalid settings in " + DcUtil.OTEL_METRICS + ": " + entry.getKey());
+                continue;
+            }
+            Map<String, Object> settings = (Map<String, Object>) entry.getValue();
+            Object pollInterval = settings.get(DcUtil.METRIC_POLL_INTERVAL);
+            if (pollInterval instanceof Number) {
+                rawMetric.setPollInterval(((Number) pollInterval).intValue());
+            }
+            Object maxSeries = settings.get(DcUtil.METRIC_MAX_SERIES);
+            if (maxSeries instanceof Number) {
+                rawMetric.setMaxSeries(((Number) maxSeries).intValue());
+            }
+            if (Boolean.TRUE.equals(settings.get(DcUtil.METRIC_OFF_HEAP))) {
+                rawMetric.setOffHeap(true);
+            }
+            if (Boolean.TRUE.equals(settings.get(DcUtil.METRIC_SUPPRESS_UNCHANGED))) {
+                Object heartbeat = settings.get(DcUtil.METRIC_HEARTBEAT);
+                rawMetric.setHeartbeat(1000L * (heartbeat instanceof Number ? ((Number) heartbeat).longValue() : DcUtil.DEFAULT_METRIC_HEARTBEAT));
+            }
+            Object calculation = settings.get(DcUtil.METRIC_CALCULATION);
+            if (calculation != null) {
+                rawMetric.setCalculationMode(MetricCalculationMode.of(calculation.toString(), rawMetric.getCalculationMode()));
+            }
+            if (Boolean.TRUE.equals(settings.get(DcUtil.METRIC_WINDOW))) {
+                if (rawMetric.getCalculationMode() == MetricCalculationMode.DIRECT) {
+                    rawMetric.setWindowed(true);
+                } else {
+                    logger.warning("The values of calculation " + rawMetric.getCalculationMode() + " are calculated when they are read, " + DcUtil.METRIC_WINDOW + " is ignored for " + rawMetric.getName());
+                }
+            }
+            Object rateWindow = settings.get(DcUtil.METRIC_RATE_WINDOW);
+            if (rateWindow instanceof Number) {
+                rawMetric.setRateWindow(((Number) rateWindow).intValue());
+            }
+            Object ewmaAlpha = settings.get(DcUtil.METRIC_EWMA_ALPHA);
+            if (ewmaAlpha instanceof Number) {
+                rawMetric.setEwmaAlpha(((Number) ewmaAlpha).doubleValue());
+            }
+            Object counterBits = settings.get(DcUtil.METRIC_COUNTER_BITS);
+            if (counterBits instanceof Number) {
+                rawMetric.setCounterBits(((Number) counterBits).intValue());
+            }
+            Object aggregation = settings.get(DcUtil.METRIC_AGGREGATION);
+            if (aggregation != null) {
+                rawMetric.setAggregation(MetricAggregation.of(aggregation.toString(), rawMetric.getAggregation()));
+            }
+            Object buckets = settings.get(DcUtil.METRIC_BUCKETS);
+            if (buckets instanceof List) {
+                List<Double> boundaries = new ArrayList<>();
+                for (Object boundary : (List<Object>) buckets) {
+                    if (boundary instanceof Number) {
+                        boundaries.add(((Number) boundary).doubleValue());
+                    }
+                }
+                rawMetric.setDoubleBucketBoundaries(boundaries);
+            }
+            Object maxBuckets = settings.get(DcUtil.METRIC_MAX_BUCKETS);
+            if (maxBuckets instanceof Number) {
+                rawMetric.setMaxBuckets(((Number) maxBuckets).intValue());
+            }
+            Object priority = settings.get(DcUtil.METRIC_PRIORITY);
+            if (priority != null) {
+                rawMetric.setPriority(SeriesPriority.of(priority.toString(), rawMetric.getPriority()));
+            }
+        }
+    }
+
     /**
      * Run this initialization just one time for this Data Collector of whatever any number of instances. The default order
      * of execution is: readBuiltinParameters, readExtraParameters, initOnce, processParameters.
@@ -665,6 +1306,9 @@ public abstract class AbstractDc<Cfg extends BasicDcConfig> implements IDc<Cfg>
     @Override
     public void initEnv(Map<String, Object> properties, Cfg config) throws Exception {
         getRawMetricsMap().putAll(provideInitRawMetricsMap());
+        for (String name : getRawMetricsMap().keySet()) {
+            getMetricHandle(name);
+        }
         readBuiltinParameters(properties, config);
         readExtraParameters(properties, config);
         synchronized (once) {
@@ -748,7 +1392,10 @@ public abstract class AbstractDc<Cfg extends BasicDcConfig> implements IDc<Cfg>
         Resource resource = retrieveResourceAttributes();
         OpenTelemetrySdkBuilder builder = OpenTelemetrySdk.builder();
 
-        if (useMetrics) builder.setMeterProvider(getDefaultSdkMeterProvider(resource));
+        if (useMetrics) {
+            sdkMeterProvider = getDefaultSdkMeterProvider(resource);
+            builder.setMeterProvider(sdkMeterProvider);
+        }
 
         if (useTraces) builder.setTracerProvider(getDefaultSdkTraceProvider(resource));
 
@@ -762,25 +1409,151 @@ public abstract class AbstractDc<Cfg extends BasicDcConfig> implements IDc<Cfg>
         }
     }
 
-    private ScheduledExecutorService scheduler;
+    private CollectionScheduler collectionScheduler = null;
+    private SeriesBudget seriesBudget = null;
+    private CollectionTask collectionTask = null;
+    private SdkMeterProvider sdkMeterProvider = null;
+
+    /**
+     * Returns the meter provider created by initOTelEngine, or null if metrics are not enabled.
+     *
+     * @return a SdkMeterProvider instance
+     */
+    public SdkMeterProvider getSdkMeterProvider() {
+        return sdkMeterProvider;
+    }
+
+    /**
+     * Returns the scheduler which runs the collection cycles of this data collector. The process-wide default scheduler
+     * is used if no scheduler is assigned by the agent.
+     *
+     * @return a CollectionScheduler instance
+     */
+    @Override
+    public CollectionScheduler getCollectionScheduler() {
+        if (collectionScheduler == null) {
+            collectionScheduler = CollectionScheduler.getDefault();
+        }
+        return collectionScheduler;
+    }
+
+    @Override
+    public void setCollectionScheduler(CollectionScheduler collectionScheduler) {
+        this.collectionScheduler = collectionScheduler;
+    }
 
     /**
-     * Returns the scheduled executor service used for data collection process.
+     * Returns the budget of the series of all data collectors. The process-wide default budget, which has no limit, is
+     * used if no budget is assigned by the agent.
+     *
+     * @return a SeriesBudget instance
+     */
+    public SeriesBudget getSeriesBudget() {
+        if (seriesBudget == null) {
+            seriesBudget = SeriesBudget.getDefault();
+        }
+        return seriesBudget;
+    }
+
+    @Override
+    public void setSeriesBudget(SeriesBudget seriesBudget) {
+        this.seriesBudget = seriesBudget;
+    }
+
+    /**
+     * Returns the collection task of this data collector, or null if the data collector is not started.
+     *
+     * @return a CollectionTask instance
+     */
+    public CollectionTask getCollectionTask() {
+        return collectionTask;
+    }
+
+    /**
+     * Returns the scheduled executor service used for data collection process. The executor service is shared by all
+     * data collectors using the same CollectionScheduler.
      *
      * @return a ScheduledExecutorService instance
      */
+    @Override
     public ScheduledExecutorService getScheduledExecutorService() {
-        if (scheduler == null) {
-            scheduler = Executors.newSingleThreadScheduledExecutor();
-        }
-        return scheduler;
+        return getCollectionScheduler().getScheduledExecutorService();
     }
 
     /**
-     * Starts the data collection process.
+     * Starts the data collection process. The first cycle is delayed by a phase derived from the service instance ID
+     * (plus the optional jitter), so the instances of an agent are spread across the poll interval. A cycle running
+     * longer than the poll timeout is cancelled, see {@link CycleContext}.
+     * <p>
+     * In aligned mode the cycles run every callback interval and finish just before the wall-clock aligned exports.
+     * In Prometheus pull mode there is no timer; each scrape collects the data, see {@link CollectionTask#trigger(long)}.
+     * A cycle is the stage returned by {@link #collectDataAsync()}, so a non-blocking Data Collector holds no thread
+     * while it waits for its target.
      */
     @Override
     public void start() {
-        getScheduledExecutorService().scheduleWithFixedDelay(this::collectData, 1, pollInterval, TimeUnit.SECONDS);
+        // A cycle still running after its timeout (or five poll intervals without timeout) no longer holds back exports
+        generationClock.setMaxAge(pollTimeout > 0 ? TimeUnit.SECONDS.toMillis(pollTimeout) : 5000L * getEffectivePollInterval());
+        AsyncCycle collect = () -> {
+            seriesLimiter.nextCycle();
+            return inGeneration(this::collectDataAsync);
+        };
+        AsyncCycle cycle = pollFlush ? () -> collect.start().thenRun(this::flushMeterProvider) : collect;
+        if (isPrometheusPull()) {
+            CollectionTask task = getCollectionScheduler().createOnDemand(serviceInstanceId, collect, pollTimeout, TimeUnit.SECONDS);
+            long minAge = TimeUnit.SECONDS.toMillis(prometheusPullMinAge);
+            createPrometheusHttpServerIfNotExist().getmReader().registerScrapeHook(() -> task.trigger(minAge));
+            collectionTask = task;
+        } else if (pollAlign) {
+            if (pollInterval != callbackInterval) {
+                logger.info("Collection is aligned to the export ticks, the poll interval of " + callbackInterval + "s (callback interval) is used");
+            }
+            collectionTask = getCollectionScheduler().scheduleAligned(serviceInstanceId, cycle, callbackInterval, pollTimeout, overrunPolicy, TimeUnit.SECONDS);
+        } else {
+            collectionTask = getCollectionScheduler().scheduleStaggered(serviceInstanceId, cycle, pollInterval, pollJitter, pollTimeout, overrunPolicy, TimeUnit.SECONDS);
+            if (pollAdaptive) {
+                collectionTask.setAdaptiveInterval(new AdaptiveInterval(TimeUnit.SECONDS.toMillis(getPollIntervalMin()), TimeUnit.SECONDS.toMillis(getPollIntervalMax()), pollDutyCycle));
+            }
+        }
+        startPollGroups();
+    }
+
+    private void startPollGroups() {
+        for (PollGroup group : pollGroups.values()) {
+            if (pollGroupIntervals != null && pollGroupIntervals.get(group.getName()) instanceof Number) {
+                group.setInterval(((Number) pollGroupIntervals.get(group.getName())).intValue());
+            }
+            String groupId = (serviceInstanceId == null ? "" : serviceInstanceId) + '/' + group.getName();
+            AsyncCycle collect = () -> inGeneration(AsyncCycle.of(group.getCollector()));
+            group.setTask(getCollectionScheduler().scheduleStaggered(groupId, collect, group.getInterval(), pollJitter, pollTimeout, overrunPolicy, TimeUnit.SECONDS));
+        }
+    }
+
+    // Runs a cycle in a generation of its own, published when the cycle ends, see GenerationClock
+    private CompletionStage<Void> inGeneration(AsyncCycle cycle) {
+        long generation = generationClock.begin();
+        CycleContext context = CycleContext.current();
+        context.setGeneration(generation);
+        // A cancelled cycle may never complete, its updates are published anyway
+        context.onCancel(() -> generationClock.publish(generation));
+        CompletionStage<Void> stage;
+        try {
+            stage = cycle.start();
+        } catch (RuntimeException | Error e) {
+            generationClock.publish(generation);
+            throw e;
+        }
+        if (stage == null) {
+            generationClock.publish(generation);
+            return null;
+        }
+        return stage.whenComplete((v, t) -> generationClock.publish(generation));
+    }
+
+    private void flushMeterProvider() {
+        SdkMeterProvider provider = sdkMeterProvider;
+        if (provider != null) {
+            provider.forceFlush();
+        }
     }
-}
\ No newline at end of file
+}
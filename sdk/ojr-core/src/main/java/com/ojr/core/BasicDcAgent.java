@@ -2,6 +2,14 @@ package com.ojr.core;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.ojr.core.metric.SeriesBudget;
+import com.ojr.core.schedule.CollectionScheduler;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.semconv.ServiceAttributes;
+import io.opentelemetry.semconv.TelemetryAttributes;
+import io.opentelemetry.semconv.incubating.ProcessIncubatingAttributes;
 
 import java.io.File;
 import java.io.IOException;
@@ -65,6 +73,12 @@ public class BasicDcAgent<Cfg extends BasicDcConfig, Dc extends IDc<Cfg>> {
 
     private List<Dc> dcs;
 
+    private CollectionScheduler collectionScheduler;
+
+    private SeriesBudget seriesBudget;
+
+    private SdkMeterProvider agentMeterProvider;
+
     /**
      * Returns the list of the configured data collector instances.
      *
@@ -74,6 +88,44 @@ public class BasicDcAgent<Cfg extends BasicDcConfig, Dc extends IDc<Cfg>> {
         return dcs;
     }
 
+    /**
+     * Returns the scheduler shared by all data collector instances of this agent.
+     *
+     * @return the CollectionScheduler of the agent.
+     */
+    public CollectionScheduler getCollectionScheduler() {
+        return collectionScheduler;
+    }
+
+    /**
+     * Returns the budget of the series of all data collector instances of this agent.
+     *
+     * @return the SeriesBudget of the agent.
+     */
+    public SeriesBudget getSeriesBudget() {
+        return seriesBudget;
+    }
+
+    /**
+     * Returns the meter provider of the agent-wide metrics, e.g. of the shared scheduler and the series budget.
+     *
+     * @return the SdkMeterProvider of the agent, or null if the OpenTelemetry engine is not initialized.
+     */
+    public SdkMeterProvider getAgentMeterProvider() {
+        return agentMeterProvider;
+    }
+
+    /**
+     * Returns the resource of the agent-wide metrics. It describes the agent process rather than one of its instances.
+     *
+     * @return the Resource of the agent.
+     */
+    public Resource retrieveAgentResource() {
+        return Resource.create(Attributes.of(ServiceAttributes.SERVICE_NAME, DcUtil.DEFAULT_OTEL_SERVICE_NAME,
+                TelemetryAttributes.TELEMETRY_SDK_NAME, "ojr", TelemetryAttributes.TELEMETRY_SDK_LANGUAGE, "java",
+                TelemetryAttributes.TELEMETRY_SDK_VERSION, DcUtil.OCR_VERSION, ProcessIncubatingAttributes.PROCESS_PID, DcUtil.getPid()));
+    }
+
     /**
      * Reads a YAML configuration file and converts it into an object of the specified class.
      *
@@ -104,22 +156,40 @@ public class BasicDcAgent<Cfg extends BasicDcConfig, Dc extends IDc<Cfg>> {
     public void initEnv(Class<Cfg> cfgClass, Class<Dc> dcClass) throws Exception {
         Cfg cfg = readConfigYaml(cfgClass);
         processGlobalConfig(cfg);
+        Integer threads = cfg.getCollectorThreads();
+        String mode = cfg.getCollectorMode();
+        collectionScheduler = new CollectionScheduler(threads == null ? CollectionScheduler.DEFAULT_THREADS : threads,
+                mode == null ? CollectionScheduler.MODE_PLATFORM : mode);
+        Integer maxSeries = cfg.getMaxSeries();
+        Long maxSeriesBytes = cfg.getMaxSeriesBytes();
+        seriesBudget = new SeriesBudget(maxSeries == null ? 0 : maxSeries, maxSeriesBytes == null ? 0 : maxSeriesBytes);
         List<ConcurrentHashMap<String, Object>> instances = cfg.getInstances();
         dcs = new ArrayList<>(instances.size());
         for (Map<String, Object> props : instances) {
             Dc dc = dcClass.newInstance();
             dcs.add(dc);
+            dc.setCollectionScheduler(collectionScheduler);
+            dc.setSeriesBudget(seriesBudget);
             dc.initEnv(props, cfg);
         }
     }
 
     /**
-     * Initializes the OpenTelemetry engine for all data collectors.
+     * Initializes the OpenTelemetry engine for all data collectors. The agent-wide metrics of the scheduler and of the
+     * series budget are registered once, on a meter provider with the resource of the agent process. There are no
+     * agent-level exporter settings, so this meter provider uses the transport, endpoint, headers and callback interval
+     * of the first instance.
      */
     public void initOTelEngine() {
         for (Dc dc : dcs) {
             dc.initOTelEngine(true, false, false);
         }
+        if (!dcs.isEmpty()) {
+            // The agent-wide metrics follow the exporter settings of the first instance
+            agentMeterProvider = dcs.get(0).getDefaultSdkMeterProvider(retrieveAgentResource());
+            collectionScheduler.registerMetrics(agentMeterProvider.get(DcUtil.DEFAULT), 1000L * dcs.get(0).getCallbackInterval());
+            seriesBudget.registerMetrics(agentMeterProvider.get(DcUtil.DEFAULT));
+        }
     }
 
     /**
@@ -1,5 +1,7 @@
 package com.ojr.core;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
@@ -7,7 +9,38 @@ import java.util.concurrent.ConcurrentHashMap;
 public class BasicDcConfig {
     private final List<ConcurrentHashMap<String, Object>> instances = new ArrayList<>();
 
+    /* Agent related configuration:
+     */
+
+    @JsonProperty(DcUtil.AGENT_COLLECTOR_THREADS)
+    private Integer collectorThreads;
+
+    @JsonProperty(DcUtil.AGENT_COLLECTOR_MODE)
+    private String collectorMode;
+
+    @JsonProperty(DcUtil.AGENT_MAX_SERIES)
+    private Integer maxSeries;
+
+    @JsonProperty(DcUtil.AGENT_MAX_SERIES_BYTES)
+    private Long maxSeriesBytes;
+
     public List<ConcurrentHashMap<String, Object>> getInstances() {
         return instances;
     }
+
+    public Integer getCollectorThreads() {
+        return collectorThreads;
+    }
+
+    public String getCollectorMode() {
+        return collectorMode;
+    }
+
+    public Integer getMaxSeries() {
+        return maxSeries;
+    }
+
+    public Long getMaxSeriesBytes() {
+        return maxSeriesBytes;
+    }
 }
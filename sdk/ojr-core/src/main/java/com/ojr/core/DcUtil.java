@@ -1,6 +1,8 @@
 package com.ojr.core;
 
+import com.ojr.core.metric.MetricInstrumentType;
 import com.ojr.core.metric.RawMetric;
+import com.ojr.core.metric.SampleWindow;
 import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.api.common.AttributesBuilder;
@@ -12,6 +14,7 @@ import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -30,6 +33,45 @@ public class DcUtil {
      */
     public final static String OTEL_POLLING_INTERVAL = "otel.poll.interval"; // Polling interval in seconds
     public static final int DEFAULT_OTEL_POLL_INTERVAL = 25;  // Default polling interval in seconds
+    public final static String OTEL_POLLING_JITTER = "otel.poll.jitter"; // Upper bound of the random jitter of the first poll in seconds
+    public static final int DEFAULT_OTEL_POLL_JITTER = 0;  // Default jitter in seconds
+    public final static String OTEL_POLLING_TIMEOUT = "otel.poll.timeout"; // Deadline of a collection cycle in seconds
+    public static final int DEFAULT_OTEL_POLL_TIMEOUT = 0;  // Default deadline, 0 for no deadline
+    public final static String OTEL_POLLING_OVERRUN = "otel.poll.overrun"; // Overrun policy: delay, skip, coalesce or concurrent
+    public static final String DEFAULT_OTEL_POLL_OVERRUN = "delay";  // Default overrun policy
+    public final static String OTEL_POLLING_ALIGN = "otel.poll.align"; // Align collection to the export ticks
+    public static final boolean DEFAULT_OTEL_POLL_ALIGN = false;  // Default alignment
+    public final static String OTEL_POLLING_FLUSH = "otel.poll.flush"; // Flush the meter provider after each cycle
+    public static final boolean DEFAULT_OTEL_POLL_FLUSH = false;  // Default flush
+    public final static String OTEL_POLLING_ADAPTIVE = "otel.poll.adaptive"; // Adapt the polling interval to the collection cost
+    public static final boolean DEFAULT_OTEL_POLL_ADAPTIVE = false;  // Default adaptive polling
+    public final static String OTEL_POLLING_INTERVAL_MIN = "otel.poll.interval.min"; // Lower bound of the adaptive interval in seconds
+    public final static String OTEL_POLLING_INTERVAL_MAX = "otel.poll.interval.max"; // Upper bound of the adaptive interval in seconds
+    public final static String OTEL_POLLING_DUTY_CYCLE = "otel.poll.duty.cycle"; // Maximal percentage of the interval spent collecting
+    public static final int DEFAULT_OTEL_POLL_DUTY_CYCLE = 10;  // Default duty cycle in percent
+    public final static String OTEL_POLLING_CONCURRENCY = "otel.poll.concurrency"; // Maximal number of concurrent collection tasks per instance
+    public static final int DEFAULT_OTEL_POLL_CONCURRENCY = 4;  // Default concurrency of collection tasks
+    public final static String OTEL_POLLING_GROUPS = "otel.poll.groups"; // Polling intervals of metric groups in seconds, by group name
+    public final static String OTEL_METRICS = "otel.metrics"; // Per-metric settings, by metric name
+    public final static String METRIC_POLL_INTERVAL = "poll.interval"; // Polling interval of a metric in seconds (in otel.metrics)
+    public final static String METRIC_MAX_SERIES = "max.series"; // Maximal number of series of a metric (in otel.metrics)
+    public final static String METRIC_AGGREGATION = "aggregation"; // Aggregation of a metric: default, explicit, exponential or drop (in otel.metrics)
+    public final static String METRIC_BUCKETS = "buckets"; // Bucket boundaries of an explicit histogram (in otel.metrics)
+    public final static String METRIC_MAX_BUCKETS = "max.buckets"; // Maximal number of buckets of an exponential histogram (in otel.metrics)
+    public final static String METRIC_OFF_HEAP = "off.heap"; // Stores the series of a metric off the heap (in otel.metrics)
+    public final static String METRIC_WINDOW = "window"; // Exports the minimum, maximum, sum and count of a metric between exports (in otel.metrics)
+    public final static String METRIC_SUPPRESS_UNCHANGED = "suppress.unchanged"; // Leaves unchanged values of a metric out of exports (in otel.metrics)
+    public final static String METRIC_HEARTBEAT = "heartbeat"; // Interval in seconds to export an unchanged value again (in otel.metrics)
+    public final static int DEFAULT_METRIC_HEARTBEAT = 240; // Default heartbeat, below the 5 minutes after which Prometheus marks a series stale
+    public final static String METRIC_CALCULATION = "calculation"; // Calculation mode of a metric: direct, rate, counter_rate, window_rate, ewma or delta (in otel.metrics)
+    public final static String METRIC_RATE_WINDOW = "rate.window"; // Number of sample intervals of a window_rate (in otel.metrics)
+    public final static String METRIC_EWMA_ALPHA = "ewma.alpha"; // Weight of a new sample in an ewma, between 0 and 1 (in otel.metrics)
+    public final static String METRIC_COUNTER_BITS = "counter.bits"; // Width of the counter of a counter_rate or window_rate: 32 or 64 (in otel.metrics)
+    public final static String METRIC_PRIORITY = "priority"; // Priority of the series of a metric in the agent-wide budget: high, normal or low (in otel.metrics)
+    public final static String OTEL_MAX_SERIES = "otel.max.series"; // Maximal number of series of all metrics of an instance
+    public static final int DEFAULT_OTEL_MAX_SERIES = 0;  // Default limit of an instance, 0 for no limit
+    public final static String OTEL_METRIC_MAX_SERIES = "otel.metric.max.series"; // Default maximal number of series of a metric
+    public static final int DEFAULT_OTEL_METRIC_MAX_SERIES = 0;  // Default limit of a metric, 0 for no limit
     public final static String OTEL_CALLBACK_INTERVAL = "otel.callback.interval"; // Callback interval in seconds
     public static final int DEFAULT_OTEL_CALLBACK_INTERVAL = 30; // Default callback interval in seconds
 
@@ -46,6 +88,10 @@ public class DcUtil {
     public static final String PROMETHEUS_HOST = "prometheus.host";
     public static final String DEFAULT_PROMETHEUS_HOST = "0.0.0.0";
     public static final String PROMETHEUS_RESTRICTED_METRICS = "prometheus.restricted.metrics";
+    public static final String PROMETHEUS_PULL = "prometheus.pull"; // Collect data when Prometheus scrapes instead of on a timer
+    public static final boolean DEFAULT_PROMETHEUS_PULL = false;
+    public static final String PROMETHEUS_PULL_MIN_AGE = "prometheus.pull.min.age"; // Age of data in seconds below which a scrape does not collect again
+    public static final int DEFAULT_PROMETHEUS_PULL_MIN_AGE = 5;
 
     public static final String OTEL_RESTRICTED_METRICS = "otel.restricted.metrics";
 
@@ -58,6 +104,13 @@ public class DcUtil {
     public static final String OTEL_TRANSPORT_DELAY = "otel.transport.delay"; // transport delay (used for Batch processor) in milliseconds
     public static final long DEFAULT_OTEL_TRANSPORT_DELAY = 100L; // transport delay (used for Batch processor) in milliseconds
 
+    /* Configuration constants for the Agent:
+     */
+    public static final String AGENT_COLLECTOR_THREADS = "agent.collector.threads"; // Number of threads shared by all instances to collect data
+    public static final String AGENT_COLLECTOR_MODE = "agent.collector.mode"; // "platform" or "virtual" (Java 21+) threads to run collection cycles
+    public static final String AGENT_MAX_SERIES = "agent.max.series"; // Maximal number of series of all instances
+    public static final String AGENT_MAX_SERIES_BYTES = "agent.max.series.bytes"; // Maximal estimated heap of the series of all instances in bytes
+
     // Standard environment variables
     public static final String OTEL_RESOURCE_ATTRIBUTES = "OTEL_RESOURCE_ATTRIBUTES"; // Resource attributes for OpenTelemetry
     public static final String OTEL_EXPORTER_OTLP_HEADERS = "OTEL_EXPORTER_OTLP_HEADERS"; // Headers for OTLP exporter
@@ -159,6 +212,52 @@ public class DcUtil {
         return builder.build();
     }
 
+    /**
+     * Registers the gauges of the aggregates of a windowed metric (name.min, name.max, name.sum and name.count). They are
+     * observed in one batch. The windows end at most once per callback interval, at the periodic export; the collections
+     * in between, e.g. a forced flush or a second reader, read the same ended windows instead of draining them.
+     *
+     * @param meter     The meter.
+     * @param rawMetric The windowed raw metric.
+     * @param dc        The data collector.
+     */
+    private static void registerWindowMetrics(Meter meter, RawMetric rawMetric, IDc<?> dc) {
+        String name = rawMetric.getName();
+        ObservableDoubleMeasurement min = meter.gaugeBuilder(name + ".min").setUnit(rawMetric.getUnit()).setDescription("Minimum since the previous export: " + rawMetric.getDescription()).buildObserver();
+        ObservableDoubleMeasurement max = meter.gaugeBuilder(name + ".max").setUnit(rawMetric.getUnit()).setDescription("Maximum since the previous export: " + rawMetric.getDescription()).buildObserver();
+        ObservableDoubleMeasurement sum = meter.gaugeBuilder(name + ".sum").setUnit(rawMetric.getUnit()).setDescription("Sum of the values since the previous export: " + rawMetric.getDescription()).buildObserver();
+        ObservableLongMeasurement count = meter.gaugeBuilder(name + ".count").ofLongs().setUnit("{sample}").setDescription("Number of values since the previous export: " + rawMetric.getDescription()).buildObserver();
+        AtomicLong windowEnd = new AtomicLong(); // The time when the windows ended the last time
+        meter.batchCallback(() -> {
+            if (!dc.preRecordMetric(rawMetric)) {
+                return;
+            }
+            synchronized (windowEnd) {
+                long now = System.currentTimeMillis();
+                long interval = 1000L * dc.getCallbackInterval();
+                // Tolerate an export tick slightly early
+                boolean end = now - windowEnd.get() >= interval - interval / 20;
+                if (end) {
+                    windowEnd.set(now);
+                }
+                for (RawMetric.DataPoint dp : rawMetric.getDataPoints().values()) {
+                    if (end) {
+                        dp.endWindow();
+                    }
+                    SampleWindow window = dp.getExportedWindow();
+                    if (window == null || window.getCount() == 0) {
+                        continue;
+                    }
+                    Attributes attributes = dp.getOtelAttributes();
+                    min.record(window.getMin(), attributes);
+                    max.record(window.getMax(), attributes);
+                    sum.record(window.getSum(), attributes);
+                    count.record(window.getCount(), attributes);
+                }
+            }
+        }, min, max, sum, count);
+    }
+
     /**
      * Registers a metric with the given meter.
      *
@@ -170,24 +269,30 @@ public class DcUtil {
         Consumer<ObservableLongMeasurement> recordLongMetric = measurement -> {
             rawMetric.purgeOutdatedDps();
             if (dc.preRecordMetric(rawMetric)) {
-                for (Map.Entry<String, RawMetric.DataPoint> stringDataPointEntry : rawMetric.getDataPoints().entrySet()) {
-                    RawMetric.DataPoint dp = stringDataPointEntry.getValue();
-                    Long value = dp.getLongValue();
-                    if (value == null)
+                RawMetric.DataPoint.Sample sample = new RawMetric.DataPoint.Sample();
+                long now = System.currentTimeMillis();
+                for (RawMetric.DataPoint dp : rawMetric.getDataPoints().values()) {
+                    if (!dp.read(sample) || dp.suppress(sample, now))
                         continue;
-                    measurement.record(value, convertMapToAttributes(dp.getAttributes()));
+                    measurement.record(sample.getLongValue(), dp.getOtelAttributes());
+                }
+                if (rawMetric.isOffHeap()) {
+                    rawMetric.forEachOffHeapSample(sample, (value, attributes) -> measurement.record(value.getLongValue(), attributes));
                 }
             }
         };
         Consumer<ObservableDoubleMeasurement> recordDoubleMetric = measurement -> {
             rawMetric.purgeOutdatedDps();
             if (dc.preRecordMetric(rawMetric)) {
-                for (Map.Entry<String, RawMetric.DataPoint> stringDataPointEntry : rawMetric.getDataPoints().entrySet()) {
-                    RawMetric.DataPoint dp = stringDataPointEntry.getValue();
-                    Double value = dp.getDoubleValue();
-                    if (value == null)
+                RawMetric.DataPoint.Sample sample = new RawMetric.DataPoint.Sample();
+                long now = System.currentTimeMillis();
+                for (RawMetric.DataPoint dp : rawMetric.getDataPoints().values()) {
+                    if (!dp.read(sample) || dp.suppress(sample, now))
                         continue;
-                    measurement.record(value, convertMapToAttributes(dp.getAttributes()));
+                    measurement.record(sample.getDoubleValue(), dp.getOtelAttributes());
+                }
+                if (rawMetric.isOffHeap()) {
+                    rawMetric.forEachOffHeapSample(sample, (value, attributes) -> measurement.record(value.getDoubleValue(), attributes));
                 }
             }
         };
@@ -233,8 +338,12 @@ public class DcUtil {
                         builder.setExplicitBucketBoundariesAdvice(boundaries);
                     rawMetric.setDoubleHistogram(builder.build());
                 }
+                break;
             default:
-                logger.log(Level.WARNING, "Currently only following instrument types are supported, Gauge, Counter, UpDownCounter, while your type is {0}", rawMetric.getInstrumentType());
+                logger.log(Level.WARNING, "Currently only following instrument types are supported, Gauge, Counter, UpDownCounter, Histogram, while your type is {0}", rawMetric.getInstrumentType());
+        }
+        if (rawMetric.isWindowed() && rawMetric.getInstrumentType() != MetricInstrumentType.HISTOGRAM) {
+            registerWindowMetrics(meter, rawMetric, dc);
         }
 
         rawMetric.setDc(dc);
@@ -1,6 +1,8 @@
 package com.ojr.core;
 
 import com.ojr.core.metric.RawMetric;
+import com.ojr.core.metric.SeriesBudget;
+import com.ojr.core.schedule.CollectionScheduler;
 import io.opentelemetry.api.OpenTelemetry;
 import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.api.metrics.Meter;
@@ -10,6 +12,8 @@ import io.opentelemetry.sdk.resources.Resource;
 import io.opentelemetry.sdk.trace.SdkTracerProvider;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Predicate;
 
@@ -89,6 +93,21 @@ public interface IDc<Cfg extends BasicDcConfig> {
      */
     void collectData();
 
+    /**
+     * Collects data without blocking the calling thread, e.g. with a non-blocking SNMP or JDBC driver. The scheduler
+     * runs this method and counts the cycle as running until the returned stage completes; the poll timeout still
+     * applies, and its cancellation is signalled through {@link com.ojr.core.schedule.CycleContext#onCancel}.
+     * <p>
+     * The default implementation runs {@link #collectData()} and returns a completed stage. A Data Collector with
+     * a non-blocking client overrides this method and may implement collectData() by waiting for it.
+     *
+     * @return A stage which completes when the data of the cycle is recorded
+     */
+    default CompletionStage<Void> collectDataAsync() {
+        collectData();
+        return CompletableFuture.completedFuture(null);
+    }
+
     /**
      * Returns the scheduled executor service used for data collection process.
      *
@@ -96,6 +115,29 @@ public interface IDc<Cfg extends BasicDcConfig> {
      */
     ScheduledExecutorService getScheduledExecutorService();
 
+    /**
+     * Returns the scheduler which runs the collection cycles.
+     *
+     * @return a CollectionScheduler instance
+     */
+    CollectionScheduler getCollectionScheduler();
+
+    /**
+     * Sets the scheduler which runs the collection cycles. It is normally shared by all data collectors of an agent.
+     *
+     * @param collectionScheduler the CollectionScheduler to be used
+     */
+    void setCollectionScheduler(CollectionScheduler collectionScheduler);
+
+    /**
+     * Sets the budget of the series of all data collectors of an agent. Data collectors which do not limit their series
+     * ignore it.
+     *
+     * @param seriesBudget the SeriesBudget to be used
+     */
+    default void setSeriesBudget(SeriesBudget seriesBudget) {
+    }
+
     /**
      * Starts the data collection process.
      */
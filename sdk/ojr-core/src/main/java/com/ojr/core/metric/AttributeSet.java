@@ -0,0 +1,342 @@
+package com.ojr.core.metric;
+
+import com.ojr.core.DcUtil;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compact, immutable map of attributes backed by two arrays sorted by key, for the two or three attributes of a
+ * series (e.g. device and direction). Keys are interned in an agent-wide pool, and short string values in a cache of
+ * fixed size where a value replaces the one with the same slot, so the names of queues, interfaces and tables parsed
+ * anew in every cycle are kept once while the values of high-cardinality attributes cannot grow the cache. The
+ * OpenTelemetry attributes are built on first use and kept with the set.
+ * <p>
+ * A set is changed by creating a new one, see {@link #with(String, Object)}. Null values are left out.
+ */
+public final class AttributeSet extends AbstractMap<String, Object> {
+    private static final int MAX_KEY_POOL_SIZE = 10000; // Maximal number of interned keys, later ones are not pooled
+    private static final int VALUE_CACHE_SIZE = 1 << 14; // Number of slots of the value cache, a power of 2
+    private static final int MAX_INTERNED_LENGTH = 128; // Maximal length of an interned value
+    private static final Map<String, String> keyPool = new ConcurrentHashMap<>(); // Interned keys
+    // Interned values by hash; a racy read sees a complete String or null, which only misses the cache
+    private static final String[] valueCache = new String[VALUE_CACHE_SIZE];
+    private static final Map<String, AttributeKey<String>> stringKeys = new ConcurrentHashMap<>(); // Shared keys of string attributes
+
+    private static final AttributeSet EMPTY = new AttributeSet(new String[0], new Object[0]);
+
+    private final String[] keys; // Sorted keys
+    private final Object[] values; // Values in the order of the keys
+    private volatile Attributes otelAttributes; // Built on first use
+    private int hash; // Hash code as defined by Map, computed on first use
+
+    private AttributeSet(String[] keys, Object[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * Returns the empty AttributeSet.
+     *
+     * @return The empty set
+     */
+    public static AttributeSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns an AttributeSet with the entries of a map, or the map itself if it is an AttributeSet.
+     *
+     * @param map The attributes, may be null
+     * @return The AttributeSet
+     */
+    public static AttributeSet of(Map<String, ?> map) {
+        if (map instanceof AttributeSet) {
+            return (AttributeSet) map;
+        }
+        if (map == null || map.isEmpty()) {
+            return EMPTY;
+        }
+        String[] keys = new String[map.size()];
+        Object[] values = new Object[map.size()];
+        int size = 0;
+        for (Entry<String, ?> entry : map.entrySet()) {
+            if (entry.getValue() != null) {
+                keys[size] = entry.getKey();
+                values[size++] = entry.getValue();
+            }
+        }
+        return create(keys, values, size);
+    }
+
+    /**
+     * Returns an AttributeSet built from parallel arrays. The arrays are not kept.
+     *
+     * @param keys   Keys of the attributes
+     * @param values Values of the attributes, null values are left out
+     * @param size   Number of entries to use
+     * @return The AttributeSet
+     */
+    public static AttributeSet of(String[] keys, Object[] values, int size) {
+        return create(Arrays.copyOf(keys, size), Arrays.copyOf(values, size), size);
+    }
+
+    private static AttributeSet create(String[] keys, Object[] values, int size) {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (values[i] != null) {
+                keys[count] = internKey(keys[i]);
+                values[count++] = values[i] instanceof String ? intern((String) values[i]) : values[i];
+            }
+        }
+        if (count == 0) {
+            return EMPTY;
+        }
+        if (count < keys.length) {
+            keys = Arrays.copyOf(keys, count);
+            values = Arrays.copyOf(values, count);
+        }
+        // Insertion sort, a set has a handful of entries
+        for (int i = 1; i < count; i++) {
+            String key = keys[i];
+            Object value = values[i];
+            int j = i - 1;
+            while (j >= 0 && keys[j].compareTo(key) > 0) {
+                keys[j + 1] = keys[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            values[j + 1] = value;
+        }
+        return new AttributeSet(keys, values);
+    }
+
+    /**
+     * Returns the cached instance of an attribute value, so equal values of many series share one instance. The cache
+     * has a fixed number of slots: a value takes the slot of its hash, replacing the previous one, so the cache keeps
+     * the recent values without growing. Strings longer than 128 characters are returned as they are.
+     *
+     * @param s The string
+     * @return The cached string, or the string itself
+     */
+    public static String intern(String s) {
+        if (s == null || s.length() > MAX_INTERNED_LENGTH) {
+            return s;
+        }
+        int h = s.hashCode();
+        int slot = (h ^ (h >>> 16)) & (VALUE_CACHE_SIZE - 1);
+        String cached = valueCache[slot];
+        if (s.equals(cached)) {
+            return cached;
+        }
+        valueCache[slot] = s;
+        return s;
+    }
+
+    // Returns the pooled instance of an attribute key; keys are few, keys arriving after the pool is full are not pooled
+    private static String internKey(String key) {
+        if (key == null) {
+            return null;
+        }
+        String pooled = keyPool.get(key);
+        if (pooled != null) {
+            return pooled;
+        }
+        if (keyPool.size() >= MAX_KEY_POOL_SIZE) {
+            return key;
+        }
+        pooled = keyPool.putIfAbsent(key, key);
+        return pooled != null ? pooled : key;
+    }
+
+    /**
+     * Returns a set with an attribute added, replaced or, for a null value, removed.
+     *
+     * @param key   Key of the attribute
+     * @param value Value of the attribute, null to remove it
+     * @return The new AttributeSet, or this one if nothing changed
+     */
+    public AttributeSet with(String key, Object value) {
+        int index = indexOf(key);
+        if (index >= 0 && values[index].equals(value)) {
+            return this;
+        }
+        if (index < 0 && value == null) {
+            return this;
+        }
+        String[] newKeys = Arrays.copyOf(keys, keys.length + (index < 0 ? 1 : 0));
+        Object[] newValues = Arrays.copyOf(values, newKeys.length);
+        if (index < 0) {
+            newKeys[keys.length] = key;
+            newValues[keys.length] = value;
+        } else {
+            newValues[index] = value;
+        }
+        return create(newKeys, newValues, newKeys.length);
+    }
+
+    /**
+     * Returns the key at an index, in the order of the keys.
+     *
+     * @param index Index of the entry
+     * @return The key
+     */
+    public String keyAt(int index) {
+        return keys[index];
+    }
+
+    /**
+     * Returns the value at an index, in the order of the keys.
+     *
+     * @param index Index of the entry
+     * @return The value
+     */
+    public Object valueAt(int index) {
+        return values[index];
+    }
+
+    /**
+     * Returns the attributes as OpenTelemetry attributes, built on first use with shared attribute keys.
+     *
+     * @return OpenTelemetry attributes
+     */
+    public Attributes toAttributes() {
+        Attributes attributes = otelAttributes;
+        if (attributes == null) {
+            attributes = build();
+            otelAttributes = attributes;
+        }
+        return attributes;
+    }
+
+    private Attributes build() {
+        if (keys.length == 0) {
+            return Attributes.empty();
+        }
+        for (Object value : values) {
+            if (value instanceof Long || value instanceof Double || value instanceof Boolean) {
+                return DcUtil.convertMapToAttributes(this);
+            }
+        }
+        AttributesBuilder builder = Attributes.builder();
+        for (int i = 0; i < keys.length; i++) {
+            builder.put(stringKeys.computeIfAbsent(keys[i], AttributeKey::stringKey), values[i].toString());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Checks if a map has the same attributes, without allocating.
+     *
+     * @param map The attributes to compare, null for none
+     * @return True if the map has the same entries, false otherwise
+     */
+    public boolean contentEquals(Map<String, ?> map) {
+        if (map instanceof AttributeSet) {
+            return equals(map);
+        }
+        if (map == null) {
+            return keys.length == 0;
+        }
+        if (map.size() != keys.length) {
+            return false;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (!values[i].equals(map.get(keys[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(Object key) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == key || keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return keys.length;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int index = indexOf(key);
+        return index < 0 ? null : values[index];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (o instanceof AttributeSet) {
+            AttributeSet other = (AttributeSet) o;
+            return Arrays.equals(keys, other.keys) && Arrays.equals(values, other.values);
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            for (int i = 0; i < keys.length; i++) {
+                h += keys[i].hashCode() ^ values[i].hashCode();
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<Entry<String, Object>>() {
+                    private int index = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < keys.length;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (index >= keys.length) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<String, Object> entry = new SimpleImmutableEntry<>(keys[index], values[index]);
+                        index++;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keys.length;
+            }
+        };
+    }
+}
@@ -0,0 +1,113 @@
+package com.ojr.core.metric;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * Buckets of data points by the time of their latest update, so outdated data points are found without scanning all
+ * series of a metric.
+ * <p>
+ * A data point is added to the bucket of its update time when it moves to a newer bucket, at most once per bucket width.
+ * The entries left in older buckets are deleted lazily: when a bucket expires, its data points which were updated since
+ * are skipped. A bucket is keyed by the end of its time range, so it expires as a whole.
+ */
+class ExpiryIndex {
+    private final TreeMap<Long, ArrayDeque<RawMetric.DataPoint>> buckets = new TreeMap<>(); // Data points by bucket end time
+    private volatile long width; // Width of the buckets in milliseconds
+
+    ExpiryIndex(long width) {
+        setWidth(width);
+    }
+
+    /**
+     * Sets the width of new buckets.
+     *
+     * @param width Width in milliseconds
+     */
+    void setWidth(long width) {
+        this.width = Math.max(1, width);
+    }
+
+    /**
+     * Returns the bucket of an update time.
+     *
+     * @param time Update time in milliseconds
+     * @return End time of the bucket
+     */
+    long bucketOf(long time) {
+        long width = this.width;
+        return time - Math.floorMod(time, width) + width;
+    }
+
+    /**
+     * Adds a data point to a bucket.
+     *
+     * @param dp     The data point
+     * @param bucket End time of the bucket
+     */
+    synchronized void add(RawMetric.DataPoint dp, long bucket) {
+        buckets.computeIfAbsent(bucket, k -> new ArrayDeque<>()).add(dp);
+    }
+
+    /**
+     * Removes and returns the data points of all buckets ending at or before a time.
+     *
+     * @param time End time of the latest bucket to remove
+     * @return Data points of the removed buckets, some of which may have been updated since
+     */
+    synchronized List<RawMetric.DataPoint> pollExpired(long time) {
+        if (buckets.isEmpty() || buckets.firstKey() > time) {
+            return Collections.emptyList();
+        }
+        List<RawMetric.DataPoint> expired = new ArrayList<>();
+        Map<Long, ArrayDeque<RawMetric.DataPoint>> head = buckets.headMap(time, true);
+        for (ArrayDeque<RawMetric.DataPoint> bucket : head.values()) {
+            expired.addAll(bucket);
+        }
+        head.clear();
+        return expired;
+    }
+
+    /**
+     * Returns the least recently updated data point, within the width of a bucket, which matches a condition. The
+     * entries of data points updated since, or not matching the condition, are removed on the way, so a call costs the
+     * lookup of the oldest bucket plus the entries it deletes.
+     *
+     * @param live Condition of a data point still in its metric
+     * @param skip Condition of a data point to leave in the index but not to return
+     * @return The oldest matching data point, null if none
+     */
+    synchronized RawMetric.DataPoint oldest(Predicate<RawMetric.DataPoint> live, Predicate<RawMetric.DataPoint> skip) {
+        Iterator<Map.Entry<Long, ArrayDeque<RawMetric.DataPoint>>> it = buckets.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, ArrayDeque<RawMetric.DataPoint>> entry = it.next();
+            Iterator<RawMetric.DataPoint> dps = entry.getValue().iterator();
+            while (dps.hasNext()) {
+                RawMetric.DataPoint dp = dps.next();
+                if (dp.getExpiryBucket() != entry.getKey() || !live.test(dp)) {
+                    dps.remove();
+                } else if (!skip.test(dp)) {
+                    return dp;
+                }
+            }
+            if (entry.getValue().isEmpty()) {
+                it.remove();
+            }
+        }
+        return null;
+    }
+
+    synchronized void clear() {
+        buckets.clear();
+    }
+
+    synchronized int size() {
+        return buckets.size();
+    }
+}
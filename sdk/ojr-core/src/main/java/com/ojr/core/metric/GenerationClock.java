@@ -0,0 +1,115 @@
+package com.ojr.core.metric;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * Numbers the collection cycles of a Data Collector instance, so an export reads all RawMetrics as of one completed
+ * cycle rather than half of the running cycle and half of the previous one.
+ * <p>
+ * A cycle begins a new generation, its updates are tagged with it, and it publishes the generation when it ends. A
+ * cycle carries its generation in its {@code CycleContext}, so concurrent cycles and poll groups tag their updates with
+ * their own generation; updates made outside of a cycle get the latest generation begun (the staging generation). The
+ * published generation is the latest one with no earlier cycle still running. A data point updated in an unpublished
+ * generation is read with its previous value, see {@link RawMetric.DataPoint#read}. Updates made while no cycle is
+ * running are published immediately.
+ * <p>
+ * A generation running longer than the maximal age (e.g. a hung cycle which ignores its cancellation) is dropped, so it
+ * does not hold back the publication of the later cycles; its updates are visible as they are made.
+ */
+public class GenerationClock {
+    private static final Logger logger = Logger.getLogger(GenerationClock.class.getName());
+
+    private final TreeMap<Long, Long> running = new TreeMap<>(); // Start times of the running cycles, by generation
+    private long latest = 0; // The latest generation begun
+    private volatile long staging = 0; // Generation of new updates made outside of a cycle
+    private volatile long published = 0; // Latest generation visible to readers
+    private volatile long oldestStart = Long.MAX_VALUE; // Start time of the oldest running cycle, MAX_VALUE if none
+    private volatile long maxAgeMillis = 0; // Age after which a running generation is dropped, 0 for no limit
+
+    /**
+     * Begins the generation of a new cycle.
+     *
+     * @return The generation, to be passed to {@link #publish(long)} when the cycle ends
+     */
+    public synchronized long begin() {
+        long generation = ++latest;
+        running.put(generation, System.currentTimeMillis());
+        staging = generation;
+        update();
+        return generation;
+    }
+
+    /**
+     * Publishes the generation of an ended cycle. Publishing a generation twice, or a dropped one, has no effect.
+     *
+     * @param generation The generation returned by {@link #begin()}
+     */
+    public synchronized void publish(long generation) {
+        if (running.remove(generation) != null) {
+            update();
+        }
+    }
+
+    /**
+     * Sets the age after which a running generation is dropped, e.g. the timeout of the cycles.
+     *
+     * @param maxAgeMillis The maximal age in milliseconds, 0 for no limit
+     */
+    public void setMaxAge(long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    public long getMaxAge() {
+        return maxAgeMillis;
+    }
+
+    public long getStaging() {
+        return staging;
+    }
+
+    public long getPublished() {
+        long maxAge = maxAgeMillis;
+        if (maxAge > 0 && oldestStart != Long.MAX_VALUE && System.currentTimeMillis() - oldestStart > maxAge) {
+            synchronized (this) {
+                update();
+            }
+        }
+        return published;
+    }
+
+    /**
+     * Returns the number of generations which are running (begun, not published and not dropped).
+     *
+     * @return The number of running generations
+     */
+    public synchronized int getRunning() {
+        return running.size();
+    }
+
+    // Drops the expired generations and recomputes the published generation, called with the lock held
+    private void update() {
+        long maxAge = maxAgeMillis;
+        if (maxAge > 0) {
+            long now = System.currentTimeMillis();
+            Iterator<Map.Entry<Long, Long>> it = running.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Long, Long> entry = it.next();
+                if (now - entry.getValue() <= maxAge) {
+                    break;
+                }
+                logger.warning("Collection cycle of generation " + entry.getKey() + " is still running after " + maxAge + "ms, its updates are published as they are made");
+                it.remove();
+            }
+        }
+        if (running.isEmpty()) {
+            published = latest;
+            oldestStart = Long.MAX_VALUE;
+        } else {
+            published = running.firstKey() - 1;
+            oldestStart = running.firstEntry().getValue();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.ojr.core.metric;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongHistogram;
+
+/**
+ * A recording handle of a histogram RawMetric bound to one set of attributes, e.g. one SQL statement of
+ * db.sql.elapsed_time. The OpenTelemetry attributes are built once, so recording a value does not convert a map or
+ * allocate. Handles are cached by the RawMetric until they are unused for its outdated time, see
+ * {@link RawMetric#getHistogramHandle(java.util.Map)}.
+ * <p>
+ * The metric restrictions of the Data Collector are checked with {@code IDc#preRecordMetric(RawMetric)}, which does not
+ * box the value. Before the histogram is registered, a value is kept in the data point of the metric.
+ */
+public final class HistogramHandle {
+    private final RawMetric rawMetric; // The histogram metric
+    private final AttributeSet attributeSet; // Attributes of the recorded values
+    private final Attributes attributes; // The attributes as OpenTelemetry attributes
+    private volatile boolean used = true; // Used since the previous sweep of the cache of the RawMetric
+
+    HistogramHandle(RawMetric rawMetric, AttributeSet attributeSet) {
+        this.rawMetric = rawMetric;
+        this.attributeSet = attributeSet;
+        this.attributes = attributeSet.toAttributes();
+    }
+
+    public RawMetric getRawMetric() {
+        return rawMetric;
+    }
+
+    public AttributeSet getAttributes() {
+        return attributeSet;
+    }
+
+    public Attributes getOtelAttributes() {
+        return attributes;
+    }
+
+    void markUsed() {
+        if (!used) {
+            used = true;
+        }
+    }
+
+    boolean isUsed() {
+        return used;
+    }
+
+    // Returns whether the handle was used since the previous sweep and starts a new one
+    boolean clearUsed() {
+        boolean wasUsed = used;
+        used = false;
+        return wasUsed;
+    }
+
+    /**
+     * Records a long value.
+     *
+     * @param value The value
+     */
+    public void record(long value) {
+        LongHistogram longHistogram = rawMetric.getLongHistogram();
+        DoubleHistogram doubleHistogram = rawMetric.getDoubleHistogram();
+        if (longHistogram == null && doubleHistogram == null) {
+            rawMetric.setLongValue(value, attributeSet);
+        } else if (rawMetric.isRecordable()) {
+            if (longHistogram != null) {
+                longHistogram.record(value, attributes);
+            } else {
+                doubleHistogram.record(value, attributes);
+            }
+        }
+    }
+
+    /**
+     * Records a double value.
+     *
+     * @param value The value
+     */
+    public void record(double value) {
+        LongHistogram longHistogram = rawMetric.getLongHistogram();
+        DoubleHistogram doubleHistogram = rawMetric.getDoubleHistogram();
+        if (longHistogram == null && doubleHistogram == null) {
+            rawMetric.setDoubleValue(value, attributeSet);
+        } else if (rawMetric.isRecordable()) {
+            if (doubleHistogram != null) {
+                doubleHistogram.record(value, attributes);
+            } else {
+                longHistogram.record((long) value, attributes);
+            }
+        }
+    }
+}
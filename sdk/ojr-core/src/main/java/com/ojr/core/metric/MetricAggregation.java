@@ -0,0 +1,46 @@
+package com.ojr.core.metric;
+
+/**
+ * An enum representing the aggregation of a metric, applied through a view of the SDK meter provider.
+ */
+public enum MetricAggregation {
+    /**
+     * The default aggregation of the instrument type, e.g. explicit buckets for histograms.
+     */
+    DEFAULT,
+
+    /**
+     * Histogram with explicit bucket boundaries, those of the metric or the SDK defaults.
+     */
+    EXPLICIT,
+
+    /**
+     * Base-2 exponential histogram, which covers values spanning many orders of magnitude (e.g. latencies) with a
+     * bounded number of buckets.
+     */
+    EXPONENTIAL,
+
+    /**
+     * The metric is not exported.
+     */
+    DROP;
+
+    /**
+     * Parses an aggregation name (case-insensitive).
+     *
+     * @param name         Name of the aggregation
+     * @param defaultValue Aggregation returned if the name is null or unknown
+     * @return The MetricAggregation
+     */
+    public static MetricAggregation of(String name, MetricAggregation defaultValue) {
+        if (name == null) {
+            return defaultValue;
+        }
+        for (MetricAggregation aggregation : values()) {
+            if (aggregation.name().equalsIgnoreCase(name.trim())) {
+                return aggregation;
+            }
+        }
+        return defaultValue;
+    }
+}
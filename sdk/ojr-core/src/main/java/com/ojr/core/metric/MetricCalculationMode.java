@@ -12,5 +12,57 @@ public enum MetricCalculationMode {
     /**
      * Rate mode for metric calculation, where metrics are calculated as a rate (e.g., per second).
      */
-    RATE
+    RATE,
+
+    /**
+     * Rate of a monotonic counter between the two latest samples, timed with the monotonic clock. A decrease is taken as
+     * a wrap if the wrapped delta is below half of the range of the counter (64-bit unless set to 32-bit, see
+     * {@link RawMetric#setCounterBits(int)}), otherwise as a reset (e.g. a database restart), where the delta is the new
+     * value. The rate is never negative.
+     */
+    COUNTER_RATE,
+
+    /**
+     * Rate of a monotonic counter over the latest samples (see {@link RawMetric#setRateWindow(int)}), with the reset
+     * and wrap detection of {@link #COUNTER_RATE}. It is smoother than a rate between two samples at short intervals.
+     */
+    WINDOW_RATE,
+
+    /**
+     * Exponentially weighted moving average of a gauge, see {@link RawMetric#setEwmaAlpha(double)}.
+     */
+    EWMA,
+
+    /**
+     * Difference between the two latest samples, negative if the value decreased.
+     */
+    DELTA;
+
+    /**
+     * Checks if the mode keeps a calculation state per series, see {@link RawMetric.DataPoint#read}.
+     *
+     * @return True for the modes other than DIRECT and RATE
+     */
+    public boolean isStateful() {
+        return this != DIRECT && this != RATE;
+    }
+
+    /**
+     * Parses a calculation mode name (case-insensitive).
+     *
+     * @param name         Name of the calculation mode
+     * @param defaultValue Calculation mode returned if the name is null or unknown
+     * @return The MetricCalculationMode
+     */
+    public static MetricCalculationMode of(String name, MetricCalculationMode defaultValue) {
+        if (name == null) {
+            return defaultValue;
+        }
+        for (MetricCalculationMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name.trim())) {
+                return mode;
+            }
+        }
+        return defaultValue;
+    }
 }
@@ -0,0 +1,232 @@
+package com.ojr.core.metric;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The rows of a metric query in columnar form: parallel arrays of keys, primitive values and one array per attribute,
+ * e.g. one row per queue, table or network interface. It is recorded by {@link RawMetric#setValues(MetricColumns)},
+ * which updates the data points in place, so a large table does not create a MetricQueryResult and a map per row.
+ * <p>
+ * An instance can be reused across polls by calling {@link #clear()}. It is not thread-safe.
+ * <pre>
+ * MetricColumns columns = new MetricColumns("queue.name");
+ * for (Queue queue : queues) {
+ *     int row = columns.addRow(queue.getName(), queue.getDepth());
+ *     columns.setAttribute(row, 0, queue.getName());
+ * }
+ * rawMetric.setValues(columns);
+ * </pre>
+ */
+public class MetricColumns {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private String[] attributeNames; // Names of the attribute columns
+    private final Map<String, Integer> columnIndexes = new HashMap<>(); // Column index by attribute name
+    private Object[][] attributes; // Attribute values by column and row, null if a row does not have the attribute
+    private String[] keys; // Keys of the data points, null for the default data point
+    private long[] values; // Values of the rows: the long value, or the raw bits of the double value
+    private boolean[] doubles; // Indicates if the value of a row is a double
+    private int size = 0; // Number of rows
+
+    /**
+     * Constructs a new MetricColumns with the given attribute columns.
+     *
+     * @param attributeNames Names of the attributes, in the order of their column indexes
+     */
+    public MetricColumns(String... attributeNames) {
+        this.attributeNames = new String[0];
+        this.attributes = new Object[0][];
+        this.keys = new String[DEFAULT_CAPACITY];
+        this.values = new long[DEFAULT_CAPACITY];
+        this.doubles = new boolean[DEFAULT_CAPACITY];
+        for (String name : attributeNames) {
+            addColumn(name);
+        }
+    }
+
+    /**
+     * Converts the results of a metric query into columns. Attributes missing in some results are left empty in those
+     * rows, and results without a value are skipped.
+     *
+     * @param results List of MetricQueryResults
+     * @return The columns of the results
+     */
+    public static MetricColumns of(List<MetricQueryResult> results) {
+        MetricColumns columns = new MetricColumns();
+        for (MetricQueryResult result : results) {
+            columns.add(result);
+        }
+        return columns;
+    }
+
+    /**
+     * Adds the column of an attribute if it does not exist yet.
+     *
+     * @param name Name of the attribute
+     * @return Index of the column
+     */
+    public int addColumn(String name) {
+        Integer index = columnIndexes.get(name);
+        if (index != null) {
+            return index;
+        }
+        int column = attributeNames.length;
+        attributeNames = Arrays.copyOf(attributeNames, column + 1);
+        attributeNames[column] = name;
+        attributes = Arrays.copyOf(attributes, column + 1);
+        attributes[column] = new Object[keys.length];
+        columnIndexes.put(name, column);
+        return column;
+    }
+
+    /**
+     * Adds a row with a long value.
+     *
+     * @param key   Key of the data point, null for the default data point
+     * @param value Value of the row
+     * @return Index of the row
+     */
+    public int addRow(String key, long value) {
+        int row = nextRow();
+        keys[row] = key;
+        values[row] = value;
+        doubles[row] = false;
+        return row;
+    }
+
+    /**
+     * Adds a row with a double value.
+     *
+     * @param key   Key of the data point, null for the default data point
+     * @param value Value of the row
+     * @return Index of the row
+     */
+    public int addRow(String key, double value) {
+        int row = nextRow();
+        keys[row] = key;
+        values[row] = Double.doubleToRawLongBits(value);
+        doubles[row] = true;
+        return row;
+    }
+
+    /**
+     * Adds a MetricQueryResult as a row, adding the columns of its attributes if needed.
+     *
+     * @param result MetricQueryResult containing the value and attributes
+     * @return Index of the row, -1 if the result has no value
+     */
+    public int add(MetricQueryResult result) {
+        Number value = result.getValue();
+        if (value == null) {
+            return -1;
+        }
+        int row = isIntegral(value) ? addRow(result.getKey(), value.longValue()) : addRow(result.getKey(), value.doubleValue());
+        for (int i = 0; i < result.getAttributeCount(); i++) {
+            setAttribute(row, addColumn(result.getAttributeKey(i)), result.getAttributeValue(i));
+        }
+        return row;
+    }
+
+    /**
+     * Sets an attribute of a row.
+     *
+     * @param row    Index of the row
+     * @param column Index of the attribute column
+     * @param value  Value of the attribute, null to leave it out
+     * @return This MetricColumns instance
+     */
+    public MetricColumns setAttribute(int row, int column, Object value) {
+        attributes[column][row] = value;
+        return this;
+    }
+
+    /**
+     * Removes all rows and keeps the columns and the capacity.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        for (Object[] column : attributes) {
+            Arrays.fill(column, 0, size, null);
+        }
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String[] getAttributeNames() {
+        return attributeNames;
+    }
+
+    public String getKey(int row) {
+        return keys[row];
+    }
+
+    public boolean isDouble(int row) {
+        return doubles[row];
+    }
+
+    public long getLongValue(int row) {
+        return doubles[row] ? (long) Double.longBitsToDouble(values[row]) : values[row];
+    }
+
+    public double getDoubleValue(int row) {
+        return doubles[row] ? Double.longBitsToDouble(values[row]) : values[row];
+    }
+
+    public Object getAttribute(int row, int column) {
+        return attributes[column][row];
+    }
+
+    /**
+     * Returns the value of a row as a Number, for the paths which need one (e.g. histograms).
+     *
+     * @param row Index of the row
+     * @return The boxed value
+     */
+    public Number getValue(int row) {
+        return doubles[row] ? (Number) Double.longBitsToDouble(values[row]) : (Number) values[row];
+    }
+
+    /**
+     * Returns the attributes of a row as a map, for the paths which need one (e.g. histograms).
+     *
+     * @param row Index of the row
+     * @return New map of the attributes of the row
+     */
+    public Map<String, Object> getAttributes(int row) {
+        Map<String, Object> map = new HashMap<>();
+        for (int column = 0; column < attributeNames.length; column++) {
+            Object value = attributes[column][row];
+            if (value != null) {
+                map.put(attributeNames[column], value);
+            }
+        }
+        return map;
+    }
+
+    private int nextRow() {
+        if (size == keys.length) {
+            int capacity = keys.length * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+            doubles = Arrays.copyOf(doubles, capacity);
+            for (int column = 0; column < attributes.length; column++) {
+                attributes[column] = Arrays.copyOf(attributes[column], capacity);
+            }
+        }
+        return size++;
+    }
+
+    private static boolean isIntegral(Number value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+                || value instanceof AtomicLong || value instanceof AtomicInteger || value instanceof BigInteger;
+    }
+}
@@ -0,0 +1,48 @@
+package com.ojr.core.metric;
+
+/**
+ * An int-indexed reference to a RawMetric of a Data Collector, handed out once at registration time, so the per-row
+ * updates of a collection cycle are array accesses instead of lookups by name.
+ * <p>
+ * A handle is valid for the Data Collector which created it, see {@code AbstractDc#getMetricHandle(String)}.
+ */
+public final class MetricHandle {
+    private final int index; // Index of the metric in the array of the Data Collector
+    private final String name; // Name of the metric
+    private final MetricInstrumentType instrumentType; // Type of the metric instrument
+    private final boolean isInteger; // Indicates if the metric is an integer type
+
+    /**
+     * Constructs a new MetricHandle.
+     *
+     * @param index     Index of the metric in the array of the Data Collector
+     * @param rawMetric The RawMetric
+     */
+    public MetricHandle(int index, RawMetric rawMetric) {
+        this.index = index;
+        this.name = rawMetric.getName();
+        this.instrumentType = rawMetric.getInstrumentType();
+        this.isInteger = rawMetric.isInteger();
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public MetricInstrumentType getInstrumentType() {
+        return instrumentType;
+    }
+
+    public boolean isInteger() {
+        return isInteger;
+    }
+
+    @Override
+    public String toString() {
+        return name + '#' + index;
+    }
+}
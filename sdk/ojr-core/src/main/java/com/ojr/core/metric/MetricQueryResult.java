@@ -1,6 +1,6 @@
 package com.ojr.core.metric;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
 
 /**
@@ -18,9 +18,16 @@ public class MetricQueryResult {
     private String key;
 
     /**
-     * A map to store additional attributes related to the metric.
+     * Keys and values of the additional attributes related to the metric, in the order they were set.
      */
-    private final Map<String, Object> attributes = new HashMap<>();
+    private String[] attributeKeys = null;
+    private Object[] attributeValues = null;
+    private int attributeCount = 0;
+
+    /**
+     * The attributes as an immutable set, built on first use.
+     */
+    private AttributeSet attributes = null;
 
     /**
      * Constructs a new MetricQueryResult with the specified value.
@@ -61,11 +68,14 @@ public class MetricQueryResult {
     }
 
     /**
-     * Returns the map of attributes associated with the metric.
+     * Returns the attributes associated with the metric.
      *
-     * @return the attributes map
+     * @return the attributes, an immutable {@link AttributeSet}
      */
     public Map<String, Object> getAttributes() {
+        if (attributes == null) {
+            attributes = attributeCount == 0 ? AttributeSet.empty() : AttributeSet.of(attributeKeys, attributeValues, attributeCount);
+        }
         return attributes;
     }
 
@@ -76,18 +86,53 @@ public class MetricQueryResult {
      * @return the attribute value, or null if the attribute is not found
      */
     public Object getAttribute(String key) {
-        return attributes.get(key);
+        int index = indexOf(key);
+        return index < 0 ? null : attributeValues[index];
     }
 
     /**
      * Sets an attribute for the metric.
      *
      * @param key       the key of the attribute to set
-     * @param attribute the value of the attribute to set
+     * @param attribute the value of the attribute to set, null to remove it
      * @return this MetricQueryResult instance for method chaining
      */
     public MetricQueryResult setAttribute(String key, Object attribute) {
-        attributes.put(key, attribute);
+        attributes = null;
+        int index = indexOf(key);
+        if (index < 0) {
+            if (attributeKeys == null) {
+                attributeKeys = new String[4];
+                attributeValues = new Object[4];
+            } else if (attributeCount == attributeKeys.length) {
+                attributeKeys = Arrays.copyOf(attributeKeys, attributeCount * 2);
+                attributeValues = Arrays.copyOf(attributeValues, attributeCount * 2);
+            }
+            index = attributeCount++;
+            attributeKeys[index] = key;
+        }
+        attributeValues[index] = attribute;
         return this;
     }
+
+    int getAttributeCount() {
+        return attributeCount;
+    }
+
+    String getAttributeKey(int index) {
+        return attributeKeys[index];
+    }
+
+    Object getAttributeValue(int index) {
+        return attributeValues[index];
+    }
+
+    private int indexOf(String key) {
+        for (int i = 0; i < attributeCount; i++) {
+            if (attributeKeys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
 }
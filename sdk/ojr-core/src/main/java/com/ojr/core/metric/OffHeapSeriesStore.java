@@ -0,0 +1,272 @@
+package com.ojr.core.metric;
+
+import com.ojr.core.DcUtil;
+import io.opentelemetry.api.common.Attributes;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * Stores the series of one RawMetric in slots of a direct ByteBuffer instead of DataPoint objects, for metrics with tens
+ * of thousands of series (e.g. the queues of a large IBM MQ deployment or the interfaces of a switch stack). A slot
+ * holds the current and the two previous values with their times and the generation of the current value, the same
+ * state a {@link RawMetric.DataPoint} keeps in fields. On the heap there is only the key and the attributes of a series,
+ * in arrays indexed by the slot, and an open addressing table from the key to the slot.
+ * <p>
+ * A removed series is replaced by the last one, so the slots stay dense. All methods are synchronized: the collection
+ * thread records a whole table and the export iterates all slots, each under the lock once.
+ * <p>
+ * When a new series exceeds a series limit, the store purges its outdated series and evicts the least recently updated
+ * series not updated for the eviction time of the metric, as {@link RawMetric} does with its data points. The slots are
+ * scanned once per recorded table, and only if a limit is reached.
+ */
+final class OffHeapSeriesStore {
+    private static final int CURRENT_BITS = 0, CURRENT_TIME = 8, CURRENT_GENERATION = 16;
+    private static final int PREVIOUS_BITS = 24, PREVIOUS_TIME = 32, PREVIOUS2_BITS = 40, PREVIOUS2_TIME = 48;
+    private static final int SLOT_BYTES = 56; // Size of a slot
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final RawMetric rawMetric;
+    private ByteBuffer values; // Values of the slots
+    private String[] keys; // Keys of the series by slot
+    private AttributeSet[] attributes; // Attributes of the series by slot
+    private int[] table; // Slot + 1 by hash of the key, 0 if empty
+    private int size = 0; // Number of series
+
+    OffHeapSeriesStore(RawMetric rawMetric) {
+        this.rawMetric = rawMetric;
+        this.values = ByteBuffer.allocateDirect(DEFAULT_CAPACITY * SLOT_BYTES).order(ByteOrder.nativeOrder());
+        this.keys = new String[DEFAULT_CAPACITY];
+        this.attributes = new AttributeSet[DEFAULT_CAPACITY];
+        this.table = new int[DEFAULT_CAPACITY * 2];
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Records the rows of columns. A new series which exceeds a series limit is recorded into the overflow series.
+     *
+     * @param columns MetricColumns containing the keys, values and attributes of the rows
+     */
+    synchronized void record(MetricColumns columns) {
+        long generation = rawMetric.stagingGeneration();
+        long now = System.currentTimeMillis();
+        ArrayDeque<String> evictable = null; // Keys of the stale series by update time, scanned at the first full slot
+        for (int row = 0; row < columns.size(); row++) {
+            String key = columns.getKey(row) == null ? DcUtil.DEFAULT : columns.getKey(row);
+            int slot = find(key);
+            if (slot < 0) {
+                if (!rawMetric.acquireSeries(size)) {
+                    boolean purged = evictable == null && purgeOutdated(now) > 0;
+                    if (evictable == null) {
+                        evictable = findStale(now);
+                    }
+                    if (!((purged || evictStale(evictable, now)) && rawMetric.acquireSeries(size))) {
+                        rawMetric.recordOverflow(columns, row);
+                        continue;
+                    }
+                }
+                slot = add(key);
+            }
+            long bits = rawMetric.isInteger() ? columns.getLongValue(row) : Double.doubleToRawLongBits(columns.getDoubleValue(row));
+            update(slot, bits, now, generation);
+            attributes[slot] = RawMetric.attributesOf(attributes[slot], columns, row);
+        }
+    }
+
+    private void update(int slot, long bits, long time, long generation) {
+        int base = slot * SLOT_BYTES;
+        if (generation == 0 || generation != values.getLong(base + CURRENT_GENERATION)) {
+            values.putLong(base + PREVIOUS2_BITS, values.getLong(base + PREVIOUS_BITS));
+            values.putLong(base + PREVIOUS2_TIME, values.getLong(base + PREVIOUS_TIME));
+            values.putLong(base + PREVIOUS_BITS, values.getLong(base + CURRENT_BITS));
+            values.putLong(base + PREVIOUS_TIME, values.getLong(base + CURRENT_TIME));
+        }
+        values.putLong(base + CURRENT_BITS, bits);
+        values.putLong(base + CURRENT_TIME, time);
+        values.putLong(base + CURRENT_GENERATION, generation);
+    }
+
+    /**
+     * Reads the published value of every series, removing the outdated ones on the way.
+     *
+     * @param sample   Receives the values, reused for all series
+     * @param consumer Called with the sample and the attributes of every series with a value
+     */
+    synchronized void forEach(RawMetric.DataPoint.Sample sample, BiConsumer<RawMetric.DataPoint.Sample, Attributes> consumer) {
+        long published = rawMetric.publishedGeneration();
+        long oldest = System.currentTimeMillis() - rawMetric.getOutdatedTime();
+        int slot = 0;
+        while (slot < size) {
+            int base = slot * SLOT_BYTES;
+            if (values.getLong(base + CURRENT_TIME) < oldest) {
+                release(slot);
+                continue; // The last series moved into this slot
+            }
+            boolean current = values.getLong(base + CURRENT_GENERATION) <= published;
+            if (rawMetric.toSample(sample,
+                    values.getLong(base + (current ? CURRENT_BITS : PREVIOUS_BITS)),
+                    values.getLong(base + (current ? PREVIOUS_BITS : PREVIOUS2_BITS)),
+                    values.getLong(base + (current ? CURRENT_TIME : PREVIOUS_TIME)),
+                    values.getLong(base + (current ? PREVIOUS_TIME : PREVIOUS2_TIME)))) {
+                consumer.accept(sample, attributes[slot].toAttributes());
+            }
+            slot++;
+        }
+    }
+
+    // Removes the outdated series, returns their number
+    private int purgeOutdated(long now) {
+        long oldest = now - rawMetric.getOutdatedTime();
+        int purged = 0;
+        int slot = 0;
+        while (slot < size) {
+            if (values.getLong(slot * SLOT_BYTES + CURRENT_TIME) < oldest) {
+                release(slot);
+                purged++;
+            } else {
+                slot++;
+            }
+        }
+        return purged;
+    }
+
+    // Returns the keys of the series not updated for the eviction time, the least recently updated first
+    private ArrayDeque<String> findStale(long now) {
+        ArrayDeque<String> stale = new ArrayDeque<>();
+        long evictAfter = rawMetric.getEvictAfter();
+        if (evictAfter <= 0) {
+            return stale;
+        }
+        Integer[] slots = new Integer[size];
+        int count = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (now - values.getLong(slot * SLOT_BYTES + CURRENT_TIME) >= evictAfter) {
+                slots[count++] = slot;
+            }
+        }
+        Arrays.sort(slots, 0, count, (a, b) -> Long.compare(values.getLong(a * SLOT_BYTES + CURRENT_TIME), values.getLong(b * SLOT_BYTES + CURRENT_TIME)));
+        for (int i = 0; i < count; i++) {
+            stale.add(keys[slots[i]]);
+        }
+        return stale;
+    }
+
+    // Evicts the least recently updated stale series which was not updated since it was found
+    private boolean evictStale(ArrayDeque<String> stale, long now) {
+        long evictAfter = rawMetric.getEvictAfter();
+        while (!stale.isEmpty()) {
+            int slot = find(stale.poll());
+            if (slot >= 0 && now - values.getLong(slot * SLOT_BYTES + CURRENT_TIME) >= evictAfter) {
+                release(slot);
+                rawMetric.countEvictedSeries();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Removes a series and releases its slot of the series limiter
+    private void release(int slot) {
+        remove(slot);
+        rawMetric.releaseSeries();
+    }
+
+    private int find(String key) {
+        int mask = table.length - 1;
+        for (int i = hash(key) & mask; table[i] != 0; i = (i + 1) & mask) {
+            if (keys[table[i] - 1].equals(key)) {
+                return table[i] - 1;
+            }
+        }
+        return -1;
+    }
+
+    private int add(String key) {
+        if (size == keys.length) {
+            grow();
+        }
+        int slot = size++;
+        keys[slot] = key;
+        attributes[slot] = AttributeSet.empty();
+        int base = slot * SLOT_BYTES;
+        for (int offset = 0; offset < SLOT_BYTES; offset += 8) {
+            values.putLong(base + offset, 0);
+        }
+        insert(key, slot);
+        return slot;
+    }
+
+    private void insert(String key, int slot) {
+        int mask = table.length - 1;
+        int i = hash(key) & mask;
+        while (table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        table[i] = slot + 1;
+    }
+
+    // Removes a series and moves the last one into its slot
+    private void remove(int slot) {
+        unlink(keys[slot]);
+        int last = --size;
+        if (slot != last) {
+            int mask = table.length - 1;
+            int i = hash(keys[last]) & mask;
+            while (table[i] != last + 1) {
+                i = (i + 1) & mask;
+            }
+            table[i] = slot + 1;
+            keys[slot] = keys[last];
+            attributes[slot] = attributes[last];
+            for (int offset = 0; offset < SLOT_BYTES; offset += 8) {
+                values.putLong(slot * SLOT_BYTES + offset, values.getLong(last * SLOT_BYTES + offset));
+            }
+        }
+        keys[last] = null;
+        attributes[last] = null;
+    }
+
+    // Deletes the table entry of a key, shifting back the entries of the same probe sequence
+    private void unlink(String key) {
+        int mask = table.length - 1;
+        int i = hash(key) & mask;
+        while (!keys[table[i] - 1].equals(key)) {
+            i = (i + 1) & mask;
+        }
+        table[i] = 0;
+        for (int j = (i + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+            int home = hash(keys[table[j] - 1]) & mask;
+            // Move the entry back if its home is not within (i, j]
+            if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                table[i] = table[j];
+                table[j] = 0;
+                i = j;
+            }
+        }
+    }
+
+    private void grow() {
+        int capacity = keys.length * 2;
+        ByteBuffer grown = ByteBuffer.allocateDirect(capacity * SLOT_BYTES).order(ByteOrder.nativeOrder());
+        values.clear();
+        grown.put(values);
+        values = grown;
+        keys = Arrays.copyOf(keys, capacity);
+        attributes = Arrays.copyOf(attributes, capacity);
+        table = new int[capacity * 2];
+        for (int slot = 0; slot < size; slot++) {
+            insert(keys[slot], slot);
+        }
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
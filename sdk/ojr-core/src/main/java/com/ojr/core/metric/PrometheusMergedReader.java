@@ -8,6 +8,12 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -16,6 +22,12 @@ public class PrometheusMergedReader implements MultiCollector {
 
     private final List<PrometheusMetricReader> readers = new ArrayList<>();
 
+    // Hooks starting the on-demand collections of pull mode Data Collectors before each scrape
+    private final List<Supplier<CompletableFuture<Void>>> scrapeHooks = new CopyOnWriteArrayList<>();
+
+    public static final long DEFAULT_SCRAPE_TIMEOUT = 10000L; // Time a scrape waits for on-demand collections in milliseconds
+    private volatile long scrapeTimeout = DEFAULT_SCRAPE_TIMEOUT;
+
     private final String[] metricRestrictions;
 
     public void registerReader(PrometheusMetricReader reader) {
@@ -26,6 +38,43 @@ public class PrometheusMergedReader implements MultiCollector {
         this.metricRestrictions = metricRestrictions;
     }
 
+    /**
+     * Registers a hook called at each scrape, before the metrics are read. The scrape waits until the returned future
+     * is completed or the scrape timeout expires; in the latter case the latest collected values are served.
+     *
+     * @param hook Starts an on-demand collection and returns its completion
+     */
+    public void registerScrapeHook(Supplier<CompletableFuture<Void>> hook) {
+        scrapeHooks.add(hook);
+    }
+
+    public long getScrapeTimeout() {
+        return scrapeTimeout;
+    }
+
+    public void setScrapeTimeout(long scrapeTimeout) {
+        this.scrapeTimeout = scrapeTimeout;
+    }
+
+    private void runScrapeHooks() {
+        if (scrapeHooks.isEmpty())
+            return;
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Supplier<CompletableFuture<Void>> hook : scrapeHooks) {
+            futures.add(hook.get());
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(scrapeTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warning("On-demand collection did not finish within " + scrapeTimeout + "ms, the latest values are served");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.log(Level.WARNING, "On-demand collection failed", e);
+        }
+    }
+
     private boolean isMetricRestricted(String metricName) {
         if (metricRestrictions == null)
             return false;
@@ -43,6 +92,7 @@ public class PrometheusMergedReader implements MultiCollector {
 
     @Override
     public MetricSnapshots collect() {
+        runScrapeHooks();
         Map<String, MetricSnapshot> snapMap = new HashMap<>();
 
         for (PrometheusMetricReader reader : readers) {
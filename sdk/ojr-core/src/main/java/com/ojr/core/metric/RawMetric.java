@@ -2,12 +2,19 @@ package com.ojr.core.metric;
 
 import com.ojr.core.DcUtil;
 import com.ojr.core.IDc;
+import com.ojr.core.schedule.CycleContext;
+import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.api.metrics.DoubleHistogram;
 import io.opentelemetry.api.metrics.LongHistogram;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -26,14 +33,45 @@ public class RawMetric {
     private MetricCalculationMode calculationMode; // Mode of calculation for the metric
     private static final double DEFAULT_RATE_UNIT = 1000; // Default rate unit for calculations
     private double rateUnit = DEFAULT_RATE_UNIT; // Rate unit for calculations
+    private static final int DEFAULT_RATE_WINDOW = 5; // Default number of sample intervals of a windowed rate
+    private int rateWindow = DEFAULT_RATE_WINDOW; // Number of sample intervals of a windowed rate
+    private static final double DEFAULT_EWMA_ALPHA = 0.3; // Default weight of a new sample in a moving average
+    private double ewmaAlpha = DEFAULT_EWMA_ALPHA; // Weight of a new sample in a moving average
+    private int counterBits = 64; // Width of the counter of a counter rate, 32 or 64
     private final Map<String, DataPoint> dps = new ConcurrentHashMap<>(); // Data points associated with the metric
     private static final long DEFAULT_OUTDATED_TIME = 125000L; // Default time after which data points are considered outdated
     private long outdatedTime = DEFAULT_OUTDATED_TIME; // Time after which data points are considered outdated
+    private boolean outdatedTimeSet = false; // Indicates if the outdated time was set explicitly
+    private final ExpiryIndex expiryIndex = new ExpiryIndex(DEFAULT_OUTDATED_TIME / 4); // Data points by the time of their latest update
     private final String meterName; // Name of the meter associated with the metric
     private List<Long> longBucketBoundaries = null; // Bucket boundaries for long histograms
     private List<Double> doubleBucketBoundaries = null; // Bucket boundaries for double histograms
+    private MetricAggregation aggregation = MetricAggregation.DEFAULT; // Aggregation of the metric
+    private static final int DEFAULT_MAX_BUCKETS = 160; // Default maximal number of buckets of an exponential histogram
+    private int maxBuckets = DEFAULT_MAX_BUCKETS; // Maximal number of buckets of an exponential histogram
+    private static final int MAX_HISTOGRAM_HANDLES = 10000; // Maximal number of cached histogram handles
     private LongHistogram longHistogram = null; // Long histogram for recording long values
     private DoubleHistogram doubleHistogram = null; // Double histogram for recording double values
+    private final Map<Map<String, ?>, HistogramHandle> histogramHandles = new ConcurrentHashMap<>(); // Cached handles by attributes
+    private final Map<String, HistogramHandle> histogramHandlesByKey = new ConcurrentHashMap<>(); // Latest handle of the rows by key
+    private volatile long handlesSweepTime = 0; // The time when unused histogram handles were evicted the last time
+    private int pollInterval = 0; // Polling interval of the metric in seconds, 0 to poll in every cycle
+    private long lastPollTime = 0; // The time when the metric was polled the last time
+    private final MetricColumns resultColumns = new MetricColumns(); // Reused to record lists of MetricQueryResults
+    private int maxSeries = 0; // Maximal number of series of the metric, 0 for no limit
+    private long evictAfter = 0; // Time without update after which a series may be evicted for a new one, 0 to never evict
+    private SeriesLimiter seriesLimiter = null; // Limiter of the series of all metrics of the Data Collector
+    private SeriesPriority priority; // Priority of the series within the agent-wide budget
+    private volatile long heartbeat = 0; // Time after which an unchanged value is exported again, 0 to export every value
+    private boolean windowed = false; // Indicates if the values between exports are aggregated per series
+    private volatile OffHeapSeriesStore offHeapStore = null; // Series recorded from columns, null to keep them in data points
+    private volatile GenerationClock generationClock = null; // Generations of the collection cycles, null to publish every update
+    private final AtomicLong overflowedRows = new AtomicLong(); // Number of rows recorded into the overflow series
+    private final AtomicLong evictedSeries = new AtomicLong(); // Number of series evicted for new ones
+    private final AtomicLong suppressedPoints = new AtomicLong(); // Number of unchanged data points not exported
+    private final AtomicLong suppressedBytes = new AtomicLong(); // Estimated OTLP bytes of the suppressed data points
+
+    public static final String OVERFLOW_KEY = "otel.metric.overflow"; // Key and attribute of the overflow series
 
     private IDc<?> dc = null;
 
@@ -58,6 +96,7 @@ public class RawMetric {
 
         this.calculationMode = MetricCalculationMode.DIRECT;
         this.meterName = meterName;
+        this.priority = SeriesPriority.forMetric(name);
     }
 
     /**
@@ -185,6 +224,58 @@ public class RawMetric {
         return this;
     }
 
+    public int getRateWindow() {
+        return rateWindow;
+    }
+
+    /**
+     * Sets the number of sample intervals a {@link MetricCalculationMode#WINDOW_RATE} is calculated over. It applies to
+     * the series created afterwards.
+     *
+     * @param rateWindow Number of sample intervals, at least 1
+     * @return This RawMetric instance
+     */
+    public RawMetric setRateWindow(int rateWindow) {
+        this.rateWindow = Math.max(1, rateWindow);
+        return this;
+    }
+
+    public double getEwmaAlpha() {
+        return ewmaAlpha;
+    }
+
+    /**
+     * Sets the weight of a new sample in a {@link MetricCalculationMode#EWMA}. A lower weight smooths more.
+     *
+     * @param ewmaAlpha Weight between 0 (exclusive) and 1 (inclusive)
+     * @return This RawMetric instance
+     */
+    public RawMetric setEwmaAlpha(double ewmaAlpha) {
+        if (ewmaAlpha > 0 && ewmaAlpha <= 1) {
+            this.ewmaAlpha = ewmaAlpha;
+        }
+        return this;
+    }
+
+    public int getCounterBits() {
+        return counterBits;
+    }
+
+    /**
+     * Sets the width of the counter of a {@link MetricCalculationMode#COUNTER_RATE} or
+     * {@link MetricCalculationMode#WINDOW_RATE}, which decides whether a decrease is a wrap or a reset. A 32-bit counter
+     * (e.g. an SNMP Counter32) wraps at 2^32; a 64-bit counter dropping below 2^32 is reset.
+     *
+     * @param counterBits 32 or 64, other values are ignored
+     * @return This RawMetric instance
+     */
+    public RawMetric setCounterBits(int counterBits) {
+        if (counterBits == 32 || counterBits == 64) {
+            this.counterBits = counterBits;
+        }
+        return this;
+    }
+
     /**
      * Returns the bucket boundaries for long histograms.
      *
@@ -221,6 +312,56 @@ public class RawMetric {
         this.doubleBucketBoundaries = doubleBucketBoundaries;
     }
 
+    public MetricAggregation getAggregation() {
+        return aggregation;
+    }
+
+    /**
+     * Sets the aggregation of the metric, applied through a view when the meter provider is built. Explicit and
+     * exponential aggregations apply to histograms only; a dropped metric is not exported.
+     *
+     * @param aggregation The MetricAggregation
+     * @return This RawMetric instance
+     */
+    public RawMetric setAggregation(MetricAggregation aggregation) {
+        this.aggregation = aggregation;
+        return this;
+    }
+
+    public int getMaxBuckets() {
+        return maxBuckets;
+    }
+
+    /**
+     * Sets the maximal number of buckets of an exponential histogram, per sign of the values.
+     *
+     * @param maxBuckets Maximal number of buckets
+     * @return This RawMetric instance
+     */
+    public RawMetric setMaxBuckets(int maxBuckets) {
+        this.maxBuckets = maxBuckets;
+        return this;
+    }
+
+    /**
+     * Returns the bucket boundaries of the explicit aggregation: the double or long boundaries of the metric.
+     *
+     * @return Bucket boundaries, null for the SDK defaults
+     */
+    public List<Double> getBucketBoundaries() {
+        if (doubleBucketBoundaries != null) {
+            return doubleBucketBoundaries;
+        }
+        if (longBucketBoundaries == null) {
+            return null;
+        }
+        List<Double> boundaries = new ArrayList<>(longBucketBoundaries.size());
+        for (Long boundary : longBucketBoundaries) {
+            boundaries.add(boundary.doubleValue());
+        }
+        return boundaries;
+    }
+
     /**
      * Returns the long histogram for recording long values.
      *
@@ -258,11 +399,372 @@ public class RawMetric {
     }
 
     /**
-     * Purges outdated data points from the metric.
+     * Returns the polling interval of the metric.
+     *
+     * @return Polling interval in seconds, 0 if the metric is polled in every collection cycle
+     */
+    public int getPollInterval() {
+        return pollInterval;
+    }
+
+    /**
+     * Sets the polling interval of the metric. The outdated time is extended to five intervals, so the data points of
+     * a slowly polled metric are kept until the next poll.
+     *
+     * @param pollInterval Polling interval in seconds, 0 to poll in every collection cycle
+     * @return This RawMetric instance
+     */
+    public RawMetric setPollInterval(int pollInterval) {
+        this.pollInterval = pollInterval;
+        applyOutdatedTime(Math.max(outdatedTime, 5000L * pollInterval));
+        if (evictAfter > 0) {
+            evictAfter = Math.max(evictAfter, 2000L * pollInterval);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the maximal number of series of the metric.
+     *
+     * @return Maximal number of series, 0 for no limit
+     */
+    public int getMaxSeries() {
+        return maxSeries;
+    }
+
+    /**
+     * Sets the maximal number of series of the metric. When it is reached, a new series replaces the least recently
+     * updated one if that was not updated for the eviction time, otherwise it is recorded into the overflow series
+     * (attribute otel.metric.overflow="true"), which sums the rows of a collection cycle.
+     *
+     * @param maxSeries Maximal number of series, 0 for no limit
+     * @return This RawMetric instance
+     */
+    public RawMetric setMaxSeries(int maxSeries) {
+        this.maxSeries = Math.max(0, maxSeries);
+        return this;
+    }
+
+    /**
+     * Sets the time without update after which a series may be evicted for a new one when a limit is reached.
+     *
+     * @param evictAfter Time in milliseconds, 0 to never evict
+     * @return This RawMetric instance
+     */
+    public RawMetric setEvictAfter(long evictAfter) {
+        this.evictAfter = evictAfter;
+        return this;
+    }
+
+    public long getEvictAfter() {
+        return evictAfter;
+    }
+
+    /**
+     * Sets the limiter shared by the metrics of a Data Collector, see {@link SeriesLimiter}.
+     *
+     * @param seriesLimiter The SeriesLimiter, null for none
+     * @return This RawMetric instance
+     */
+    public RawMetric setSeriesLimiter(SeriesLimiter seriesLimiter) {
+        this.seriesLimiter = seriesLimiter;
+        return this;
+    }
+
+    public SeriesLimiter getSeriesLimiter() {
+        return seriesLimiter;
+    }
+
+    public SeriesPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets the priority of the series of the metric within the agent-wide series budget, see {@link SeriesBudget}.
+     *
+     * @param priority The SeriesPriority
+     * @return This RawMetric instance
+     */
+    public RawMetric setPriority(SeriesPriority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    /**
+     * Sets the clock of the collection cycles of a Data Collector, so the updates of a cycle are read only once the cycle
+     * has ended, see {@link GenerationClock}.
+     *
+     * @param generationClock The GenerationClock, null to read every update right away
+     * @return This RawMetric instance
+     */
+    public RawMetric setGenerationClock(GenerationClock generationClock) {
+        this.generationClock = generationClock;
+        return this;
+    }
+
+    public GenerationClock getGenerationClock() {
+        return generationClock;
+    }
+
+    long stagingGeneration() {
+        GenerationClock clock = generationClock;
+        if (clock == null) {
+            return 0;
+        }
+        // The generation of the cycle making the update, even if a later cycle has begun meanwhile
+        long generation = CycleContext.current().getGeneration();
+        return generation > 0 ? generation : clock.getStaging();
+    }
+
+    long publishedGeneration() {
+        GenerationClock clock = generationClock;
+        return clock == null ? Long.MAX_VALUE : clock.getPublished();
+    }
+
+    // Computes the value of a series from its current and previous values based on the calculation mode
+    boolean toSample(DataPoint.Sample sample, long current, long previous, long curTime, long prevTime) {
+        if (curTime == 0) {
+            return false;
+        }
+        sample.time = curTime;
+        if (calculationMode == MetricCalculationMode.DIRECT) {
+            if (isInteger) {
+                sample.longValue = current;
+                sample.doubleValue = current;
+            } else {
+                sample.doubleValue = Double.longBitsToDouble(current);
+                sample.longValue = (long) sample.doubleValue;
+            }
+            return true;
+        }
+        if (prevTime == 0 || curTime <= prevTime) {
+            return false;
+        }
+
+        double delta = isInteger ? current - previous : Double.longBitsToDouble(current) - Double.longBitsToDouble(previous);
+        sample.doubleValue = rateUnit * delta / (curTime - prevTime);
+        sample.longValue = (long) sample.doubleValue;
+        return true;
+    }
+
+    /**
+     * Returns the number of rows which were recorded into the overflow series because a limit was reached.
+     *
+     * @return Number of overflowed rows
+     */
+    public long getOverflowedRows() {
+        return overflowedRows.get();
+    }
+
+    /**
+     * Returns the number of series which were evicted for new ones.
+     *
+     * @return Number of evicted series
+     */
+    public long getEvictedSeries() {
+        return evictedSeries.get();
+    }
+
+    /**
+     * Returns the number of unchanged data points which were not exported, see {@link #setHeartbeat(long)}.
+     *
+     * @return Number of suppressed data points
+     */
+    public long getSuppressedPoints() {
+        return suppressedPoints.get();
+    }
+
+    /**
+     * Returns the estimated size in an OTLP payload of the unchanged data points which were not exported.
+     *
+     * @return Estimated number of bytes saved
+     */
+    public long getSuppressedBytes() {
+        return suppressedBytes.get();
+    }
+
+    public long getHeartbeat() {
+        return heartbeat;
+    }
+
+    /**
+     * Suppresses the export of unchanged values, for series which rarely change (e.g. db.status or the maximal depth of a
+     * queue). A value equal to the last exported one with the same attributes is exported again only once the heartbeat
+     * elapsed, so a backend which marks a series stale after a time without samples (5 minutes in Prometheus) keeps it.
+     * It must not be used with a pull exporter, where an omitted series is stale at once. Series stored off the heap are
+     * always exported.
+     *
+     * @param heartbeat Time in milliseconds after which an unchanged value is exported again, 0 to export every value
+     * @return This RawMetric instance
+     */
+    public RawMetric setHeartbeat(long heartbeat) {
+        this.heartbeat = Math.max(0, heartbeat);
+        return this;
+    }
+
+    /**
+     * Checks if the metric is due to be polled and, if so, records the poll. A metric without its own polling interval
+     * is always due. A small tolerance absorbs the jitter of the collection cycles.
+     *
+     * @param now The current time in milliseconds
+     * @return True if the metric should be polled now, false otherwise
+     */
+    public synchronized boolean claimPoll(long now) {
+        if (pollInterval <= 0) {
+            return true;
+        }
+        long interval = 1000L * pollInterval;
+        if (lastPollTime != 0 && now - lastPollTime < interval - interval / 20) {
+            return false;
+        }
+        lastPollTime = now;
+        return true;
+    }
+
+    /**
+     * Purges outdated data points from the metric. Only the expired buckets of the expiry index are visited, so the cost
+     * is proportional to the number of data points expiring rather than to the number of series. A data point is
+     * removed up to a quarter of the outdated time after it became outdated.
      */
     public void purgeOutdatedDps() {
         long tm = System.currentTimeMillis();
-        dps.entrySet().removeIf(entry -> tm - entry.getValue().getCurrentTime() > outdatedTime);
+        for (DataPoint dp : expiryIndex.pollExpired(tm - outdatedTime)) {
+            // Data points updated since they were indexed are in a newer bucket as well
+            if (tm - dp.getCurrentTime() > outdatedTime && dps.remove(dp.getKey(), dp)) {
+                releaseSeries(dp);
+            }
+        }
+    }
+
+    private void track(DataPoint dp, long time) {
+        long bucket = expiryIndex.bucketOf(time);
+        if (dp.expiryBucket != bucket) {
+            dp.expiryBucket = bucket;
+            expiryIndex.add(dp, bucket);
+        }
+    }
+
+    private void applyOutdatedTime(long outdatedTime) {
+        if (outdatedTime == this.outdatedTime) {
+            return;
+        }
+        this.outdatedTime = outdatedTime;
+        // Index the data points again, so the buckets match the new outdated time
+        expiryIndex.clear();
+        expiryIndex.setWidth(outdatedTime / 4);
+        long tm = System.currentTimeMillis();
+        for (DataPoint dp : dps.values()) {
+            dp.expiryBucket = 0;
+            track(dp, dp.getCurrentTime() != 0 ? dp.getCurrentTime() : tm);
+        }
+    }
+
+    private void releaseSeries(DataPoint dp) {
+        if (!(dp instanceof OverflowDataPoint)) {
+            releaseSeries();
+        }
+    }
+
+    void releaseSeries() {
+        if (seriesLimiter != null) {
+            seriesLimiter.release();
+        }
+    }
+
+    // Takes a slot for a new series of the off-heap store within the limits of the metric and the limiter
+    boolean acquireSeries(int storedSeries) {
+        if (maxSeries > 0 && storedSeries + getSeriesCount() >= maxSeries) {
+            return false;
+        }
+        return seriesLimiter == null || seriesLimiter.tryAcquire(priority);
+    }
+
+    // Counts a series of the off-heap store evicted for a new one
+    void countEvictedSeries() {
+        evictedSeries.incrementAndGet();
+    }
+
+    // Records a row of the off-heap store into the overflow series
+    void recordOverflow(MetricColumns columns, int row) {
+        overflowedRows.incrementAndGet();
+        DataPoint overflow = dps.computeIfAbsent(OVERFLOW_KEY, k -> new OverflowDataPoint(this));
+        if (columns.isDouble(row)) {
+            overflow.setDoubleValue(columns.getDoubleValue(row));
+        } else {
+            overflow.setLongValue(columns.getLongValue(row));
+        }
+    }
+
+    /**
+     * Checks if the values between exports are aggregated. Only the values of the DIRECT calculation mode are, since
+     * the values of the other modes are calculated from several samples when they are read.
+     *
+     * @return True if the metric is windowed and its calculation mode is DIRECT
+     */
+    public boolean isWindowed() {
+        return windowed && calculationMode == MetricCalculationMode.DIRECT;
+    }
+
+    /**
+     * Aggregates the values of every series between two exports into a {@link SampleWindow}, exported as the extra
+     * gauges name.min, name.max, name.sum and name.count. Meant for gauges polled more often than they are exported.
+     * Series stored off the heap, and metrics with a calculation mode other than DIRECT, are not aggregated.
+     *
+     * @param windowed True to aggregate the values between exports
+     * @return This RawMetric instance
+     */
+    public RawMetric setWindowed(boolean windowed) {
+        this.windowed = windowed;
+        return this;
+    }
+
+    public boolean isOffHeap() {
+        return offHeapStore != null;
+    }
+
+    /**
+     * Keeps the series recorded by {@link #setValues(MetricColumns)} and {@link #setValue(List)} off the heap, in a
+     * direct ByteBuffer, instead of DataPoint objects. Meant for metrics with tens of thousands of series. These series
+     * are not part of {@link #getDataPoints()}; they are exported by {@link #forEachOffHeapSample} and purged while
+     * exported. Values set through a DataPoint, and the series of a stateful {@link MetricCalculationMode}, are still
+     * kept on the heap.
+     *
+     * @param offHeap True to store the series off the heap
+     * @return This RawMetric instance
+     */
+    public synchronized RawMetric setOffHeap(boolean offHeap) {
+        if (offHeap && offHeapStore == null) {
+            offHeapStore = new OffHeapSeriesStore(this);
+        } else if (!offHeap && offHeapStore != null) {
+            for (int i = offHeapStore.size(); i > 0; i--) {
+                releaseSeries();
+            }
+            offHeapStore = null;
+        }
+        return this;
+    }
+
+    /**
+     * Returns the number of series stored off the heap.
+     *
+     * @return The number of series, 0 if the metric is not stored off the heap
+     */
+    public int getOffHeapSeriesCount() {
+        OffHeapSeriesStore store = offHeapStore;
+        return store == null ? 0 : store.size();
+    }
+
+    /**
+     * Reads the series stored off the heap without creating objects per series, and purges the outdated ones.
+     *
+     * @param sample   Receives the value of each series, reused for all series
+     * @param consumer Called with the sample and the attributes of every series with a value
+     */
+    public void forEachOffHeapSample(DataPoint.Sample sample, BiConsumer<DataPoint.Sample, Attributes> consumer) {
+        OffHeapSeriesStore store = offHeapStore;
+        if (store != null) {
+            store.forEach(sample, consumer);
+        }
     }
 
     /**
@@ -290,10 +792,90 @@ public class RawMetric {
      * @return This RawMetric instance
      */
     public RawMetric setOutdatedTime(long outdatedTime) {
-        this.outdatedTime = outdatedTime;
+        outdatedTimeSet = true;
+        applyOutdatedTime(outdatedTime);
         return this;
     }
 
+    /**
+     * Sets the outdated time derived from the effective poll interval of the Data Collector, unless the outdated time was
+     * set explicitly. The outdated time is not shorter than five poll intervals of the metric itself.
+     *
+     * @param outdatedTime Default time after which data points are considered outdated
+     * @return This RawMetric instance
+     */
+    public RawMetric setDefaultOutdatedTime(long outdatedTime) {
+        if (!outdatedTimeSet && outdatedTime > 0) {
+            applyOutdatedTime(Math.max(outdatedTime, 5000L * pollInterval));
+        }
+        return this;
+    }
+
+    /**
+     * Returns the recording handle of a histogram for a set of attributes. Handles are cached, so the attributes are
+     * converted once and recording repeated attributes does not allocate. A cached handle not used for the outdated time
+     * of the metric is evicted, like an outdated data point; a handle kept by the caller remains usable.
+     *
+     * @param attributes Attributes of the recorded values, may be null
+     * @return The HistogramHandle
+     */
+    public HistogramHandle getHistogramHandle(Map<String, ?> attributes) {
+        Map<String, ?> key = attributes == null || attributes.isEmpty() ? AttributeSet.empty() : attributes;
+        HistogramHandle handle = histogramHandles.get(key);
+        if (handle != null) {
+            handle.markUsed();
+            return handle;
+        }
+        evictUnusedHandles();
+        handle = new HistogramHandle(this, AttributeSet.of(key));
+        if (histogramHandles.size() < MAX_HISTOGRAM_HANDLES) {
+            HistogramHandle cached = histogramHandles.putIfAbsent(handle.getAttributes(), handle);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        return handle;
+    }
+
+    // Evicts the cached histogram handles not used since the previous sweep, at most once per outdated time
+    private void evictUnusedHandles() {
+        long now = System.currentTimeMillis();
+        if (now - handlesSweepTime < outdatedTime) {
+            return;
+        }
+        handlesSweepTime = now;
+        histogramHandlesByKey.values().removeIf(handle -> !handle.isUsed());
+        histogramHandles.values().removeIf(handle -> !handle.clearUsed());
+    }
+
+    // Records a row into the histogram, reusing the handle of the previous row with the same key
+    private void recordHistogram(MetricColumns columns, int row) {
+        String key = columns.getKey(row) == null ? DcUtil.DEFAULT : columns.getKey(row);
+        HistogramHandle handle = histogramHandlesByKey.get(key);
+        AttributeSet attributes = attributesOf(handle == null ? AttributeSet.empty() : handle.getAttributes(), columns, row);
+        if (handle == null || attributes != handle.getAttributes()) {
+            handle = getHistogramHandle(attributes);
+            if (histogramHandlesByKey.size() < MAX_HISTOGRAM_HANDLES) {
+                histogramHandlesByKey.put(key, handle);
+            }
+        } else {
+            handle.markUsed();
+        }
+        if (dc != null && !dc.preRecordMetric(name, columns.getValue(row), handle.getAttributes())) {
+            return;
+        }
+        if (columns.isDouble(row)) {
+            handle.record(columns.getDoubleValue(row));
+        } else {
+            handle.record(columns.getLongValue(row));
+        }
+    }
+
+    // Checks the metric restrictions of the Data Collector
+    boolean isRecordable() {
+        return dc == null || dc.preRecordMetric(this);
+    }
+
     /**
      * Sets a value for the metric.
      *
@@ -323,16 +905,54 @@ public class RawMetric {
     public RawMetric setValue(Number value, Map<String, Object> attributes) {
         if (longHistogram != null) {
             if (dc.preRecordMetric(name, value, attributes))
-                longHistogram.record(value.longValue(), DcUtil.convertMapToAttributes(attributes));
+                longHistogram.record(value.longValue(), getHistogramHandle(attributes).getOtelAttributes());
         } else if (doubleHistogram != null) {
             if (dc.preRecordMetric(name, value, attributes))
-                doubleHistogram.record(value.doubleValue(), DcUtil.convertMapToAttributes(attributes));
+                doubleHistogram.record(value.doubleValue(), getHistogramHandle(attributes).getOtelAttributes());
         } else {
             getDataPoint(null).setValue(value, attributes);
         }
         return this;
     }
 
+    /**
+     * Sets a long value for the metric without boxing it, unless the metric is a histogram.
+     *
+     * @param value      Value to be set for the metric
+     * @param attributes Attributes associated with the value, may be null
+     * @return This RawMetric instance
+     */
+    public RawMetric setLongValue(long value, Map<String, Object> attributes) {
+        if (longHistogram != null || doubleHistogram != null) {
+            return attributes == null ? setValue(value) : setValue(value, attributes);
+        }
+        DataPoint dp = getDataPoint(null);
+        dp.setLongValue(value);
+        if (attributes != null) {
+            dp.setAttributes(attributes);
+        }
+        return this;
+    }
+
+    /**
+     * Sets a double value for the metric without boxing it, unless the metric is a histogram.
+     *
+     * @param value      Value to be set for the metric
+     * @param attributes Attributes associated with the value, may be null
+     * @return This RawMetric instance
+     */
+    public RawMetric setDoubleValue(double value, Map<String, Object> attributes) {
+        if (longHistogram != null || doubleHistogram != null) {
+            return attributes == null ? setValue(value) : setValue(value, attributes);
+        }
+        DataPoint dp = getDataPoint(null);
+        dp.setDoubleValue(value);
+        if (attributes != null) {
+            dp.setAttributes(attributes);
+        }
+        return this;
+    }
+
     /**
      * Sets a value for the metric based on a MetricQueryResult.
      *
@@ -343,10 +963,10 @@ public class RawMetric {
         if (result != null) {
             if (longHistogram != null) {
                 if (dc.preRecordMetric(name, result.getValue(), result.getAttributes()))
-                    longHistogram.record(result.getValue().longValue(), DcUtil.convertMapToAttributes(result.getAttributes()));
+                    longHistogram.record(result.getValue().longValue(), getHistogramHandle(result.getAttributes()).getOtelAttributes());
             } else if (doubleHistogram != null) {
                 if (dc.preRecordMetric(name, result.getValue(), result.getAttributes()))
-                    doubleHistogram.record(result.getValue().doubleValue(), DcUtil.convertMapToAttributes(result.getAttributes()));
+                    doubleHistogram.record(result.getValue().doubleValue(), getHistogramHandle(result.getAttributes()).getOtelAttributes());
             } else {
                 getDataPoint(result.getKey()).setValue(result);
             }
@@ -362,21 +982,74 @@ public class RawMetric {
      */
     public RawMetric setValue(List<MetricQueryResult> results) {
         if (results != null) {
-            for (MetricQueryResult result : results) {
-                if (longHistogram != null) {
-                    if (dc.preRecordMetric(name, result.getValue(), result.getAttributes()))
-                        longHistogram.record(result.getValue().longValue(), DcUtil.convertMapToAttributes(result.getAttributes()));
-                } else if (doubleHistogram != null) {
-                    if (dc.preRecordMetric(name, result.getValue(), result.getAttributes()))
-                        doubleHistogram.record(result.getValue().doubleValue(), DcUtil.convertMapToAttributes(result.getAttributes()));
-                } else {
-                    getDataPoint(result.getKey()).setValue(result);
+            synchronized (resultColumns) {
+                for (MetricQueryResult result : results) {
+                    resultColumns.add(result);
+                }
+                try {
+                    setValues(resultColumns);
+                } finally {
+                    resultColumns.clear();
                 }
             }
         }
         return this;
     }
 
+    /**
+     * Sets values for the metric based on the rows of a columnar query result. The data points are updated in place,
+     * and their attributes are only rebuilt when they changed.
+     *
+     * @param columns MetricColumns containing the keys, values and attributes of the rows
+     * @return This RawMetric instance
+     */
+    public RawMetric setValues(MetricColumns columns) {
+        if (columns == null) {
+            return this;
+        }
+        OffHeapSeriesStore store = offHeapStore;
+        if (store != null && longHistogram == null && doubleHistogram == null && !calculationMode.isStateful()) {
+            store.record(columns);
+            return this;
+        }
+        for (int row = 0; row < columns.size(); row++) {
+            if (longHistogram != null || doubleHistogram != null) {
+                recordHistogram(columns, row);
+                continue;
+            }
+            DataPoint dp = getDataPoint(columns.getKey(row));
+            if (columns.isDouble(row)) {
+                dp.setDoubleValue(columns.getDoubleValue(row));
+            } else {
+                dp.setLongValue(columns.getLongValue(row));
+            }
+            dp.setAttributes(columns, row);
+        }
+        return this;
+    }
+
+    // Returns the attributes of a row, or the current ones if they did not change
+    static AttributeSet attributesOf(AttributeSet current, MetricColumns columns, int row) {
+        String[] names = columns.getAttributeNames();
+        int count = 0;
+        boolean changed = false;
+        for (int column = 0; column < names.length && !changed; column++) {
+            Object value = columns.getAttribute(row, column);
+            if (value != null) {
+                count++;
+                changed = !value.equals(current.get(names[column]));
+            }
+        }
+        if (!changed && count == current.size()) {
+            return current;
+        }
+        Object[] values = new Object[names.length];
+        for (int column = 0; column < names.length; column++) {
+            values[column] = columns.getAttribute(row, column);
+        }
+        return AttributeSet.of(names, values, names.length);
+    }
+
     /**
      * Returns a data point for the specified key.
      *
@@ -387,19 +1060,144 @@ public class RawMetric {
         if (key == null) {
             key = DcUtil.DEFAULT;
         }
-        return dps.computeIfAbsent(key, k -> new DataPoint(this, k));
+        DataPoint dp = dps.get(key);
+        if (dp != null) {
+            return dp;
+        }
+        if (maxSeries <= 0 && seriesLimiter == null) {
+            return dps.computeIfAbsent(key, k -> new DataPoint(this, k));
+        }
+        return addDataPoint(key);
+    }
+
+    // Creates a series within the limits, evicting a stale one or falling back to the overflow series
+    private synchronized DataPoint addDataPoint(String key) {
+        DataPoint dp = dps.get(key);
+        if (dp != null) {
+            return dp;
+        }
+        boolean full = maxSeries > 0 && getSeriesCount() >= maxSeries;
+        if (full && !evictStaleSeries()) {
+            return getOverflowDataPoint();
+        }
+        if (seriesLimiter != null && !seriesLimiter.tryAcquire(priority) && !(evictStaleSeries() && seriesLimiter.tryAcquire(priority))) {
+            return getOverflowDataPoint();
+        }
+        dp = new DataPoint(this, key);
+        dps.put(key, dp);
+        return dp;
+    }
+
+    private int getSeriesCount() {
+        return dps.size() - (dps.containsKey(OVERFLOW_KEY) ? 1 : 0);
+    }
+
+    // Evicts the least recently updated series, found in the expiry index, if it is not updated for the eviction time
+    private boolean evictStaleSeries() {
+        if (evictAfter <= 0) {
+            return false;
+        }
+        DataPoint oldest = expiryIndex.oldest(dp -> dps.get(dp.getKey()) == dp, dp -> dp instanceof OverflowDataPoint);
+        if (oldest == null || System.currentTimeMillis() - oldest.getCurrentTime() < evictAfter || !dps.remove(oldest.getKey(), oldest)) {
+            return false;
+        }
+        releaseSeries(oldest);
+        evictedSeries.incrementAndGet();
+        return true;
+    }
+
+    private DataPoint getOverflowDataPoint() {
+        overflowedRows.incrementAndGet();
+        return dps.computeIfAbsent(OVERFLOW_KEY, k -> new OverflowDataPoint(this));
+    }
+
+    /**
+     * The series receiving the rows of new series once a limit is reached. It sums the values recorded within a
+     * collection cycle and keeps its own attribute.
+     */
+    private static class OverflowDataPoint extends DataPoint {
+        private double sum = 0; // Sum of the values recorded in the cycle
+        private long cycle = -1; // The cycle of the sum
+
+        OverflowDataPoint(RawMetric rawMetric) {
+            super(rawMetric, OVERFLOW_KEY);
+            super.setAttributes(Collections.singletonMap(OVERFLOW_KEY, "true"));
+        }
+
+        private synchronized void add(double value) {
+            SeriesLimiter limiter = getRawMetric().getSeriesLimiter();
+            long current = limiter == null ? getRawMetric().stagingGeneration() : limiter.getCycle();
+            if (current != cycle) {
+                cycle = current;
+                sum = 0;
+            }
+            sum += value;
+            if (getRawMetric().isInteger()) {
+                super.setLongValue((long) sum);
+            } else {
+                super.setDoubleValue(sum);
+            }
+        }
+
+        @Override
+        public void setValue(Number value) {
+            if (value != null) {
+                add(value.doubleValue());
+            }
+        }
+
+        @Override
+        public void setLongValue(long value) {
+            add(value);
+        }
+
+        @Override
+        public void setDoubleValue(double value) {
+            add(value);
+        }
+
+        @Override
+        public void setAttributes(Map<String, Object> attributes) {
+        }
+
+        @Override
+        public void setAttributes(MetricColumns columns, int row) {
+        }
     }
 
     /**
      * Represents a data point within a RawMetric.
+     * <p>
+     * The current and previous values are kept as primitives: the raw value for integer metrics, the raw bits of the
+     * double otherwise. They are written under a lock and read lock-free with a sequence counter (seqlock), so a reader
+     * always sees a current value together with its own previous value and times, and the export path computes a rate
+     * without allocating a Number, see {@link #read(Sample)}.
+     * <p>
+     * With a {@link GenerationClock}, each value is tagged with the generation of the cycle which recorded it. A value of
+     * a cycle still running is not read; the previous value and the one before it are read instead, which is why a third
+     * value is kept. Updates within one generation replace the current value.
      */
     public static class DataPoint {
         private final RawMetric rawMetric; // RawMetric associated with the data point
         private final String key; // Key for the data point
+        private final boolean isInteger; // Indicates if the values are stored as longs or as double bits
 
-        private Number currentValue, previousValue; // Current and previous values of the data point
-        private long currentTime, previousTime; // Current and previous times of the data point
-        private final Map<String, Object> attributes = new ConcurrentHashMap<>(); // Attributes associated with the data point
+        private volatile long version = 0; // Odd while an update is in progress
+        private volatile long currentBits, previousBits, previous2Bits; // Current and the two previous values of the data point
+        private volatile long currentTime, previousTime, previous2Time; // Times of the values, 0 if not set
+        private volatile long currentGeneration; // Generation of the current value, 0 without a GenerationClock
+        private volatile Number currentNumber; // The current value as recorded, null if set as a primitive
+        private volatile AttributeSet attributes = AttributeSet.empty(); // Attributes associated with the data point
+        private volatile long expiryBucket; // Bucket of the expiry index the data point was added to last
+        private volatile SampleWindow window; // Values since the previous export, null if the metric is not windowed
+        private SampleWindow exportedWindow; // Values of the window ended by the latest export, only used by the export callback
+        private volatile SeriesCalculator calculator; // State of a stateful calculation mode, null for the other modes
+        // State of the last export, only used by the export callback
+        private long exportedLong;
+        private long exportedDoubleBits;
+        private long exportedTime;
+        private AttributeSet exportedAttributes;
+        private int exportedBytes;
 
         /**
          * Constructs a new DataPoint with specified parameters.
@@ -410,11 +1208,12 @@ public class RawMetric {
         public DataPoint(RawMetric rawMetric, String key) {
             this.rawMetric = rawMetric;
             this.key = key;
+            this.isInteger = rawMetric.isInteger();
+            rawMetric.track(this, System.currentTimeMillis());
+        }
 
-            this.currentValue = null;
-            this.previousValue = null;
-            this.currentTime = 0;
-            this.previousTime = 0;
+        long getExpiryBucket() {
+            return expiryBucket;
         }
 
         /**
@@ -442,26 +1241,19 @@ public class RawMetric {
          */
         public Number getValue() {
             if (rawMetric.getCalculationMode() == MetricCalculationMode.DIRECT) {
-                return currentValue;
+                Number number = currentNumber;
+                if (number != null && currentGeneration <= rawMetric.publishedGeneration()) {
+                    return number;
+                }
             }
-            if (currentValue == null || previousValue == null || currentTime <= previousTime) {
+            Sample sample = new Sample();
+            if (!read(sample)) {
                 return null;
             }
-
-            long longDelta = 0;
-            double doubleDelta = 0;
-            if (rawMetric.isInteger()) {
-                longDelta = currentValue.longValue() - previousValue.longValue();
-            } else {
-                doubleDelta = currentValue.doubleValue() - previousValue.doubleValue();
-            }
-
-            long timeDelta = currentTime - previousTime;
-            if (rawMetric.isInteger()) {
-                return rawMetric.getRateUnit() * longDelta / timeDelta;
-            } else {
-                return rawMetric.getRateUnit() * doubleDelta / timeDelta;
+            if (isInteger && rawMetric.getCalculationMode() == MetricCalculationMode.DIRECT) {
+                return sample.longValue;
             }
+            return sample.doubleValue;
         }
 
         /**
@@ -490,6 +1282,56 @@ public class RawMetric {
             return number.longValue();
         }
 
+        /**
+         * Reads a consistent value of the data point based on the calculation mode, without allocation. With a
+         * {@link GenerationClock}, the value is the one of the published generation.
+         *
+         * @param sample Receives the value, may be reused across data points
+         * @return True if the data point has a value, false otherwise (e.g. a rate before the second poll)
+         */
+        public boolean read(Sample sample) {
+            long published = rawMetric.publishedGeneration();
+            MetricCalculationMode mode = rawMetric.getCalculationMode();
+            SeriesCalculator calculator = this.calculator;
+            if (mode.isStateful() && (calculator == null || calculator.getMode() != mode)) {
+                return false;
+            }
+            long version, current, previous, curTime, prevTime;
+            boolean calculated = false;
+            double calculatedValue = 0;
+            do {
+                version = this.version;
+                boolean isPublished = currentGeneration <= published;
+                if (isPublished) {
+                    current = currentBits;
+                    previous = previousBits;
+                    curTime = currentTime;
+                    prevTime = previousTime;
+                } else {
+                    // Updated by a running cycle
+                    current = previousBits;
+                    previous = previous2Bits;
+                    curTime = previousTime;
+                    prevTime = previous2Time;
+                }
+                if (mode.isStateful()) {
+                    calculated = calculator.hasValue(!isPublished);
+                    calculatedValue = calculator.getValue(!isPublished);
+                }
+            } while ((version & 1) != 0 || version != this.version);
+
+            if (mode.isStateful()) {
+                if (!calculated || curTime == 0) {
+                    return false;
+                }
+                sample.time = curTime;
+                sample.doubleValue = calculatedValue;
+                sample.longValue = (long) calculatedValue;
+                return true;
+            }
+            return rawMetric.toSample(sample, current, previous, curTime, prevTime);
+        }
+
         /**
          * Sets the value of the data point.
          *
@@ -499,11 +1341,60 @@ public class RawMetric {
             if (value == null) {
                 return;
             }
-            this.previousValue = this.currentValue;
-            this.previousTime = this.currentTime;
-            this.currentValue = value;
-            this.currentTime = System.currentTimeMillis();
-            logger.info("New metric value: " + rawMetric.getName() + '/' + key + '=' + value);
+            update(isInteger ? value.longValue() : Double.doubleToRawLongBits(value.doubleValue()), value);
+        }
+
+        /**
+         * Sets a long value of the data point without boxing.
+         *
+         * @param value Value to be set for the data point
+         */
+        public void setLongValue(long value) {
+            update(isInteger ? value : Double.doubleToRawLongBits(value), null);
+        }
+
+        /**
+         * Sets a double value of the data point without boxing.
+         *
+         * @param value Value to be set for the data point
+         */
+        public void setDoubleValue(double value) {
+            update(isInteger ? (long) value : Double.doubleToRawLongBits(value), null);
+        }
+
+        private synchronized void update(long bits, Number number) {
+            long generation = rawMetric.stagingGeneration();
+            long version = this.version;
+            this.version = version + 1;
+            boolean shift = generation == 0 || generation != currentGeneration;
+            MetricCalculationMode mode = rawMetric.getCalculationMode();
+            if (mode.isStateful()) {
+                if (calculator == null || calculator.getMode() != mode) {
+                    calculator = new SeriesCalculator(rawMetric);
+                }
+                calculator.add(bits, System.nanoTime(), shift);
+            }
+            if (shift) {
+                previous2Bits = previousBits;
+                previous2Time = previousTime;
+                previousBits = currentBits;
+                previousTime = currentTime;
+            }
+            currentBits = bits;
+            currentTime = System.currentTimeMillis();
+            currentGeneration = generation;
+            currentNumber = number;
+            this.version = version + 2;
+            if (rawMetric.isWindowed()) {
+                if (window == null) {
+                    window = new SampleWindow();
+                }
+                window.add(isInteger ? bits : Double.longBitsToDouble(bits));
+            }
+            rawMetric.track(this, currentTime);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("New metric value: " + rawMetric.getName() + '/' + key + '=' + (isInteger ? String.valueOf(bits) : String.valueOf(Double.longBitsToDouble(bits))));
+            }
         }
 
         /**
@@ -517,10 +1408,7 @@ public class RawMetric {
                 return;
             }
             setValue(value);
-            this.attributes.clear();
-            if (attributes != null) {
-                this.attributes.putAll(attributes);
-            }
+            setAttributes(attributes);
         }
 
         /**
@@ -534,15 +1422,46 @@ public class RawMetric {
             }
         }
 
+        /**
+         * Sets the attributes of the data point. They are replaced only if the content changed, so polls returning the
+         * same attributes keep the prebuilt OpenTelemetry attributes and do not allocate.
+         *
+         * @param attributes Attributes associated with the value, null for none
+         */
+        public synchronized void setAttributes(Map<String, Object> attributes) {
+            if (!this.attributes.contentEquals(attributes)) {
+                this.attributes = AttributeSet.of(attributes);
+            }
+        }
+
+        /**
+         * Sets the attributes of the data point from a row of columns, without building a set if they did not change.
+         *
+         * @param columns MetricColumns containing the attributes
+         * @param row     Index of the row
+         */
+        public synchronized void setAttributes(MetricColumns columns, int row) {
+            attributes = attributesOf(attributes, columns, row);
+        }
+
         /**
          * Returns the attributes associated with the data point.
          *
-         * @return Attributes associated with the data point
+         * @return Immutable attributes associated with the data point, an {@link AttributeSet}
          */
         public Map<String, Object> getAttributes() {
             return attributes;
         }
 
+        /**
+         * Returns the attributes of the data point as OpenTelemetry attributes, built once per attribute set.
+         *
+         * @return OpenTelemetry attributes of the data point
+         */
+        public Attributes getOtelAttributes() {
+            return attributes.toAttributes();
+        }
+
         /**
          * Returns the current time of the data point.
          *
@@ -551,5 +1470,103 @@ public class RawMetric {
         public long getCurrentTime() {
             return currentTime;
         }
+
+        /**
+         * Checks if a sample read for an export can be left out because it equals the last exported value, see
+         * {@link RawMetric#setHeartbeat(long)}. Otherwise, the sample becomes the last exported value.
+         *
+         * @param sample The sample read from the data point
+         * @param now    The time of the export
+         * @return True if the sample is not to be exported, false otherwise
+         */
+        public boolean suppress(Sample sample, long now) {
+            long heartbeat = rawMetric.getHeartbeat();
+            if (heartbeat == 0) {
+                return false;
+            }
+            long doubleBits = Double.doubleToRawLongBits(sample.getDoubleValue());
+            AttributeSet attributes = this.attributes;
+            if (exportedAttributes == attributes && exportedLong == sample.getLongValue() && exportedDoubleBits == doubleBits
+                    && now - exportedTime < heartbeat) {
+                rawMetric.suppressedPoints.incrementAndGet();
+                rawMetric.suppressedBytes.addAndGet(exportedBytes);
+                return true;
+            }
+            if (exportedAttributes != attributes) {
+                exportedAttributes = attributes;
+                exportedBytes = estimateBytes(attributes);
+            }
+            exportedLong = sample.getLongValue();
+            exportedDoubleBits = doubleBits;
+            exportedTime = now;
+            return false;
+        }
+
+        // Estimates the size of a number data point in an OTLP payload: the times and the value as fixed 64-bit fields,
+        // and every attribute as a key value pair
+        private static int estimateBytes(AttributeSet attributes) {
+            int bytes = 2 + 3 * 9;
+            for (int i = 0; i < attributes.size(); i++) {
+                bytes += 8 + attributes.keyAt(i).length() + String.valueOf(attributes.valueAt(i)).length();
+            }
+            return bytes;
+        }
+
+        /**
+         * Returns the values of the data point since the previous export.
+         *
+         * @return The SampleWindow, null if the metric is not windowed or has no value yet
+         */
+        public SampleWindow getWindow() {
+            return window;
+        }
+
+        /**
+         * Ends the window of the data point at a periodic export. The ended window is read by every collection until the
+         * next export, see {@link #getExportedWindow()}. Only called by the export callback.
+         *
+         * @return True if the ended window has values
+         */
+        public boolean endWindow() {
+            SampleWindow window = this.window;
+            if (window == null) {
+                return false;
+            }
+            if (exportedWindow == null) {
+                exportedWindow = new SampleWindow();
+            }
+            return window.drainTo(exportedWindow);
+        }
+
+        /**
+         * Returns the window ended by the latest periodic export.
+         *
+         * @return The SampleWindow, null if no window has ended yet
+         */
+        public SampleWindow getExportedWindow() {
+            return exportedWindow;
+        }
+
+        /**
+         * A value read from a data point by {@link DataPoint#read(Sample)}. It is mutable, so one instance serves all
+         * data points of an export.
+         */
+        public static final class Sample {
+            private long longValue; // The value truncated to a long
+            private double doubleValue; // The value as a double
+            private long time; // The time of the current value
+
+            public long getLongValue() {
+                return longValue;
+            }
+
+            public double getDoubleValue() {
+                return doubleValue;
+            }
+
+            public long getTime() {
+                return time;
+            }
+        }
     }
-}
\ No newline at end of file
+}
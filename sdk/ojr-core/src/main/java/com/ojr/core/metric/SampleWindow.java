@@ -0,0 +1,62 @@
+package com.ojr.core.metric;
+
+/**
+ * The minimum, maximum, sum and count of the values of a series since the previous export, so spikes between two
+ * exports of a gauge polled more often than it is exported are not lost. The last value is the value of the series
+ * itself. A window takes constant memory and is reset by {@link #drainTo(SampleWindow)}.
+ */
+public final class SampleWindow {
+    private double min; // Minimal value of the window
+    private double max; // Maximal value of the window
+    private double sum; // Sum of the values of the window
+    private long count = 0; // Number of values of the window
+
+    /**
+     * Adds a value to the window.
+     *
+     * @param value The value
+     */
+    public synchronized void add(double value) {
+        if (count == 0) {
+            min = value;
+            max = value;
+            sum = value;
+        } else {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+        }
+        count++;
+    }
+
+    /**
+     * Copies the window into another one and starts a new window.
+     *
+     * @param target Receives the window, may be reused across series
+     * @return True if the window has values, false otherwise
+     */
+    public synchronized boolean drainTo(SampleWindow target) {
+        target.min = min;
+        target.max = max;
+        target.sum = sum;
+        target.count = count;
+        count = 0;
+        return target.count > 0;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,135 @@
+package com.ojr.core.metric;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.Meter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Agent-wide budget of the series (data points) held by all Data Collector instances in the JVM, so one misbehaving
+ * target cannot exhaust the heap shared with the monitoring of all other targets. The budget is given as a number of
+ * series, as estimated bytes, or both; bytes are converted with {@link #BYTES_PER_SERIES}.
+ * <p>
+ * The {@link SeriesLimiter} of every instance takes a slot of the budget for each new series. When the budget fills up,
+ * new series are shed by priority: LOW series are refused first, then NORMAL ones, while HIGH series (status and
+ * metadata) may use the full budget, see {@link SeriesPriority}. A shed row is recorded into the overflow series of its
+ * metric. A refused series tries again with its next row, so the shed rows are counted rather than distinct series.
+ */
+public class SeriesBudget {
+    public static final long BYTES_PER_SERIES = 400L; // Estimated heap retained per series, see SeriesMemoryBenchmark
+
+    public static final String SERIES_NAME = "ojr.agent.series";
+    public static final String UTILIZATION_NAME = "ojr.agent.series.utilization";
+    public static final String SHED_ROWS_NAME = "ojr.agent.series.shed.rows";
+    private static final AttributeKey<String> PRIORITY_KEY = AttributeKey.stringKey("ojr.priority");
+
+    private static SeriesBudget defaultBudget = null;
+
+    private final int maxSeries; // Maximal number of series, 0 for no limit
+    private final AtomicInteger series = new AtomicInteger(); // Number of series holding a slot
+    private final AtomicLong[] shedRows = new AtomicLong[SeriesPriority.values().length]; // Number of rows of new series shed by priority
+
+    /**
+     * Constructs a new SeriesBudget. The stricter of both limits applies.
+     *
+     * @param maxSeries Maximal number of series, 0 for no limit
+     * @param maxBytes  Maximal estimated bytes of the series, 0 for no limit
+     */
+    public SeriesBudget(int maxSeries, long maxBytes) {
+        long limit = Math.max(0, maxSeries);
+        if (maxBytes > 0) {
+            long bytesLimit = Math.max(1, maxBytes / BYTES_PER_SERIES);
+            limit = limit > 0 ? Math.min(limit, bytesLimit) : bytesLimit;
+        }
+        this.maxSeries = (int) Math.min(Integer.MAX_VALUE, limit);
+        for (int i = 0; i < shedRows.length; i++) {
+            shedRows[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * Returns the process-wide budget used by Data Collectors which are not managed by an agent. It has no limit.
+     *
+     * @return The default SeriesBudget
+     */
+    public static synchronized SeriesBudget getDefault() {
+        if (defaultBudget == null) {
+            defaultBudget = new SeriesBudget(0, 0);
+        }
+        return defaultBudget;
+    }
+
+    public int getMaxSeries() {
+        return maxSeries;
+    }
+
+    public int getSeries() {
+        return series.get();
+    }
+
+    /**
+     * Returns the used share of the budget.
+     *
+     * @return Number of series divided by the maximal number of series, 0 if there is no limit
+     */
+    public double getUtilization() {
+        return maxSeries > 0 ? (double) series.get() / maxSeries : 0;
+    }
+
+    /**
+     * Returns the number of rows of new series refused so far. A series refused in several cycles counts once per row.
+     *
+     * @param priority Priority of the refused series
+     * @return The number of shed rows
+     */
+    public long getShedRows(SeriesPriority priority) {
+        return shedRows[priority.ordinal()].get();
+    }
+
+    /**
+     * Takes a slot for a new series, within the share of the budget of its priority.
+     *
+     * @param priority Priority of the metric of the series
+     * @return True if the series may be created, false if it is shed
+     */
+    public boolean tryAcquire(SeriesPriority priority) {
+        long limit = (long) maxSeries * priority.getShare() / 100;
+        while (true) {
+            int current = series.get();
+            if (maxSeries > 0 && current >= limit) {
+                shedRows[priority.ordinal()].incrementAndGet();
+                return false;
+            }
+            if (series.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the slot of a removed series.
+     */
+    public void release() {
+        series.updateAndGet(current -> Math.max(0, current - 1));
+    }
+
+    /**
+     * Registers the self-metrics of the budget with the given meter.
+     *
+     * @param meter The meter used to register the self-metrics
+     */
+    public void registerMetrics(Meter meter) {
+        meter.gaugeBuilder(SERIES_NAME).ofLongs().setUnit("{series}").setDescription("The number of series held by all instances of the agent")
+                .buildWithCallback(measurement -> measurement.record(getSeries()));
+        meter.gaugeBuilder(UTILIZATION_NAME).setUnit("1").setDescription("The used share of the series budget of the agent, 0 if there is no budget")
+                .buildWithCallback(measurement -> measurement.record(getUtilization()));
+        meter.counterBuilder(SHED_ROWS_NAME).setUnit("{row}").setDescription("The number of rows of new series refused because the series budget of the agent was used up")
+                .buildWithCallback(measurement -> {
+                    for (SeriesPriority priority : SeriesPriority.values()) {
+                        measurement.record(getShedRows(priority), Attributes.of(PRIORITY_KEY, priority.name().toLowerCase()));
+                    }
+                });
+    }
+}
@@ -0,0 +1,144 @@
+package com.ojr.core.metric;
+
+/**
+ * The calculation state of one series for the stateful {@link MetricCalculationMode}s: a ring of the latest raw values
+ * with their monotonic times, and the calculated value before and after the latest generation. A data point creates it
+ * on its first update in such a mode, so the series of DIRECT and RATE metrics do not pay for it.
+ * <p>
+ * It is updated under the lock of the data point and read under its version, like the values of the data point. An
+ * update in the same generation as the previous one replaces the latest sample instead of adding one, and the value is
+ * calculated again from the state before that generation.
+ */
+final class SeriesCalculator {
+    private static final long RANGE_32 = 1L << 32; // Range of a 32-bit counter
+
+    private final RawMetric rawMetric;
+    private final MetricCalculationMode mode; // Mode the state is kept for
+    private final long[] bits; // Raw values of the latest samples, a ring
+    private final long[] nanos; // Monotonic times of the latest samples
+    private int count = 0; // Number of samples in the ring
+    private int last = -1; // Index of the latest sample
+    // The results are read by DataPoint.read without the lock, volatile like the state of the data point
+    private volatile double value; // Value calculated with the latest sample
+    private volatile boolean hasValue = false;
+    private volatile double previousValue; // Value calculated before the latest generation
+    private volatile boolean hasPreviousValue = false;
+
+    SeriesCalculator(RawMetric rawMetric) {
+        this.rawMetric = rawMetric;
+        this.mode = rawMetric.getCalculationMode();
+        int size = mode == MetricCalculationMode.WINDOW_RATE ? rawMetric.getRateWindow() + 1 : 2;
+        this.bits = new long[size];
+        this.nanos = new long[size];
+    }
+
+    MetricCalculationMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Adds a sample and calculates the value.
+     *
+     * @param sampleBits  Raw value of the sample, the long value or the bits of the double value
+     * @param sampleNanos Time of the sample from {@link System#nanoTime()}
+     * @param shift       False to replace the latest sample, updated in the same generation
+     */
+    void add(long sampleBits, long sampleNanos, boolean shift) {
+        if (shift || count == 0) {
+            previousValue = value;
+            hasPreviousValue = hasValue;
+            last = (last + 1) % bits.length;
+            count = Math.min(count + 1, bits.length);
+        }
+        bits[last] = sampleBits;
+        nanos[last] = sampleNanos;
+
+        hasValue = count >= 2 || mode == MetricCalculationMode.EWMA;
+        if (!hasValue) {
+            return;
+        }
+        int previous = (last + bits.length - 1) % bits.length;
+        switch (mode) {
+            case EWMA:
+                double alpha = rawMetric.getEwmaAlpha();
+                value = hasPreviousValue ? alpha * toDouble(sampleBits) + (1 - alpha) * previousValue : toDouble(sampleBits);
+                break;
+            case DELTA:
+                value = rawMetric.isInteger() ? (double) (sampleBits - bits[previous]) : toDouble(sampleBits) - toDouble(bits[previous]);
+                break;
+            case COUNTER_RATE:
+                value = rate(previous, counterDelta(bits[previous], sampleBits, rawMetric.isInteger(), rawMetric.getCounterBits()));
+                break;
+            case WINDOW_RATE:
+                int first = (last + bits.length - count + 1) % bits.length;
+                double delta = 0;
+                for (int i = first; i != last; i = (i + 1) % bits.length) {
+                    delta += counterDelta(bits[i], bits[(i + 1) % bits.length], rawMetric.isInteger(), rawMetric.getCounterBits());
+                }
+                value = rate(first, delta);
+                break;
+            default:
+                hasValue = false;
+        }
+    }
+
+    // Rate per rate unit of a delta since a sample of the ring
+    private double rate(int since, double delta) {
+        long elapsed = nanos[last] - nanos[since];
+        if (elapsed <= 0) {
+            hasValue = false;
+            return 0;
+        }
+        return rawMetric.getRateUnit() * delta * 1e6 / elapsed;
+    }
+
+    private double toDouble(long sampleBits) {
+        return rawMetric.isInteger() ? sampleBits : Double.longBitsToDouble(sampleBits);
+    }
+
+    boolean hasValue(boolean previous) {
+        return previous ? hasPreviousValue : hasValue;
+    }
+
+    double getValue(boolean previous) {
+        return previous ? previousValue : value;
+    }
+
+    /**
+     * Returns the increase of a counter between two samples. A decrease of an integer counter is a wrap if the wrapped
+     * delta is below half of the range of the counter width, otherwise it is a reset and the increase is the new value.
+     * Integer values are taken as unsigned.
+     *
+     * @param previous    Raw value of the previous sample
+     * @param current     Raw value of the current sample
+     * @param isInteger   True if the raw values are longs, false if they are the bits of doubles
+     * @param counterBits Width of the counter, 32 or 64
+     * @return The increase, never negative
+     */
+    static double counterDelta(long previous, long current, boolean isInteger, int counterBits) {
+        if (!isInteger) {
+            double previousValue = Double.longBitsToDouble(previous);
+            double currentValue = Double.longBitsToDouble(current);
+            return currentValue >= previousValue ? currentValue - previousValue : Math.max(0, currentValue);
+        }
+        if (Long.compareUnsigned(current, previous) >= 0) {
+            return unsigned(current - previous);
+        }
+        if (counterBits == 32) {
+            if ((previous >>> 32) == 0) {
+                long wrapped = current + RANGE_32 - previous;
+                if (wrapped < RANGE_32 / 2) {
+                    return wrapped;
+                }
+            }
+        } else if (current - previous >= 0) {
+            // Wrapped 64-bit counter, the difference is taken modulo 2^64
+            return unsigned(current - previous);
+        }
+        return unsigned(current);
+    }
+
+    private static double unsigned(long value) {
+        return value >= 0 ? value : (double) (value >>> 1) * 2 + (value & 1);
+    }
+}
@@ -0,0 +1,102 @@
+package com.ojr.core.metric;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the number of series (data points) of all RawMetrics of a Data Collector instance. A RawMetric acquires a
+ * slot for every new series and releases it when the series is purged or evicted; when no slot is left, new series are
+ * recorded into the overflow series of their metric. A limiter with a {@link SeriesBudget} also takes a slot of the
+ * agent-wide budget for every series.
+ * <p>
+ * It also counts the collection cycles of the instance, so the overflow series aggregate the rows of one cycle.
+ */
+public class SeriesLimiter {
+    private final int maxSeries; // Maximal number of series, 0 for no limit
+    private final SeriesBudget budget; // Agent-wide budget, null for none
+    private final AtomicInteger series = new AtomicInteger(); // Number of series holding a slot
+    private volatile long cycle = 0; // Number of the current collection cycle
+
+    /**
+     * Constructs a new SeriesLimiter.
+     *
+     * @param maxSeries Maximal number of series, 0 for no limit
+     */
+    public SeriesLimiter(int maxSeries) {
+        this(maxSeries, null);
+    }
+
+    /**
+     * Constructs a new SeriesLimiter sharing an agent-wide budget.
+     *
+     * @param maxSeries Maximal number of series, 0 for no limit
+     * @param budget    Agent-wide SeriesBudget, null for none
+     */
+    public SeriesLimiter(int maxSeries, SeriesBudget budget) {
+        this.maxSeries = Math.max(0, maxSeries);
+        this.budget = budget;
+    }
+
+    public int getMaxSeries() {
+        return maxSeries;
+    }
+
+    public int getSeries() {
+        return series.get();
+    }
+
+    public SeriesBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Takes a slot for a new series.
+     *
+     * @return True if the series may be created, false if the limit is reached
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(SeriesPriority.NORMAL);
+    }
+
+    /**
+     * Takes a slot for a new series of a metric with the given priority, from this limiter and from the budget.
+     *
+     * @param priority Priority of the metric, see {@link SeriesPriority}
+     * @return True if the series may be created, false if a limit is reached
+     */
+    public boolean tryAcquire(SeriesPriority priority) {
+        while (true) {
+            int current = series.get();
+            if (maxSeries > 0 && current >= maxSeries) {
+                return false;
+            }
+            if (series.compareAndSet(current, current + 1)) {
+                break;
+            }
+        }
+        if (budget != null && !budget.tryAcquire(priority)) {
+            series.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the slot of a removed series.
+     */
+    public void release() {
+        if (series.getAndUpdate(current -> Math.max(0, current - 1)) > 0 && budget != null) {
+            budget.release();
+        }
+    }
+
+    /**
+     * Starts a new collection cycle.
+     */
+    public void nextCycle() {
+        cycle++;
+    }
+
+    public long getCycle() {
+        return cycle;
+    }
+}
@@ -0,0 +1,66 @@
+package com.ojr.core.metric;
+
+/**
+ * Enum representing how long the new series of a metric are admitted when the agent-wide series budget fills up, see
+ * {@link SeriesBudget}. Series of lower priority are shed first.
+ */
+public enum SeriesPriority {
+    /**
+     * Status and metadata metrics, e.g. db.status and db.version, admitted up to the full budget.
+     */
+    HIGH(100),
+
+    /**
+     * Regular metrics, admitted up to 90% of the budget.
+     */
+    NORMAL(90),
+
+    /**
+     * Metrics which are shed first, admitted up to 75% of the budget.
+     */
+    LOW(75);
+
+    private final int share; // Percentage of the budget the series of this priority may use
+
+    SeriesPriority(int share) {
+        this.share = share;
+    }
+
+    public int getShare() {
+        return share;
+    }
+
+    /**
+     * Returns the default priority of a metric by its name: HIGH for status and metadata metrics (names ending with
+     * .status, .state, .version, .info or .up), NORMAL otherwise.
+     *
+     * @param metricName Name of the metric
+     * @return The SeriesPriority
+     */
+    public static SeriesPriority forMetric(String metricName) {
+        if (metricName != null && (metricName.endsWith(".status") || metricName.endsWith(".state") || metricName.endsWith(".version")
+                || metricName.endsWith(".info") || metricName.endsWith(".up"))) {
+            return HIGH;
+        }
+        return NORMAL;
+    }
+
+    /**
+     * Parses a priority name (case-insensitive).
+     *
+     * @param name         Name of the priority
+     * @param defaultValue Priority returned if the name is null or unknown
+     * @return The SeriesPriority
+     */
+    public static SeriesPriority of(String name, SeriesPriority defaultValue) {
+        if (name == null) {
+            return defaultValue;
+        }
+        for (SeriesPriority priority : values()) {
+            if (priority.name().equalsIgnoreCase(name.trim())) {
+                return priority;
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,76 @@
+package com.ojr.core.schedule;
+
+/**
+ * Derives the interval of a {@link CollectionTask} from the measured cost of its cycles.
+ * <p>
+ * The interval is chosen so that the moving average of the cycle duration stays under the configured duty cycle
+ * (share of the interval spent collecting), and it is widened further while the target reports errors. It grows at
+ * once when the target gets slower, but shrinks by a quarter of the gap per cycle, so a single fast cycle does not
+ * cause the agent to hammer the target again. The result is always kept within [min, max].
+ */
+public class AdaptiveInterval {
+    private static final double ALPHA = 0.3; // Weight of the latest cycle in the moving averages
+    private static final double ERROR_THRESHOLD = 0.1; // Error rate above which the interval is widened
+
+    private final long minMillis;
+    private final long maxMillis;
+    private final double dutyCycle; // Maximal share of the interval spent collecting, in (0, 1]
+
+    private double avgDuration = -1; // Moving average of the cycle duration in milliseconds, -1 before the first cycle
+    private double errorRate = 0; // Moving average of the share of failed cycles
+
+    /**
+     * Constructs a new AdaptiveInterval.
+     *
+     * @param minMillis        Lower bound of the interval in milliseconds
+     * @param maxMillis        Upper bound of the interval in milliseconds
+     * @param dutyCyclePercent Maximal percentage of the interval spent collecting
+     */
+    public AdaptiveInterval(long minMillis, long maxMillis, double dutyCyclePercent) {
+        this.minMillis = Math.max(1, minMillis);
+        this.maxMillis = Math.max(this.minMillis, maxMillis);
+        this.dutyCycle = Math.min(1.0, Math.max(0.01, dutyCyclePercent / 100));
+    }
+
+    public long getMinMillis() {
+        return minMillis;
+    }
+
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+
+    public synchronized double getAvgDuration() {
+        return avgDuration;
+    }
+
+    public synchronized double getErrorRate() {
+        return errorRate;
+    }
+
+    /**
+     * Records a finished cycle and returns the interval to use from now on.
+     *
+     * @param currentMillis  The current interval in milliseconds
+     * @param durationMillis Duration of the finished cycle in milliseconds
+     * @param failed         True if the cycle failed or the target reported errors
+     * @return The new interval in milliseconds
+     */
+    public synchronized long next(long currentMillis, long durationMillis, boolean failed) {
+        avgDuration = avgDuration < 0 ? durationMillis : ALPHA * durationMillis + (1 - ALPHA) * avgDuration;
+        errorRate = ALPHA * (failed ? 1 : 0) + (1 - ALPHA) * errorRate;
+
+        double target = avgDuration / dutyCycle;
+        if (errorRate > ERROR_THRESHOLD) {
+            target = Math.max(target, currentMillis * (1 + errorRate));
+        }
+
+        double next;
+        if (target >= currentMillis) {
+            next = Math.min(target, 2.0 * currentMillis);
+        } else {
+            next = currentMillis - (currentMillis - target) / 4;
+        }
+        return Math.max(minMillis, Math.min(maxMillis, Math.round(next)));
+    }
+}
@@ -0,0 +1,51 @@
+package com.ojr.core.schedule;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single-threaded scheduled executor which starts fixed-rate tasks at the next wall-clock multiple of their period,
+ * e.g. at :00 and :30 of every minute for a period of 30 seconds.
+ * <p>
+ * It is passed to {@code PeriodicMetricReader.Builder.setExecutor} so exports happen at the boundaries which aligned
+ * collection cycles (see {@link CollectionScheduler#scheduleAligned}) finish just before.
+ */
+public class AlignedScheduledExecutor extends ScheduledThreadPoolExecutor {
+
+    /**
+     * Constructs a new AlignedScheduledExecutor running on one daemon thread.
+     *
+     * @param threadName Name of the thread
+     */
+    public AlignedScheduledExecutor(String threadName) {
+        super(1, r -> {
+            Thread thread = new Thread(r, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the first wall-clock multiple of the period after the given time.
+     *
+     * @param timeMillis   The time in epoch milliseconds
+     * @param periodMillis The period in milliseconds
+     * @return The boundary in epoch milliseconds
+     */
+    public static long nextBoundary(long timeMillis, long periodMillis) {
+        return timeMillis - Math.floorMod(timeMillis, periodMillis) + periodMillis;
+    }
+
+    /**
+     * Schedules a fixed-rate task. The initial delay is ignored; the first run is at the next wall-clock multiple of
+     * the period.
+     */
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        long periodMillis = Math.max(1, unit.toMillis(period));
+        long now = System.currentTimeMillis();
+        long delay = nextBoundary(now, periodMillis) - now;
+        return super.scheduleAtFixedRate(command, unit.convert(delay, TimeUnit.MILLISECONDS), period, unit);
+    }
+}
@@ -0,0 +1,31 @@
+package com.ojr.core.schedule;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A collection cycle which may complete asynchronously, e.g. with snmp4j's ResponseListener, an async JDBC driver or a
+ * non-blocking HTTP client. The thread starting it is released as soon as {@link #start()} returns.
+ */
+@FunctionalInterface
+public interface AsyncCycle {
+    /**
+     * Starts the cycle.
+     *
+     * @return A stage completed when the cycle ends (null is treated as a completed cycle)
+     */
+    CompletionStage<Void> start();
+
+    /**
+     * Adapts a synchronous cycle.
+     *
+     * @param cycle The synchronous cycle
+     * @return An AsyncCycle running the cycle on the calling thread and returning a completed stage
+     */
+    static AsyncCycle of(Runnable cycle) {
+        return () -> {
+            cycle.run();
+            return CompletableFuture.completedFuture(null);
+        };
+    }
+}
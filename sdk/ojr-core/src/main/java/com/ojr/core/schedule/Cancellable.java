@@ -0,0 +1,15 @@
+package com.ojr.core.schedule;
+
+/**
+ * An action which aborts a blocking operation of a collection cycle, e.g. {@code java.sql.Statement::cancel}, closing
+ * a PCF agent or an SNMP session.
+ */
+@FunctionalInterface
+public interface Cancellable {
+    /**
+     * Aborts the operation. It is called from the watchdog thread, not from the thread running the cycle.
+     *
+     * @throws Exception if the operation cannot be aborted
+     */
+    void cancel() throws Exception;
+}
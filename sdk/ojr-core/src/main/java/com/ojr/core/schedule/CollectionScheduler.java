@@ -0,0 +1,493 @@
+package com.ojr.core.schedule;
+
+import io.opentelemetry.api.metrics.Meter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Agent-wide scheduler which runs the collection cycles of all Data Collector instances on one bounded thread pool.
+ * <p>
+ * The number of threads does not depend on the number of configured instances. Every instance owns at most one
+ * pending cycle in the queue (see {@link CollectionTask}), so a slow or busy instance cannot crowd out the others.
+ * Deadlines of cycles are enforced by a separate watchdog thread, so they fire even if all pool threads are blocked.
+ * <p>
+ * In {@link #MODE_VIRTUAL} mode the pool threads only dispatch due cycles, and every cycle runs on its own virtual
+ * thread (Java 21+), so thousands of blocking collections can be in flight at the same time.
+ */
+public class CollectionScheduler {
+    private static final Logger logger = Logger.getLogger(CollectionScheduler.class.getName());
+
+    public static final int DEFAULT_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    public static final String MODE_PLATFORM = "platform"; // Cycles run on the pool threads
+    public static final String MODE_VIRTUAL = "virtual"; // Cycles run on virtual threads
+
+    public static final String QUEUE_DEPTH_NAME = "ojr.agent.scheduler.queue.depth";
+    public static final String LAG_NAME = "ojr.agent.scheduler.lag";
+    public static final String THREADS_NAME = "ojr.agent.scheduler.threads";
+    public static final String CONCURRENCY_NAME = "ojr.agent.scheduler.concurrency";
+    public static final String STARTS_NAME = "ojr.agent.scheduler.starts";
+
+    public static final long MIN_INITIAL_DELAY = 1000L; // Minimal delay of the first cycle in milliseconds
+
+    private static CollectionScheduler defaultScheduler = null;
+
+    private final ScheduledThreadPoolExecutor executor; // Shared pool running all collection cycles
+    private final ScheduledExecutorService watchdog; // Cancels cycles exceeding their timeout
+    private final ExecutorService cycleExecutor; // Executor running the cycles in virtual mode, null in platform mode
+    private final Map<CollectionTask, Boolean> tasks = new ConcurrentHashMap<>(); // Registered collection tasks
+    private final AtomicInteger taskSeq = new AtomicInteger(); // Sequence used to name instances without an ID
+
+    private final AtomicInteger running = new AtomicInteger(); // Number of running cycles
+    private int peakRunning = 0; // Peak number of running cycles since the last read
+    private long startSecond = 0; // The second of the latest started cycles
+    private int startsInSecond = 0; // Number of cycles started in startSecond
+    private int peakStarts = 0; // Peak number of cycles started in one second since the last read
+    private long peakWindowEnd = 0; // The time when the exported peaks were read the last time
+    private int exportedPeakRunning = 0; // Peak concurrency of the latest ended window
+    private int exportedPeakStarts = 0; // Peak cycle starts per second of the latest ended window
+
+    /**
+     * Constructs a new CollectionScheduler.
+     *
+     * @param threads Number of threads used to run collection cycles (DEFAULT_THREADS if less than 1)
+     */
+    public CollectionScheduler(int threads) {
+        this(threads, MODE_PLATFORM);
+    }
+
+    /**
+     * Constructs a new CollectionScheduler with the given execution mode.
+     *
+     * @param threads Number of threads used to run (or dispatch in virtual mode) collection cycles
+     * @param mode    Execution mode, MODE_PLATFORM or MODE_VIRTUAL
+     */
+    public CollectionScheduler(int threads, String mode) {
+        if (threads < 1) {
+            threads = DEFAULT_THREADS;
+        }
+        executor = new ScheduledThreadPoolExecutor(threads, new CollectorThreadFactory());
+        executor.setRemoveOnCancelPolicy(true);
+        watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ojr-collector-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (MODE_VIRTUAL.equalsIgnoreCase(mode)) {
+            if (VirtualThreads.isSupported()) {
+                cycleExecutor = VirtualThreads.newThreadPerTaskExecutor("ojr-vcollector-");
+            } else {
+                logger.warning("Virtual threads are not supported by this JVM (Java 21+ is required), platform threads are used");
+                cycleExecutor = null;
+            }
+        } else {
+            cycleExecutor = null;
+        }
+        logger.info("Collection scheduler is started with " + threads + " threads in " + (isVirtual() ? MODE_VIRTUAL : MODE_PLATFORM) + " mode");
+    }
+
+    /**
+     * Returns the process-wide scheduler used by Data Collectors which are not managed by an agent.
+     *
+     * @return The default CollectionScheduler
+     */
+    public static synchronized CollectionScheduler getDefault() {
+        if (defaultScheduler == null) {
+            defaultScheduler = new CollectionScheduler(DEFAULT_THREADS);
+        }
+        return defaultScheduler;
+    }
+
+    /**
+     * Returns the shared scheduled executor service. Tasks submitted directly to it bypass the per-instance fairness
+     * of {@link #schedule(String, Runnable, long, long, TimeUnit)}.
+     *
+     * @return The shared ScheduledExecutorService
+     */
+    public ScheduledExecutorService getScheduledExecutorService() {
+        return executor;
+    }
+
+    /**
+     * Checks if the collection cycles run on virtual threads.
+     *
+     * @return True if in virtual mode, false otherwise
+     */
+    public boolean isVirtual() {
+        return cycleExecutor != null;
+    }
+
+    /**
+     * Returns the executor for sub-tasks of a collection cycle (e.g. independent queries). It starts a virtual thread
+     * per task in virtual mode, otherwise it is the shared pool.
+     *
+     * @return The Executor for sub-tasks
+     */
+    public Executor getCollectorExecutor() {
+        return cycleExecutor != null ? cycleExecutor : executor;
+    }
+
+    Executor getCycleExecutor() {
+        return cycleExecutor;
+    }
+
+    /**
+     * Schedules a collection cycle of a Data Collector instance at a fixed rate, without deadline and skipping cycles
+     * which are due while the previous one is still running.
+     *
+     * @param instanceId   ID of the Data Collector instance (a generated one is used if null)
+     * @param cycle        The collection cycle to run
+     * @param initialDelay Delay before the first cycle
+     * @param period       Time between the due times of two cycles
+     * @param unit         Time unit of initialDelay and period
+     * @return The scheduled CollectionTask
+     */
+    public CollectionTask schedule(String instanceId, Runnable cycle, long initialDelay, long period, TimeUnit unit) {
+        return schedule(instanceId, AsyncCycle.of(cycle), initialDelay, period, 0, OverrunPolicy.SKIP, unit);
+    }
+
+    /**
+     * Schedules a synchronous collection cycle at a fixed rate.
+     *
+     * @see #schedule(String, AsyncCycle, long, long, long, OverrunPolicy, TimeUnit)
+     */
+    public CollectionTask schedule(String instanceId, Runnable cycle, long initialDelay, long period, long timeout, OverrunPolicy overrunPolicy, TimeUnit unit) {
+        return schedule(instanceId, AsyncCycle.of(cycle), initialDelay, period, timeout, overrunPolicy, unit);
+    }
+
+    /**
+     * Schedules a collection cycle of a Data Collector instance at a fixed rate.
+     *
+     * @param instanceId    ID of the Data Collector instance (a generated one is used if null)
+     * @param cycle         The collection cycle to run
+     * @param initialDelay  Delay before the first cycle
+     * @param period        Time between the due times of two cycles
+     * @param timeout       Time after which a running cycle is cancelled (0 for no deadline)
+     * @param overrunPolicy What to do when a cycle is due while the previous one is still running
+     * @param unit          Time unit of initialDelay, period and timeout
+     * @return The scheduled CollectionTask
+     */
+    public CollectionTask schedule(String instanceId, AsyncCycle cycle, long initialDelay, long period, long timeout, OverrunPolicy overrunPolicy, TimeUnit unit) {
+        if (instanceId == null) {
+            instanceId = nextInstanceId();
+        }
+        CollectionTask task = new CollectionTask(this, instanceId, cycle, unit.toMillis(period), unit.toMillis(timeout), overrunPolicy, false);
+        tasks.put(task, Boolean.TRUE);
+        task.scheduleNext(unit.toMillis(initialDelay));
+        return task;
+    }
+
+    /**
+     * Creates a collection task without timer for a synchronous cycle.
+     *
+     * @see #createOnDemand(String, AsyncCycle, long, TimeUnit)
+     */
+    public CollectionTask createOnDemand(String instanceId, Runnable cycle, long timeout, TimeUnit unit) {
+        return createOnDemand(instanceId, AsyncCycle.of(cycle), timeout, unit);
+    }
+
+    /**
+     * Creates a collection task without timer. Its cycles are started on demand by {@link CollectionTask#trigger(long)}.
+     *
+     * @param instanceId ID of the Data Collector instance (a generated one is used if null)
+     * @param cycle      The collection cycle to run
+     * @param timeout    Time after which a running cycle is cancelled (0 for no deadline)
+     * @param unit       Time unit of timeout
+     * @return The CollectionTask
+     */
+    public CollectionTask createOnDemand(String instanceId, AsyncCycle cycle, long timeout, TimeUnit unit) {
+        if (instanceId == null) {
+            instanceId = nextInstanceId();
+        }
+        CollectionTask task = new CollectionTask(this, instanceId, cycle, 0, unit.toMillis(timeout), OverrunPolicy.SKIP, false);
+        tasks.put(task, Boolean.TRUE);
+        return task;
+    }
+
+    /**
+     * Schedules a synchronous collection cycle aligned to wall-clock multiples of the period.
+     *
+     * @see #scheduleAligned(String, AsyncCycle, long, long, OverrunPolicy, TimeUnit)
+     */
+    public CollectionTask scheduleAligned(String instanceId, Runnable cycle, long period, long timeout, OverrunPolicy overrunPolicy, TimeUnit unit) {
+        return scheduleAligned(instanceId, AsyncCycle.of(cycle), period, timeout, overrunPolicy, unit);
+    }
+
+    /**
+     * Schedules a collection cycle aligned to wall-clock multiples of the period: every cycle starts a lead time before
+     * a boundary, so it finishes just before an export which is aligned to the same boundaries. Aligned instances with
+     * the same period are not spread across the period.
+     *
+     * @param instanceId    ID of the Data Collector instance (a generated one is used if null)
+     * @param cycle         The collection cycle to run
+     * @param period        Time between two boundaries, usually the export interval
+     * @param timeout       Time after which a running cycle is cancelled (0 for no deadline)
+     * @param overrunPolicy What to do when a cycle is due while the previous one is still running
+     * @param unit          Time unit of period and timeout
+     * @return The scheduled CollectionTask
+     */
+    public CollectionTask scheduleAligned(String instanceId, AsyncCycle cycle, long period, long timeout, OverrunPolicy overrunPolicy, TimeUnit unit) {
+        if (instanceId == null) {
+            instanceId = nextInstanceId();
+        }
+        CollectionTask task = new CollectionTask(this, instanceId, cycle, unit.toMillis(period), unit.toMillis(timeout), overrunPolicy, true);
+        tasks.put(task, Boolean.TRUE);
+        task.scheduleAligned(System.currentTimeMillis() - unit.toMillis(period));
+        return task;
+    }
+
+    /**
+     * Schedules a collection cycle with its first run spread across the period, so instances with the same period do
+     * not fire at the same moment. The phase is derived from a hash of the instance ID, so it is stable across
+     * restarts; an optional random jitter is added on top of it.
+     *
+     * @param instanceId ID of the Data Collector instance (a generated one is used if null)
+     * @param cycle      The collection cycle to run
+     * @param period     Time between the due times of two cycles
+     * @param jitter     Upper bound of the random jitter added to the first delay (0 for no jitter)
+     * @param unit       Time unit of period and jitter
+     * @return The scheduled CollectionTask
+     */
+    public CollectionTask scheduleStaggered(String instanceId, Runnable cycle, long period, long jitter, TimeUnit unit) {
+        return scheduleStaggered(instanceId, AsyncCycle.of(cycle), period, jitter, 0, OverrunPolicy.SKIP, unit);
+    }
+
+    /**
+     * Schedules a synchronous collection cycle with its first run spread across the period.
+     *
+     * @see #scheduleStaggered(String, AsyncCycle, long, long, long, OverrunPolicy, TimeUnit)
+     */
+    public CollectionTask scheduleStaggered(String instanceId, Runnable cycle, long period, long jitter, long timeout, OverrunPolicy overrunPolicy, TimeUnit unit) {
+        return scheduleStaggered(instanceId, AsyncCycle.of(cycle), period, jitter, timeout, overrunPolicy, unit);
+    }
+
+    /**
+     * Schedules a collection cycle with its first run spread across the period, with a deadline and an overrun policy.
+     *
+     * @param instanceId    ID of the Data Collector instance (a generated one is used if null)
+     * @param cycle         The collection cycle to run
+     * @param period        Time between the due times of two cycles
+     * @param jitter        Upper bound of the random jitter added to the first delay (0 for no jitter)
+     * @param timeout       Time after which a running cycle is cancelled (0 for no deadline)
+     * @param overrunPolicy What to do when a cycle is due while the previous one is still running
+     * @param unit          Time unit of period, jitter and timeout
+     * @return The scheduled CollectionTask
+     * @see #scheduleStaggered(String, Runnable, long, long, TimeUnit)
+     */
+    public CollectionTask scheduleStaggered(String instanceId, AsyncCycle cycle, long period, long jitter, long timeout, OverrunPolicy overrunPolicy, TimeUnit unit) {
+        if (instanceId == null) {
+            instanceId = nextInstanceId();
+        }
+        long initialDelay = MIN_INITIAL_DELAY + phaseOf(instanceId, unit.toMillis(period));
+        long jitterMillis = unit.toMillis(jitter);
+        if (jitterMillis > 0) {
+            initialDelay += ThreadLocalRandom.current().nextLong(jitterMillis);
+        }
+        return schedule(instanceId, cycle, initialDelay, unit.toMillis(period), unit.toMillis(timeout), overrunPolicy, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the deterministic phase of an instance within a period.
+     *
+     * @param instanceId   ID of the Data Collector instance
+     * @param periodMillis The period in milliseconds
+     * @return The phase in milliseconds, in [0, periodMillis)
+     */
+    public static long phaseOf(String instanceId, long periodMillis) {
+        if (periodMillis <= 0) {
+            return 0;
+        }
+        // Spread the bits of String.hashCode() since similar IDs (e.g. host:port) have close hash codes
+        long h = instanceId.hashCode() * 0x9E3779B97F4A7C15L;
+        h ^= (h >>> 32);
+        return (h & Long.MAX_VALUE) % periodMillis;
+    }
+
+    private String nextInstanceId() {
+        return "dc-" + taskSeq.incrementAndGet();
+    }
+
+    synchronized void cycleStarted() {
+        peakRunning = Math.max(peakRunning, running.incrementAndGet());
+        long second = System.currentTimeMillis() / 1000;
+        if (second != startSecond) {
+            startSecond = second;
+            startsInSecond = 0;
+        }
+        peakStarts = Math.max(peakStarts, ++startsInSecond);
+    }
+
+    void cycleFinished() {
+        running.decrementAndGet();
+    }
+
+    /**
+     * Returns the peak number of concurrently running cycles since the last call, and resets it.
+     *
+     * @return The peak concurrency
+     */
+    public synchronized int getAndResetPeakConcurrency() {
+        int peak = Math.max(peakRunning, running.get());
+        peakRunning = running.get();
+        return peak;
+    }
+
+    /**
+     * Returns the peak number of cycles started within one second since the last call, and resets it.
+     *
+     * @return The peak number of cycle starts per second
+     */
+    public synchronized int getAndResetPeakStartsPerSecond() {
+        int peak = peakStarts;
+        peakStarts = 0;
+        return peak;
+    }
+
+    /**
+     * Returns the peak concurrency of the latest ended window. A window ends at most once per interval, so the readers
+     * collecting within one interval (e.g. a Prometheus scrape or a forced flush besides the periodic export) read the
+     * same peak instead of resetting it for each other.
+     *
+     * @param intervalMillis The export interval in milliseconds
+     * @return The peak concurrency
+     */
+    public synchronized int getPeakConcurrency(long intervalMillis) {
+        endPeakWindow(intervalMillis);
+        return exportedPeakRunning;
+    }
+
+    /**
+     * Returns the peak number of cycle starts per second of the latest ended window, see {@link #getPeakConcurrency}.
+     *
+     * @param intervalMillis The export interval in milliseconds
+     * @return The peak number of cycle starts per second
+     */
+    public synchronized int getPeakStartsPerSecond(long intervalMillis) {
+        endPeakWindow(intervalMillis);
+        return exportedPeakStarts;
+    }
+
+    // Ends the window of the peaks if the interval has elapsed, tolerating an export tick slightly early
+    private void endPeakWindow(long intervalMillis) {
+        long now = System.currentTimeMillis();
+        if (now - peakWindowEnd < intervalMillis - intervalMillis / 20) {
+            return;
+        }
+        peakWindowEnd = now;
+        exportedPeakRunning = getAndResetPeakConcurrency();
+        exportedPeakStarts = getAndResetPeakStartsPerSecond();
+    }
+
+    void submit(CollectionTask task, long delayMillis) {
+        task.setFuture(executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS));
+    }
+
+    ScheduledFuture<?> scheduleWatchdog(Runnable action, long delayMillis) {
+        return watchdog.schedule(action, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void remove(CollectionTask task) {
+        tasks.remove(task);
+    }
+
+    /**
+     * Returns the number of collection cycles which are due but still waiting for a free thread.
+     *
+     * @return The queue depth
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Runnable runnable : executor.getQueue()) {
+            if (runnable instanceof Delayed && ((Delayed) runnable).getDelay(TimeUnit.MILLISECONDS) <= 0) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Returns the largest lag (time between the due time and the actual start of a cycle) of the latest cycles.
+     *
+     * @return The lag in milliseconds
+     */
+    public long getLag() {
+        long lag = 0;
+        for (CollectionTask task : tasks.keySet()) {
+            lag = Math.max(lag, task.getLastLag());
+        }
+        return lag;
+    }
+
+    /**
+     * Returns the number of threads of the scheduler.
+     *
+     * @return The number of threads
+     */
+    public int getThreads() {
+        return executor.getCorePoolSize();
+    }
+
+    /**
+     * Returns the number of registered collection tasks.
+     *
+     * @return The number of tasks
+     */
+    public int getTaskCount() {
+        return tasks.size();
+    }
+
+    /**
+     * Registers the self-metrics of the scheduler with the given meter. The peaks are read per window of the export
+     * interval.
+     *
+     * @param meter          The meter used to register the self-metrics
+     * @param intervalMillis The export interval in milliseconds
+     */
+    public void registerMetrics(Meter meter, long intervalMillis) {
+        meter.gaugeBuilder(QUEUE_DEPTH_NAME).ofLongs().setUnit("{cycle}").setDescription("The number of due collection cycles waiting for a thread")
+                .buildWithCallback(measurement -> measurement.record(getQueueDepth()));
+        meter.gaugeBuilder(LAG_NAME).ofLongs().setUnit("ms").setDescription("The largest delay between the due time and the start of a collection cycle")
+                .buildWithCallback(measurement -> measurement.record(getLag()));
+        meter.gaugeBuilder(THREADS_NAME).ofLongs().setUnit("{thread}").setDescription("The number of threads used to run collection cycles")
+                .buildWithCallback(measurement -> measurement.record(getThreads()));
+        meter.gaugeBuilder(CONCURRENCY_NAME).ofLongs().setUnit("{cycle}").setDescription("The peak number of concurrently running collection cycles since the last export")
+                .buildWithCallback(measurement -> measurement.record(getPeakConcurrency(intervalMillis)));
+        meter.gaugeBuilder(STARTS_NAME).ofLongs().setUnit("{cycle}/s").setDescription("The peak number of collection cycles started within one second since the last export")
+                .buildWithCallback(measurement -> measurement.record(getPeakStartsPerSecond(intervalMillis)));
+    }
+
+    /**
+     * Shuts down the scheduler. Running cycles are interrupted.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        watchdog.shutdownNow();
+        if (cycleExecutor != null) {
+            cycleExecutor.shutdownNow();
+        }
+        tasks.clear();
+    }
+
+    private static class CollectorThreadFactory implements ThreadFactory {
+        private final AtomicInteger seq = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "ojr-collector-" + seq.incrementAndGet());
+        }
+    }
+}
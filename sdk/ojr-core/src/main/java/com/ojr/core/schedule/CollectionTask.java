@@ -0,0 +1,543 @@
+package com.ojr.core.schedule;
+
+import io.opentelemetry.api.metrics.Meter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A recurring collection cycle of one Data Collector instance on a {@link CollectionScheduler}.
+ * <p>
+ * With {@link OverrunPolicy#DELAY} the next cycle is due one period after the previous one ends (fixed delay).
+ * Otherwise cycles are due at a fixed rate: the task reschedules itself at every due time, and if a cycle is still
+ * running when the next one is due, the {@link OverrunPolicy} decides what happens. Either way an instance never has
+ * more than one tick queued. A cycle running longer than its timeout is cancelled through its {@link CycleContext}.
+ * <p>
+ * An aligned task is due a short lead time before each wall-clock multiple of its period, so the cycle finishes just
+ * before an export aligned to the same boundaries (see {@link AlignedScheduledExecutor}). The lead follows the
+ * recent cycle durations.
+ * <p>
+ * A cycle may be asynchronous ({@link AsyncCycle}): it counts as running until its stage completes, but does not hold
+ * a thread meanwhile. Its timeout finishes it even if the stage never completes. A cycle whose
+ * {@link AsyncCycle#start()} blocks past the timeout is cancelled but keeps running until start returns, so the next
+ * cycle of the instance does not run on the same connection meanwhile.
+ * <p>
+ * An on-demand task has no timer; its cycles are started by {@link #trigger(long)}, e.g. when Prometheus scrapes.
+ */
+public class CollectionTask implements Runnable {
+    private static final Logger logger = Logger.getLogger(CollectionTask.class.getName());
+
+    public static final String OVERRUNS_NAME = "ojr.collection.overruns";
+    public static final String OVERRUN_TIME_NAME = "ojr.collection.overrun.time";
+    public static final String SKIPPED_NAME = "ojr.collection.skipped";
+    public static final String TIMEOUTS_NAME = "ojr.collection.timeouts";
+    public static final String INTERVAL_NAME = "ojr.collection.interval";
+
+    public static final long ALIGN_MARGIN = 500L; // Time between the end of an aligned cycle and the boundary in milliseconds
+
+    private final CollectionScheduler scheduler;
+    private final String instanceId; // ID of the Data Collector instance
+    private final AsyncCycle cycle; // The collection cycle
+    private volatile long periodMillis; // Time between the due times of two cycles
+    private volatile long timeoutMillis; // Deadline of a cycle after its start, 0 for no deadline
+    private volatile OverrunPolicy overrunPolicy;
+    private final boolean aligned; // Cycles are due before wall-clock multiples of the period
+    private volatile AdaptiveInterval adaptiveInterval = null; // Adapts the period to the cycle cost, null for a fixed period
+
+    private volatile ScheduledFuture<?> future = null;
+    private volatile long dueTime; // The time when the next cycle is due
+    private volatile long lastLag = 0; // Lag of the latest cycle in milliseconds
+    private volatile long lastDuration = 0; // Duration of the latest cycle in milliseconds
+    private volatile long leadDuration = 0; // Decaying maximum of the cycle durations, used as lead of aligned cycles
+    private volatile boolean cancelled = false;
+    private CompletableFuture<Void> triggered = null; // Completed when the triggered cycle ends, guarded by this
+    private long lastEndTime = 0; // The time when the latest triggered cycle ended, guarded by this
+
+    private final AtomicInteger inFlight = new AtomicInteger(); // Number of running cycles
+    private final AtomicBoolean pending = new AtomicBoolean(); // A coalesced cycle is waiting for the running one
+    private final AtomicLong overruns = new AtomicLong(); // Number of cycles which exceeded their deadline
+    private final AtomicLong overrunMillis = new AtomicLong(); // Total time spent over the deadline
+    private final AtomicLong skipped = new AtomicLong(); // Number of due cycles skipped or coalesced
+    private final AtomicLong timeouts = new AtomicLong(); // Number of cycles cancelled at the deadline
+
+    CollectionTask(CollectionScheduler scheduler, String instanceId, AsyncCycle cycle, long periodMillis, long timeoutMillis, OverrunPolicy overrunPolicy, boolean aligned) {
+        this.scheduler = scheduler;
+        this.instanceId = instanceId;
+        this.cycle = cycle;
+        this.periodMillis = periodMillis;
+        this.timeoutMillis = timeoutMillis;
+        this.overrunPolicy = overrunPolicy == null ? OverrunPolicy.SKIP : overrunPolicy;
+        this.aligned = aligned;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public long getPeriodMillis() {
+        return periodMillis;
+    }
+
+    public void setPeriodMillis(long periodMillis) {
+        this.periodMillis = periodMillis;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public OverrunPolicy getOverrunPolicy() {
+        return overrunPolicy;
+    }
+
+    public void setOverrunPolicy(OverrunPolicy overrunPolicy) {
+        this.overrunPolicy = overrunPolicy;
+    }
+
+    public AdaptiveInterval getAdaptiveInterval() {
+        return adaptiveInterval;
+    }
+
+    /**
+     * Sets the strategy adapting the period to the measured cost of the cycles. A new period applies to the next due
+     * cycle, which is rescheduled if it is already queued. It is ignored by aligned tasks.
+     *
+     * @param adaptiveInterval The AdaptiveInterval, null for a fixed period
+     */
+    public void setAdaptiveInterval(AdaptiveInterval adaptiveInterval) {
+        this.adaptiveInterval = adaptiveInterval;
+    }
+
+    public boolean isAligned() {
+        return aligned;
+    }
+
+    /**
+     * Returns the time an aligned cycle starts before the boundary: the decaying maximum of the recent cycle durations
+     * plus ALIGN_MARGIN, at most half of the period.
+     *
+     * @return The lead in milliseconds
+     */
+    public long getAlignLead() {
+        return Math.min(periodMillis / 2, leadDuration + ALIGN_MARGIN);
+    }
+
+    public long getLastLag() {
+        return lastLag;
+    }
+
+    public long getLastDuration() {
+        return lastDuration;
+    }
+
+    /**
+     * Returns the number of cycles which ran longer than their deadline (the timeout, or the period if there is no
+     * timeout).
+     *
+     * @return The number of overruns
+     */
+    public long getOverruns() {
+        return overruns.get();
+    }
+
+    /**
+     * Returns the total time the cycles spent over their deadline.
+     *
+     * @return The overrun time in milliseconds
+     */
+    public long getOverrunMillis() {
+        return overrunMillis.get();
+    }
+
+    /**
+     * Returns the number of due cycles which were skipped or coalesced because a cycle was still running.
+     *
+     * @return The number of skipped cycles
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * Returns the number of cycles cancelled because they reached the timeout.
+     *
+     * @return The number of timeouts
+     */
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void setFuture(ScheduledFuture<?> future) {
+        this.future = future;
+    }
+
+    void scheduleNext(long delayMillis) {
+        if (cancelled) {
+            return;
+        }
+        dueTime = System.currentTimeMillis() + delayMillis;
+        scheduler.submit(this, delayMillis);
+    }
+
+    void scheduleAligned(long due) {
+        long now = System.currentTimeMillis();
+        long period = Math.max(1, periodMillis);
+        long lead = getAlignLead();
+        long next = AlignedScheduledExecutor.nextBoundary(now + lead, period) - lead;
+        if (next - due < period / 2) {
+            // The lead has shrunk since the previous cycle, which already served this boundary
+            next += period;
+        }
+        scheduleNext(next - now);
+    }
+
+    // Moves the queued fixed-rate tick, which was scheduled with the previous period, to the current period
+    private void reschedule(long previousPeriod) {
+        // The future is set after dueTime, so dueTime is not older than the tick of the future
+        ScheduledFuture<?> f = future;
+        long due = dueTime;
+        if (f != null && f.cancel(false)) {
+            scheduleAfter(due - Math.max(1, previousPeriod));
+        }
+    }
+
+    private void scheduleAfter(long due) {
+        if (aligned) {
+            scheduleAligned(due);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long period = Math.max(1, periodMillis);
+        long next = due + period;
+        if (next <= now) {
+            // The tick itself is late, drop the missed due times instead of firing them in a burst
+            next += ((now - next) / period + 1) * period;
+        }
+        scheduleNext(next - now);
+    }
+
+    @Override
+    public void run() {
+        if (cancelled) {
+            return;
+        }
+        long due = dueTime;
+        if (overrunPolicy == OverrunPolicy.DELAY && !aligned) {
+            if (inFlight.get() > 0) {
+                // A triggered cycle is running, the next tick is due one period from now
+                skipped.incrementAndGet();
+                scheduleNext(Math.max(1, periodMillis));
+                return;
+            }
+            // The cycle schedules the next tick when it ends
+            dispatch(due, true);
+            return;
+        }
+        scheduleAfter(due);
+
+        if (inFlight.get() > 0) {
+            switch (overrunPolicy) {
+                case DELAY:
+                case SKIP:
+                    skipped.incrementAndGet();
+                    return;
+                case COALESCE:
+                    skipped.incrementAndGet();
+                    pending.set(true);
+                    if (inFlight.get() > 0) {
+                        return;
+                    }
+                    // The running cycle ended meanwhile and may have missed the flag
+                    if (!pending.compareAndSet(true, false)) {
+                        return;
+                    }
+                    break;
+                case CONCURRENT:
+                default:
+                    break;
+            }
+        }
+        dispatch(due, false);
+    }
+
+    private void dispatch(long due, boolean delayed) {
+        inFlight.incrementAndGet();
+        Executor cycleExecutor = scheduler.getCycleExecutor();
+        if (cycleExecutor == null) {
+            runCycles(due, delayed);
+            return;
+        }
+        try {
+            cycleExecutor.execute(() -> runCycles(due, delayed));
+        } catch (RejectedExecutionException e) {
+            inFlight.decrementAndGet();
+            logger.log(Level.WARNING, "Collection cycle is rejected for instance: " + instanceId, e);
+            if (delayed) {
+                scheduleNext(Math.max(1, periodMillis));
+            }
+        }
+    }
+
+    /**
+     * Starts a cycle now, unless one is in flight or the latest one ended less than minAgeMillis ago. Callers arriving
+     * while a cycle is in flight share it (single flight). The cycle runs on the collector executor of the scheduler.
+     *
+     * @param minAgeMillis Age of the data below which no new cycle is started
+     * @return A future completed when the shared cycle ends, or a completed future if the data is fresh enough
+     */
+    public CompletableFuture<Void> trigger(long minAgeMillis) {
+        CompletableFuture<Void> future;
+        synchronized (this) {
+            if (cancelled) {
+                return CompletableFuture.completedFuture(null);
+            }
+            if (triggered != null) {
+                return triggered;
+            }
+            if (lastEndTime > 0 && System.currentTimeMillis() - lastEndTime < minAgeMillis) {
+                return CompletableFuture.completedFuture(null);
+            }
+            future = triggered = new CompletableFuture<>();
+        }
+        long due = System.currentTimeMillis();
+        inFlight.incrementAndGet();
+        try {
+            scheduler.getCollectorExecutor().execute(() -> runCycles(due, false));
+        } catch (RejectedExecutionException e) {
+            inFlight.decrementAndGet();
+            completeTriggered();
+            logger.log(Level.WARNING, "Collection cycle is rejected for instance: " + instanceId, e);
+        }
+        return future;
+    }
+
+    private void completeTriggered() {
+        CompletableFuture<Void> future;
+        synchronized (this) {
+            future = triggered;
+            triggered = null;
+            lastEndTime = System.currentTimeMillis();
+        }
+        if (future != null) {
+            future.complete(null);
+        }
+    }
+
+    private void runCycles(long due, boolean delayed) {
+        while (true) {
+            CompletableFuture<Void> done = runCycle(due, delayed);
+            if (!done.isDone()) {
+                // An asynchronous cycle is outstanding, the thread is released and the completion continues
+                done.thenRun(this::runPending);
+                return;
+            }
+            if (!takePending()) {
+                return;
+            }
+            due = System.currentTimeMillis();
+            delayed = false;
+        }
+    }
+
+    private boolean takePending() {
+        // Run the coalesced cycle, unless the tick which requested it has already taken it over
+        if (cancelled || !pending.compareAndSet(true, false)) {
+            return false;
+        }
+        inFlight.incrementAndGet();
+        return true;
+    }
+
+    private void runPending() {
+        if (!takePending()) {
+            return;
+        }
+        long due = System.currentTimeMillis();
+        try {
+            scheduler.getCollectorExecutor().execute(() -> runCycles(due, false));
+        } catch (RejectedExecutionException e) {
+            inFlight.decrementAndGet();
+            logger.log(Level.WARNING, "Collection cycle is rejected for instance: " + instanceId, e);
+        }
+    }
+
+    private CompletableFuture<Void> runCycle(long due, boolean delayed) {
+        long start = System.currentTimeMillis();
+        lastLag = Math.max(0, start - due);
+        long timeout = timeoutMillis;
+        Cycle running = new Cycle(start, timeout, delayed, new CycleContext(instanceId, timeout > 0 ? start + timeout : 0, Thread.currentThread()));
+        if (timeout > 0) {
+            running.watchdog = scheduler.scheduleWatchdog(() -> {
+                // Only a cycle which has not completed meanwhile counts as timed out
+                if (running.finished.get() || !running.timedOut.compareAndSet(false, true)) {
+                    return;
+                }
+                timeouts.incrementAndGet();
+                logger.warning("Collection cycle of instance " + instanceId + " exceeded the timeout of " + timeout + "ms and is cancelled");
+                running.context.cancel();
+                // The stage of an asynchronous cycle may never complete, so it is finished here; a later completion is
+                // ignored by finishCycle. A start still running holds the cycle until it returns.
+                if (running.started) {
+                    finishCycle(running, null);
+                }
+            }, timeout);
+        }
+
+        CycleContext.attach(running.context);
+        scheduler.cycleStarted();
+        CompletionStage<Void> stage;
+        try {
+            stage = cycle.start();
+        } catch (Throwable t) {
+            stage = null;
+            finishCycle(running, t);
+        } finally {
+            CycleContext.detach();
+        }
+        if (stage != null) {
+            running.context.releaseThread();
+            running.started = true;
+            if (running.timedOut.get()) {
+                // The timeout passed while starting, the cancelled stage is not waited for
+                finishCycle(running, null);
+            }
+            stage.whenComplete((v, t) -> finishCycle(running, t));
+        } else if (!running.done.isDone()) {
+            finishCycle(running, null);
+        }
+        return running.done;
+    }
+
+    private void finishCycle(Cycle running, Throwable t) {
+        if (running.finished.compareAndSet(false, true)) {
+            completeCycle(running, t);
+        }
+    }
+
+    private void completeCycle(Cycle running, Throwable t) {
+        CycleContext context = running.context;
+        if (t != null) {
+            context.reportError();
+            Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            if (context.isCancelled()) {
+                logger.log(Level.FINE, "Cancelled collection cycle failed for instance: " + instanceId, cause);
+            } else {
+                logger.log(Level.SEVERE, "Collection cycle failed for instance: " + instanceId, cause);
+            }
+        }
+        if (running.watchdog != null) {
+            running.watchdog.cancel(false);
+        }
+        context.finish();
+        scheduler.cycleFinished();
+        lastDuration = System.currentTimeMillis() - running.start;
+        leadDuration = Math.max(lastDuration, leadDuration - leadDuration / 8);
+        long deadline = running.timeout > 0 ? running.timeout : periodMillis;
+        if (deadline > 0 && lastDuration > deadline) {
+            overruns.incrementAndGet();
+            overrunMillis.addAndGet(lastDuration - deadline);
+        }
+        AdaptiveInterval adaptive = adaptiveInterval;
+        if (adaptive != null && !aligned) {
+            long previous = periodMillis;
+            periodMillis = adaptive.next(previous, lastDuration, context.isFailed() || context.isCancelled());
+            if (periodMillis != previous && !running.delayed) {
+                reschedule(previous);
+            }
+        }
+        inFlight.decrementAndGet();
+        if (running.delayed) {
+            scheduleNext(Math.max(1, periodMillis));
+        }
+        completeTriggered();
+        running.done.complete(null);
+    }
+
+    /**
+     * The state of one running cycle.
+     */
+    private static class Cycle {
+        private final long start;
+        private final long timeout;
+        private final boolean delayed; // The cycle schedules the next tick when it ends (OverrunPolicy.DELAY)
+        private final CycleContext context;
+        private final CompletableFuture<Void> done = new CompletableFuture<>(); // Completed when the cycle is finished
+        private final AtomicBoolean finished = new AtomicBoolean(); // Claimed by the first of completion and timeout
+        private final AtomicBoolean timedOut = new AtomicBoolean(); // Claimed by the watchdog
+        private volatile boolean started = false; // Start has returned the stage of an asynchronous cycle
+        private volatile ScheduledFuture<?> watchdog = null;
+
+        Cycle(long start, long timeout, boolean delayed, CycleContext context) {
+            this.start = start;
+            this.timeout = timeout;
+            this.delayed = delayed;
+            this.context = context;
+        }
+    }
+
+    /**
+     * Registers the per-instance self-metrics (effective interval, overruns, time over the deadline, skipped cycles and
+     * timeouts) with the given meter. The task is looked up on every export, so the metrics can be registered before
+     * the task is started.
+     *
+     * @param meter The meter used to register the self-metrics
+     * @param task  Supplier of the collection task, it may return null
+     */
+    public static void registerMetrics(Meter meter, Supplier<CollectionTask> task) {
+        meter.gaugeBuilder(INTERVAL_NAME).setUnit("s").setDescription("The effective interval between two collection cycles")
+                .buildWithCallback(measurement -> {
+                    CollectionTask t = task.get();
+                    if (t != null) measurement.record(t.getPeriodMillis() / 1000.0);
+                });
+        meter.counterBuilder(OVERRUNS_NAME).setUnit("{cycle}").setDescription("The number of collection cycles which exceeded their deadline")
+                .buildWithCallback(measurement -> {
+                    CollectionTask t = task.get();
+                    if (t != null) measurement.record(t.getOverruns());
+                });
+        meter.counterBuilder(OVERRUN_TIME_NAME).setUnit("ms").setDescription("The total time collection cycles spent over their deadline")
+                .buildWithCallback(measurement -> {
+                    CollectionTask t = task.get();
+                    if (t != null) measurement.record(t.getOverrunMillis());
+                });
+        meter.counterBuilder(SKIPPED_NAME).setUnit("{cycle}").setDescription("The number of due collection cycles skipped or coalesced because a cycle was still running")
+                .buildWithCallback(measurement -> {
+                    CollectionTask t = task.get();
+                    if (t != null) measurement.record(t.getSkipped());
+                });
+        meter.counterBuilder(TIMEOUTS_NAME).setUnit("{cycle}").setDescription("The number of collection cycles cancelled at their timeout")
+                .buildWithCallback(measurement -> {
+                    CollectionTask t = task.get();
+                    if (t != null) measurement.record(t.getTimeouts());
+                });
+    }
+
+    /**
+     * Cancels the task. A running cycle is not interrupted.
+     */
+    public void cancel() {
+        cancelled = true;
+        ScheduledFuture<?> f = future;
+        if (f != null) {
+            f.cancel(false);
+        }
+        scheduler.remove(this);
+    }
+}
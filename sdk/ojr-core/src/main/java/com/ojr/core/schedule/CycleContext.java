@@ -0,0 +1,211 @@
+package com.ojr.core.schedule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The state of one running collection cycle, used for cooperative cancellation when the cycle exceeds its deadline.
+ * <p>
+ * The context is bound to the thread running the cycle and can be looked up with {@link #current()}. Blocking calls
+ * register a {@link Cancellable} for their duration, e.g.
+ * <pre>{@code
+ * try (CycleContext.Registration ignored = CycleContext.current().onCancel(statement::cancel)) {
+ *     resultSet = statement.executeQuery();
+ * }
+ * }</pre>
+ * On cancellation all registered actions are called and the thread running the cycle is interrupted. Asynchronous
+ * cycles capture the context while they start, since their callbacks run on other threads; there it is only the
+ * registered actions which abort outstanding requests.
+ */
+public class CycleContext {
+    private static final Logger logger = Logger.getLogger(CycleContext.class.getName());
+
+    private static final ThreadLocal<CycleContext> CURRENT = new ThreadLocal<>();
+    private static final CycleContext NONE = new CycleContext(null, 0, null); // Used outside of collection cycles
+    private static final Registration NO_REGISTRATION = () -> {
+    };
+
+    private final String instanceId; // ID of the Data Collector instance
+    private final long deadline; // Time when the cycle is cancelled, 0 for no deadline
+    private Thread thread; // Thread running the synchronous part of the cycle, guarded by this
+    private final List<Cancellable> cancellables = new ArrayList<>(); // Guarded by this
+    private volatile boolean cancelled = false;
+    private volatile boolean failed = false; // The cycle failed or the target reported errors
+    private volatile long generation = 0; // Generation tagging the updates of the cycle, 0 if not set
+    private boolean finished = false; // Guarded by this
+
+    CycleContext(String instanceId, long deadline, Thread thread) {
+        this.instanceId = instanceId;
+        this.deadline = deadline;
+        this.thread = thread;
+    }
+
+    /**
+     * Returns the context of the cycle running on the current thread. Outside of a collection cycle a context which is
+     * never cancelled is returned.
+     *
+     * @return The CycleContext
+     */
+    public static CycleContext current() {
+        CycleContext context = CURRENT.get();
+        return context != null ? context : NONE;
+    }
+
+    static void attach(CycleContext context) {
+        CURRENT.set(context);
+    }
+
+    static void detach() {
+        CURRENT.remove();
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * Returns the deadline of the cycle.
+     *
+     * @return The deadline in epoch milliseconds, 0 if the cycle has no deadline
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Returns the time left until the deadline.
+     *
+     * @return The remaining time in milliseconds, Long.MAX_VALUE if the cycle has no deadline
+     */
+    public long getRemainingMillis() {
+        return deadline == 0 ? Long.MAX_VALUE : Math.max(0, deadline - System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the generation of the metric updates made by this cycle, see {@code GenerationClock}.
+     *
+     * @return The generation, 0 if the cycle has none (e.g. outside of a collection cycle)
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Sets the generation of the metric updates made by this cycle. It is ignored outside of a collection cycle.
+     *
+     * @param generation The generation begun by the cycle
+     */
+    public void setGeneration(long generation) {
+        if (this != NONE) {
+            this.generation = generation;
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Reports an error of the target (e.g. a failed query or a timed out request) during this cycle. Errors widen an
+     * adaptive poll interval, see {@link AdaptiveInterval}.
+     */
+    public void reportError() {
+        failed = true;
+    }
+
+    /**
+     * Registers an action aborting a blocking operation. The action is called immediately if the cycle is already
+     * cancelled. Close the returned registration once the operation is finished.
+     *
+     * @param cancellable The action aborting the operation
+     * @return The registration
+     */
+    public Registration onCancel(Cancellable cancellable) {
+        if (this == NONE) {
+            return NO_REGISTRATION;
+        }
+        synchronized (this) {
+            if (!cancelled) {
+                cancellables.add(cancellable);
+                return () -> {
+                    synchronized (CycleContext.this) {
+                        cancellables.remove(cancellable);
+                    }
+                };
+            }
+        }
+        runCancellable(cancellable);
+        return NO_REGISTRATION;
+    }
+
+    /**
+     * Cancels the cycle: calls all registered actions and interrupts the thread running the cycle.
+     */
+    void cancel() {
+        List<Cancellable> toCancel;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            toCancel = new ArrayList<>(cancellables);
+            cancellables.clear();
+        }
+        for (Cancellable cancellable : toCancel) {
+            runCancellable(cancellable);
+        }
+        synchronized (this) {
+            // Never interrupt a thread which has moved on to another task
+            if (!finished && thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Releases the thread which ran the synchronous part of the cycle, so a later cancellation does not interrupt it.
+     * Called on that thread, it also clears an interrupt left by a cancellation.
+     */
+    synchronized void releaseThread() {
+        if (thread == Thread.currentThread()) {
+            thread = null;
+            if (cancelled) {
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * Marks the cycle as finished.
+     */
+    void finish() {
+        releaseThread();
+        synchronized (this) {
+            finished = true;
+            cancellables.clear();
+        }
+    }
+
+    private void runCancellable(Cancellable cancellable) {
+        try {
+            cancellable.cancel();
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Failed to cancel an operation of instance: " + instanceId, e);
+        }
+    }
+
+    /**
+     * A registered cancellation action, removed by {@link #close()}.
+     */
+    @FunctionalInterface
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,46 @@
+package com.ojr.core.schedule;
+
+/**
+ * Enum representing what a {@link CollectionTask} does when a cycle is due while the previous one is still running.
+ */
+public enum OverrunPolicy {
+    /**
+     * Cycles never overlap: the next cycle is due one period after the previous one ends (fixed delay). Aligned tasks
+     * have fixed due times and treat it like SKIP.
+     */
+    DELAY,
+
+    /**
+     * The due cycle is skipped, the next cycle starts at the next regular due time.
+     */
+    SKIP,
+
+    /**
+     * All cycles due while a cycle is running are merged into one, which starts right after the running cycle ends.
+     */
+    COALESCE,
+
+    /**
+     * The due cycle starts anyway and runs concurrently with the running one.
+     */
+    CONCURRENT;
+
+    /**
+     * Parses a policy name (case-insensitive).
+     *
+     * @param name         Name of the policy
+     * @param defaultValue Policy returned if the name is null or unknown
+     * @return The OverrunPolicy
+     */
+    public static OverrunPolicy of(String name, OverrunPolicy defaultValue) {
+        if (name == null) {
+            return defaultValue;
+        }
+        for (OverrunPolicy policy : values()) {
+            if (policy.name().equalsIgnoreCase(name.trim())) {
+                return policy;
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,54 @@
+package com.ojr.core.schedule;
+
+/**
+ * A group of metrics of a Data Collector which is collected by its own task at its own interval, e.g. cheap status
+ * metrics every few seconds and expensive catalog queries every few minutes.
+ */
+public class PollGroup {
+    private final String name; // Name of the group, used as key in the configuration
+    private final Runnable collector; // Collects the metrics of the group
+    private int interval; // Polling interval in seconds
+    private volatile CollectionTask task = null;
+
+    /**
+     * Constructs a new PollGroup.
+     *
+     * @param name      Name of the group
+     * @param interval  Polling interval in seconds
+     * @param collector Collects the metrics of the group
+     */
+    public PollGroup(String name, int interval, Runnable collector) {
+        this.name = name;
+        this.interval = interval;
+        this.collector = collector;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Runnable getCollector() {
+        return collector;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public void setInterval(int interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * Returns the collection task of the group, or null if the group is not started.
+     *
+     * @return The CollectionTask
+     */
+    public CollectionTask getTask() {
+        return task;
+    }
+
+    public void setTask(CollectionTask task) {
+        this.task = task;
+    }
+}
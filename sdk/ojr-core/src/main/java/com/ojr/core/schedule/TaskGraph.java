@@ -0,0 +1,292 @@
+package com.ojr.core.schedule;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A set of collection tasks of one collection cycle with dependencies between them, e.g. independent queries of a
+ * database. Tasks whose dependencies are done run concurrently, at most maxConcurrency at a time, so the latency of a
+ * cycle is the longest path instead of the sum of all round-trips.
+ * <p>
+ * Tasks record their results into RawMetrics themselves. A task whose dependency failed is skipped. The thread calling
+ * {@link #run(long)} takes part in the work: it runs a submitted task itself if no executor thread has picked it up yet,
+ * so a graph makes progress even when all threads of a shared pool are busy. The {@link CycleContext} of the calling
+ * thread is propagated to the tasks, and its cancellation interrupts them.
+ * <p>
+ * Tasks sharing a resource which is not thread-safe (e.g. one JDBC connection) must be chained by dependencies, or use
+ * a resource each. A graph is built and run once per cycle.
+ */
+public class TaskGraph {
+    private static final Logger logger = Logger.getLogger(TaskGraph.class.getName());
+
+    private final Executor executor;
+    private final int maxConcurrency; // Maximal number of tasks running at the same time (per target)
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+
+    private final Map<String, Long> durations = new ConcurrentHashMap<>(); // Durations of the finished tasks in milliseconds
+    private final Map<String, Throwable> failures = new ConcurrentHashMap<>(); // Errors of the failed tasks
+    private final Set<String> skipped = Collections.newSetFromMap(new ConcurrentHashMap<>()); // Tasks not run
+
+    /**
+     * A collection task of the graph.
+     */
+    @FunctionalInterface
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    /**
+     * Constructs a new TaskGraph.
+     *
+     * @param executor       Executor running the tasks, e.g. {@link CollectionScheduler#getCollectorExecutor()}
+     * @param maxConcurrency Maximal number of tasks running at the same time
+     */
+    public TaskGraph(Executor executor, int maxConcurrency) {
+        this.executor = executor;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+    }
+
+    /**
+     * Adds a task.
+     *
+     * @param name      Unique name of the task, also used for its timing
+     * @param task      The task
+     * @param dependsOn Names of the tasks which must succeed before this one starts
+     * @return This TaskGraph instance
+     */
+    public TaskGraph add(String name, Task task, String... dependsOn) {
+        if (nodes.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate task: " + name);
+        }
+        nodes.put(name, new Node(name, task, dependsOn));
+        return this;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Returns the durations of the finished (succeeded or failed) tasks.
+     *
+     * @return Map of durations in milliseconds by task name
+     */
+    public Map<String, Long> getDurations() {
+        return durations;
+    }
+
+    /**
+     * Returns the errors of the failed tasks.
+     *
+     * @return Map of errors by task name
+     */
+    public Map<String, Throwable> getFailures() {
+        return failures;
+    }
+
+    /**
+     * Returns the tasks which were not run because a dependency failed or the graph timed out.
+     *
+     * @return Names of the skipped tasks
+     */
+    public Set<String> getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Runs all tasks and waits for them.
+     *
+     * @param timeoutMillis Time after which no more tasks are started and the call returns
+     * @return True if all tasks succeeded, false otherwise
+     * @throws IllegalArgumentException if a dependency is unknown or the dependencies contain a cycle
+     */
+    public boolean run(long timeoutMillis) {
+        link();
+        long deadline = timeoutMillis >= Long.MAX_VALUE / 2 ? Long.MAX_VALUE : System.currentTimeMillis() + timeoutMillis;
+        CycleContext context = CycleContext.current();
+
+        Deque<Node> ready = new ArrayDeque<>();
+        for (Node node : nodes.values()) {
+            if (node.pendingDeps == 0) {
+                ready.add(node);
+            }
+        }
+        BlockingQueue<Node> completions = new LinkedBlockingQueue<>();
+        List<Node> submitted = new ArrayList<>(); // Submitted and not yet completed
+        int finished = 0;
+
+        try {
+            while (finished < nodes.size()) {
+                while (!ready.isEmpty() && submitted.size() < maxConcurrency) {
+                    Node node = ready.poll();
+                    submitted.add(node);
+                    try {
+                        executor.execute(() -> runNode(node, context, completions));
+                    } catch (RejectedExecutionException e) {
+                        logger.log(Level.FINE, "Task is rejected and runs on the calling thread: " + node.name, e);
+                    }
+                }
+
+                Node done = completions.poll();
+                if (done == null) {
+                    Node unclaimed = firstUnclaimed(submitted);
+                    if (unclaimed != null) {
+                        runNode(unclaimed, context, completions);
+                        continue;
+                    }
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0 || context.isCancelled() || (done = completions.poll(wait, TimeUnit.MILLISECONDS)) == null) {
+                        break;
+                    }
+                }
+                submitted.remove(done);
+                finished++;
+                for (Node dependent : done.dependents) {
+                    if (dependent.skipped) {
+                        continue;
+                    }
+                    if (done.failed) {
+                        finished += skip(dependent);
+                    } else if (--dependent.pendingDeps == 0) {
+                        ready.add(dependent);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (Node node : nodes.values()) {
+            if (node.claimed.compareAndSet(false, true)) {
+                skipped.add(node.name);
+            }
+        }
+        return failures.isEmpty() && skipped.isEmpty() && finished == nodes.size();
+    }
+
+    private void runNode(Node node, CycleContext context, BlockingQueue<Node> completions) {
+        if (!node.claimed.compareAndSet(false, true)) {
+            return;
+        }
+        boolean otherThread = context != CycleContext.current();
+        if (otherThread) {
+            CycleContext.attach(context);
+        }
+        Thread thread = Thread.currentThread();
+        long start = System.currentTimeMillis();
+        CycleContext.Registration registration = otherThread ? context.onCancel(thread::interrupt) : null;
+        try {
+            node.task.run();
+        } catch (Throwable t) {
+            node.failed = true;
+            failures.put(node.name, t);
+            logger.log(Level.WARNING, "Collection task failed: " + node.name, t);
+        } finally {
+            if (registration != null) {
+                registration.close();
+            }
+            durations.put(node.name, System.currentTimeMillis() - start);
+            if (otherThread) {
+                CycleContext.detach();
+                // Do not leak an interrupt caused by the cancellation into the pool thread
+                if (context.isCancelled()) {
+                    Thread.interrupted();
+                }
+            }
+            completions.add(node);
+        }
+    }
+
+    private Node firstUnclaimed(List<Node> submitted) {
+        for (Node node : submitted) {
+            if (!node.claimed.get()) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private int skip(Node node) {
+        int count = 0;
+        if (!node.skipped && node.claimed.compareAndSet(false, true)) {
+            node.skipped = true;
+            skipped.add(node.name);
+            count++;
+            for (Node dependent : node.dependents) {
+                count += skip(dependent);
+            }
+        }
+        return count;
+    }
+
+    private void link() {
+        for (Node node : nodes.values()) {
+            node.dependents.clear();
+            node.pendingDeps = node.dependsOn.length;
+        }
+        for (Node node : nodes.values()) {
+            for (String dependency : node.dependsOn) {
+                Node parent = nodes.get(dependency);
+                if (parent == null) {
+                    throw new IllegalArgumentException("Unknown dependency " + dependency + " of task " + node.name);
+                }
+                parent.dependents.add(node);
+            }
+        }
+        // Kahn's algorithm, to reject cycles before anything runs
+        Map<Node, Integer> pending = new LinkedHashMap<>();
+        Deque<Node> free = new ArrayDeque<>();
+        for (Node node : nodes.values()) {
+            pending.put(node, node.pendingDeps);
+            if (node.pendingDeps == 0) {
+                free.add(node);
+            }
+        }
+        Set<Node> visited = new HashSet<>();
+        while (!free.isEmpty()) {
+            Node node = free.poll();
+            visited.add(node);
+            for (Node dependent : node.dependents) {
+                if (pending.merge(dependent, -1, Integer::sum) == 0) {
+                    free.add(dependent);
+                }
+            }
+        }
+        if (visited.size() != nodes.size()) {
+            throw new IllegalArgumentException("The dependencies of the collection tasks contain a cycle");
+        }
+    }
+
+    private static class Node {
+        private final String name;
+        private final Task task;
+        private final String[] dependsOn;
+        private final List<Node> dependents = new ArrayList<>();
+        private final AtomicBoolean claimed = new AtomicBoolean(); // Set by the thread which runs or skips the task
+        private int pendingDeps; // Number of dependencies not done yet, used by the calling thread only
+        private volatile boolean failed = false;
+        private boolean skipped = false;
+
+        Node(String name, Task task, String[] dependsOn) {
+            this.name = name;
+            this.task = task;
+            this.dependsOn = dependsOn == null ? new String[0] : dependsOn;
+        }
+    }
+}
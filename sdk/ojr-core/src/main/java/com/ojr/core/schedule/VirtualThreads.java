@@ -0,0 +1,31 @@
+package com.ojr.core.schedule;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Access to virtual threads. This is the Java 8 variant which reports virtual threads as unsupported; the variant in
+ * META-INF/versions/21 of the multi-release JAR replaces it on Java 21+.
+ */
+public final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    /**
+     * Checks if virtual threads are supported by the running JVM.
+     *
+     * @return True if virtual threads are supported, false otherwise
+     */
+    public static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * Creates an executor service which starts a new virtual thread for each task.
+     *
+     * @param namePrefix Prefix of the names of the virtual threads
+     * @return The executor service
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+    }
+}
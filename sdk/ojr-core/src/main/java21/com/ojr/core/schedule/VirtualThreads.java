@@ -0,0 +1,31 @@
+package com.ojr.core.schedule;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads. This is the Java 21 variant packaged in META-INF/versions/21 of the multi-release JAR.
+ */
+public final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    /**
+     * Checks if virtual threads are supported by the running JVM.
+     *
+     * @return True if virtual threads are supported, false otherwise
+     */
+    public static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * Creates an executor service which starts a new virtual thread for each task.
+     *
+     * @param namePrefix Prefix of the names of the virtual threads
+     * @return The executor service
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 1).factory());
+    }
+}
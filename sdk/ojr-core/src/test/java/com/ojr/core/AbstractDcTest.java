@@ -0,0 +1,99 @@
+package com.ojr.core;
+
+import com.ojr.core.metric.MetricAggregation;
+import com.ojr.core.metric.RawMetric;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.data.MetricDataType;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AbstractDcTest {
+
+    @Test
+    public void testRegisterMetricViews_ShouldApplyAggregationOfMetricSettings() {
+        TestDc dc = new TestDc();
+        dc.getRawMetricsMap().putAll(dc.provideInitRawMetricsMap());
+        Map<String, Object> latency = new HashMap<>();
+        latency.put(DcUtil.METRIC_AGGREGATION, "exponential");
+        latency.put(DcUtil.METRIC_MAX_BUCKETS, 40);
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("message.latency", latency);
+        metrics.put("queue.age", Collections.singletonMap(DcUtil.METRIC_AGGREGATION, "drop"));
+        dc.readMetricParameters(metrics);
+        RawMetric rawMetric = dc.getRawMetric("message.latency");
+        assertEquals(MetricAggregation.EXPONENTIAL, rawMetric.getAggregation());
+        assertEquals(40, rawMetric.getMaxBuckets());
+
+        TestMetricReader reader = new TestMetricReader();
+        SdkMeterProvider provider = dc.registerMetricViews(SdkMeterProvider.builder().registerMetricReader(reader)).build();
+        Map<String, Meter> meters = Collections.singletonMap(DcUtil.DEFAULT, provider.get(DcUtil.DEFAULT));
+        for (RawMetric metric : dc.getRawMetricsMap().values()) {
+            DcUtil.registerMetric(meters, metric, dc);
+        }
+        for (double value : new double[]{0.5, 20, 3000, 400000}) {
+            rawMetric.getHistogramHandle(Collections.singletonMap("queue", "Q1")).record(value);
+        }
+        dc.getRawMetric("queue.age").setDoubleValue(12.5, null);
+        dc.getRawMetric("queue.depth").setLongValue(3, null);
+
+        Map<String, MetricData> exported = new HashMap<>();
+        for (MetricData data : reader.collect()) {
+            exported.put(data.getName(), data);
+        }
+        assertEquals(MetricDataType.EXPONENTIAL_HISTOGRAM, exported.get("message.latency").getType());
+        assertEquals(4, exported.get("message.latency").getExponentialHistogramData().getPoints().iterator().next().getCount());
+        assertFalse(exported.containsKey("queue.age"));
+        assertTrue(exported.containsKey("queue.depth"));
+        provider.shutdown();
+    }
+
+    @Test
+    public void testReadMetricParameters_ShouldReadExplicitBuckets() {
+        TestDc dc = new TestDc();
+        dc.getRawMetricsMap().putAll(dc.provideInitRawMetricsMap());
+        Map<String, Object> latency = new HashMap<>();
+        latency.put(DcUtil.METRIC_AGGREGATION, "explicit");
+        latency.put(DcUtil.METRIC_BUCKETS, Arrays.asList(1, 10, 100.5));
+        dc.readMetricParameters(Collections.singletonMap("message.latency", latency));
+        RawMetric rawMetric = dc.getRawMetric("message.latency");
+        assertEquals(MetricAggregation.EXPLICIT, rawMetric.getAggregation());
+        assertEquals(Arrays.asList(1.0, 10.0, 100.5), rawMetric.getBucketBoundaries());
+    }
+
+    @Test
+    public void testReadMetricParameters_ShouldIgnoreWindowOfCalculatedMetric() {
+        TestDc dc = new TestDc();
+        dc.getRawMetricsMap().putAll(dc.provideInitRawMetricsMap());
+        Map<String, Object> depth = new HashMap<>();
+        depth.put(DcUtil.METRIC_WINDOW, true);
+        Map<String, Object> age = new HashMap<>();
+        age.put(DcUtil.METRIC_WINDOW, true);
+        age.put(DcUtil.METRIC_CALCULATION, "ewma");
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("queue.depth", depth);
+        metrics.put("queue.age", age);
+        dc.readMetricParameters(metrics);
+        assertTrue(dc.getRawMetric("queue.depth").isWindowed());
+        assertFalse(dc.getRawMetric("queue.age").isWindowed());
+    }
+
+    @Test
+    public void testApplyMetricDefaults_ShouldAttachLimiterOnlyWithLimit() {
+        TestDc dc = new TestDc();
+        dc.getRawMetricsMap().putAll(dc.provideInitRawMetricsMap());
+        dc.applyMetricDefaults();
+        assertNull(dc.getRawMetric("queue.depth").getSeriesLimiter());
+
+        dc.setMaxSeries(100);
+        dc.applyMetricDefaults();
+        assertSame(dc.getSeriesLimiter(), dc.getRawMetric("queue.depth").getSeriesLimiter());
+    }
+}
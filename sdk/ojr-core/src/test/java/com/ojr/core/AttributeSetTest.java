@@ -0,0 +1,71 @@
+package com.ojr.core;
+
+import com.ojr.core.metric.AttributeSet;
+import com.ojr.core.metric.MetricQueryResult;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AttributeSetTest {
+
+    @Test
+    public void testOf_ShouldBehaveLikeMapAndSkipNullValues() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("direction", "receive");
+        map.put("device", "eth0");
+        map.put("unused", null);
+
+        AttributeSet set = AttributeSet.of(map);
+        assertEquals(2, set.size());
+        assertEquals("device", set.keyAt(0));
+        assertEquals("eth0", set.get("device"));
+        assertNull(set.get("unused"));
+
+        map.remove("unused");
+        assertEquals(map, set);
+        assertEquals(set, map);
+        assertEquals(map.hashCode(), set.hashCode());
+        assertTrue(set.contentEquals(map));
+        assertThrows(UnsupportedOperationException.class, () -> set.put("cpu", "cpu0"));
+    }
+
+    @Test
+    public void testOf_ShouldInternKeysAndValues() {
+        AttributeSet first = AttributeSet.of(new MetricQueryResult(1).setAttribute(new String("state"), new String("idle")).getAttributes());
+        AttributeSet second = AttributeSet.of(new MetricQueryResult(2).setAttribute(new String("state"), new String("idle")).getAttributes());
+        assertSame(first.keyAt(0), second.keyAt(0));
+        assertSame(first.valueAt(0), second.valueAt(0));
+    }
+
+    @Test
+    public void testIntern_ShouldKeepRecentValuesAfterManyDistinctOnes() {
+        for (int i = 0; i < 200000; i++) {
+            AttributeSet.intern("session" + i);
+        }
+        String value = AttributeSet.intern(new String("session-recent"));
+        assertSame(value, AttributeSet.intern(new String("session-recent")));
+    }
+
+    @Test
+    public void testWith_ShouldReturnNewSetOnlyOnChange() {
+        AttributeSet set = AttributeSet.empty().with("cpu", "cpu0").with("state", "user");
+        assertSame(set, set.with("cpu", "cpu0"));
+        assertEquals("cpu1", set.with("cpu", "cpu1").get("cpu"));
+        assertEquals(1, set.with("state", null).size());
+        assertEquals("user", set.get("state"));
+    }
+
+    @Test
+    public void testToAttributes_ShouldBuildOnceWithTypedValues() {
+        AttributeSet set = AttributeSet.empty().with("queue", "Q1").with("depth.max", 5000L);
+        Attributes attributes = set.toAttributes();
+        assertSame(attributes, set.toAttributes());
+        assertEquals("Q1", attributes.get(AttributeKey.stringKey("queue")));
+        assertEquals(5000L, attributes.get(AttributeKey.longKey("depth.max")));
+    }
+}
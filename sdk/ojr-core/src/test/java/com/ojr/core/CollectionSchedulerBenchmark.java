@@ -0,0 +1,58 @@
+package com.ojr.core;
+
+import com.ojr.core.schedule.CollectionScheduler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares platform threads and virtual threads running many simulated blocking collectors.
+ * <p>
+ * Run it with "gradle benchmark" (requires a Java 21 toolchain). Arguments: instances, blocking time in milliseconds,
+ * poll interval in milliseconds and duration in seconds.
+ */
+public class CollectionSchedulerBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        int instances = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        long blockMillis = args.length > 1 ? Long.parseLong(args[1]) : 200;
+        long intervalMillis = args.length > 2 ? Long.parseLong(args[2]) : 1000;
+        long seconds = args.length > 3 ? Long.parseLong(args[3]) : 10;
+
+        System.out.printf("instances=%d, blocking=%dms, interval=%dms, duration=%ds, threads=%d%n",
+                instances, blockMillis, intervalMillis, seconds, CollectionScheduler.DEFAULT_THREADS);
+        run(CollectionScheduler.MODE_PLATFORM, instances, blockMillis, intervalMillis, seconds);
+        run(CollectionScheduler.MODE_VIRTUAL, instances, blockMillis, intervalMillis, seconds);
+    }
+
+    private static void run(String mode, int instances, long blockMillis, long intervalMillis, long seconds) throws InterruptedException {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        threadMXBean.resetPeakThreadCount();
+        CollectionScheduler scheduler = new CollectionScheduler(CollectionScheduler.DEFAULT_THREADS, mode);
+        AtomicLong cycles = new AtomicLong();
+        AtomicLong maxLag = new AtomicLong();
+
+        for (int i = 0; i < instances; i++) {
+            scheduler.schedule("instance-" + i, () -> {
+                try {
+                    Thread.sleep(blockMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                cycles.incrementAndGet();
+            }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(seconds);
+        while (System.currentTimeMillis() < end) {
+            Thread.sleep(100);
+            maxLag.accumulateAndGet(scheduler.getLag(), Math::max);
+        }
+        scheduler.shutdown();
+
+        long ideal = instances * TimeUnit.SECONDS.toMillis(seconds) / (blockMillis + intervalMillis);
+        System.out.printf("%-8s virtual=%-5s cycles=%d (ideal ~%d), max lag=%dms, peak platform threads=%d%n",
+                mode, scheduler.isVirtual(), cycles.get(), ideal, maxLag.get(), threadMXBean.getPeakThreadCount());
+    }
+}
@@ -0,0 +1,391 @@
+package com.ojr.core;
+
+import com.ojr.core.schedule.AdaptiveInterval;
+import com.ojr.core.schedule.AlignedScheduledExecutor;
+import com.ojr.core.schedule.AsyncCycle;
+import com.ojr.core.schedule.CollectionScheduler;
+import com.ojr.core.schedule.CollectionTask;
+import com.ojr.core.schedule.CycleContext;
+import com.ojr.core.schedule.OverrunPolicy;
+import com.ojr.core.schedule.VirtualThreads;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class CollectionSchedulerTest {
+
+    private CollectionScheduler scheduler;
+
+    @BeforeEach
+    public void setUp() {
+        scheduler = new CollectionScheduler(2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testSchedule_ShouldRunAllInstancesOnBoundedThreads() throws InterruptedException {
+        int instances = 50;
+        CountDownLatch latch = new CountDownLatch(instances);
+        List<CollectionTask> tasks = new ArrayList<>();
+        for (int i = 0; i < instances; i++) {
+            tasks.add(scheduler.schedule("instance-" + i, latch::countDown, 0, 1, TimeUnit.HOURS));
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(instances, scheduler.getTaskCount());
+        assertEquals(2, scheduler.getThreads());
+        tasks.forEach(CollectionTask::cancel);
+        assertEquals(0, scheduler.getTaskCount());
+    }
+
+    @Test
+    public void testPeaks_ShouldBeReadByAllReadersOfOneInterval() throws Exception {
+        CollectionTask task = scheduler.createOnDemand("peak", () -> {
+        }, 0, TimeUnit.MILLISECONDS);
+        task.trigger(0).get(5, TimeUnit.SECONDS);
+        task.trigger(0).get(5, TimeUnit.SECONDS);
+
+        // A second reader within the interval reads the same peak instead of resetting it
+        int peak = scheduler.getPeakStartsPerSecond(60000);
+        assertTrue(peak >= 1);
+        assertEquals(peak, scheduler.getPeakStartsPerSecond(60000));
+        assertEquals(1, scheduler.getPeakConcurrency(60000));
+
+        // The next interval starts a new window
+        assertEquals(0, scheduler.getPeakStartsPerSecond(0));
+    }
+
+    @Test
+    public void testSchedule_ShouldKeepRunningAfterFailedCycle() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(3);
+        scheduler.schedule("failing", () -> {
+            runs.incrementAndGet();
+            latch.countDown();
+            throw new IllegalStateException("failed");
+        }, 0, 10, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(runs.get() >= 3);
+    }
+
+    @Test
+    public void testVirtualMode_ShouldRunCyclesOnVirtualThreads() throws Exception {
+        assumeTrue(VirtualThreads.isSupported(), "Virtual threads need Java 21");
+        CollectionScheduler virtualScheduler = new CollectionScheduler(1, CollectionScheduler.MODE_VIRTUAL);
+        try {
+            assertTrue(virtualScheduler.isVirtual());
+            CompletableFuture<Boolean> virtual = new CompletableFuture<>();
+            virtualScheduler.schedule("virtual", () -> {
+                try {
+                    virtual.complete((Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()));
+                } catch (ReflectiveOperationException e) {
+                    virtual.completeExceptionally(e);
+                }
+            }, 0, 1, TimeUnit.HOURS);
+            assertTrue(virtual.get(5, TimeUnit.SECONDS));
+        } finally {
+            virtualScheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testPhaseOf_ShouldBeStableAndSpreadAcrossPeriod() {
+        long period = 25000;
+        assertEquals(CollectionScheduler.phaseOf("db1:5236", period), CollectionScheduler.phaseOf("db1:5236", period));
+
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        for (int i = 0; i < 300; i++) {
+            long phase = CollectionScheduler.phaseOf("192.168.1." + i + ":5236", period);
+            assertTrue(phase >= 0 && phase < period);
+            min = Math.min(min, phase);
+            max = Math.max(max, phase);
+        }
+        assertTrue(max - min > period / 2);
+    }
+
+    @Test
+    public void testSchedule_ShouldCancelCycleAtTimeout() throws InterruptedException {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        CountDownLatch latch = new CountDownLatch(1);
+        CollectionTask task = scheduler.schedule("hung", () -> {
+            try (CycleContext.Registration ignored = CycleContext.current().onCancel(() -> cancelled.set(true))) {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+            latch.countDown();
+        }, 0, 10000, 100, OverrunPolicy.SKIP, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        task.cancel();
+        assertTrue(cancelled.get());
+        assertTrue(interrupted.get());
+        assertEquals(1, task.getTimeouts());
+    }
+
+    @Test
+    public void testSchedule_ShouldSkipOrCoalesceOverrunningCycles() throws InterruptedException {
+        AtomicInteger skipRuns = new AtomicInteger();
+        AtomicInteger coalesceRuns = new AtomicInteger();
+        // Free threads are needed to notice the overruns while both cycles block a thread
+        scheduler.shutdown();
+        scheduler = new CollectionScheduler(4);
+        CollectionTask skip = scheduler.schedule("skip", () -> sleep(250, skipRuns), 0, 100, TimeUnit.MILLISECONDS);
+        CollectionTask coalesce = scheduler.schedule("coalesce", () -> sleep(250, coalesceRuns), 0, 100, 0, OverrunPolicy.COALESCE, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(1100);
+        skip.cancel();
+        coalesce.cancel();
+        // Skipping runs a cycle every third tick, coalescing runs the cycles back to back
+        assertTrue(skipRuns.get() <= 5, "skip runs: " + skipRuns.get());
+        assertTrue(coalesceRuns.get() >= 4, "coalesce runs: " + coalesceRuns.get());
+        assertTrue(skip.getSkipped() > 0);
+        assertTrue(skip.getOverruns() > 0);
+        assertTrue(skip.getOverrunMillis() >= 150 * skip.getOverruns());
+    }
+
+    @Test
+    public void testSchedule_ShouldDelayNextCycleUntilPeriodAfterEnd() throws InterruptedException {
+        List<Long> starts = new ArrayList<>();
+        List<Long> ends = new ArrayList<>();
+        CollectionTask task = scheduler.schedule("delay", () -> {
+            synchronized (starts) {
+                starts.add(System.currentTimeMillis());
+            }
+            sleep(150, new AtomicInteger());
+            synchronized (starts) {
+                ends.add(System.currentTimeMillis());
+            }
+        }, 0, 100, 0, OverrunPolicy.DELAY, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(1100);
+        task.cancel();
+        synchronized (starts) {
+            assertTrue(starts.size() >= 3, "runs: " + starts.size());
+            for (int i = 1; i < starts.size(); i++) {
+                assertTrue(starts.get(i) - ends.get(i - 1) >= 90, "delay: " + (starts.get(i) - ends.get(i - 1)));
+            }
+        }
+        assertEquals(0, task.getSkipped());
+    }
+
+    @Test
+    public void testScheduleAligned_ShouldFinishBeforeBoundaries() throws InterruptedException {
+        long period = 2000;
+        List<Long> ends = new ArrayList<>();
+        CountDownLatch latch = new CountDownLatch(2);
+        CollectionTask task = scheduler.scheduleAligned("aligned", () -> {
+            sleep(100, new AtomicInteger());
+            synchronized (ends) {
+                ends.add(System.currentTimeMillis());
+            }
+            latch.countDown();
+        }, period, 0, OverrunPolicy.SKIP, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        task.cancel();
+        for (long end : ends) {
+            long untilBoundary = AlignedScheduledExecutor.nextBoundary(end, period) - end;
+            assertTrue(untilBoundary > 0 && untilBoundary <= CollectionTask.ALIGN_MARGIN + 50, "until boundary: " + untilBoundary);
+        }
+    }
+
+    @Test
+    public void testNextBoundary_ShouldReturnNextWallClockMultiple() {
+        assertEquals(30000, AlignedScheduledExecutor.nextBoundary(0, 30000));
+        assertEquals(30000, AlignedScheduledExecutor.nextBoundary(29999, 30000));
+        assertEquals(60000, AlignedScheduledExecutor.nextBoundary(30000, 30000));
+    }
+
+    @Test
+    public void testAdaptiveInterval_ShouldKeepDutyCycleWithinBounds() {
+        AdaptiveInterval adaptive = new AdaptiveInterval(1000, 10000, 10);
+        // Slow cycles widen the interval, at most doubling it per cycle
+        assertEquals(2000, adaptive.next(1000, 500, false));
+        long interval = 2000;
+        for (int i = 0; i < 10; i++) {
+            interval = adaptive.next(interval, 2000, false);
+        }
+        assertEquals(10000, interval);
+
+        // Fast cycles narrow it step by step down to the lower bound, once the moving average has followed them
+        long narrowed = interval;
+        for (int i = 0; i < 5; i++) {
+            narrowed = adaptive.next(narrowed, 10, false);
+        }
+        assertTrue(narrowed < interval && narrowed > 1000);
+        for (int i = 0; i < 50; i++) {
+            narrowed = adaptive.next(narrowed, 10, false);
+        }
+        assertEquals(1000, narrowed);
+
+        // Errors widen it although the cycles are fast
+        long widened = narrowed;
+        for (int i = 0; i < 3; i++) {
+            widened = adaptive.next(widened, 10, true);
+        }
+        assertTrue(widened > narrowed);
+    }
+
+    @Test
+    public void testAdaptiveInterval_ShouldApplyToNextQueuedCycle() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        CollectionTask task = scheduler.schedule("adaptive", runs::incrementAndGet, 50, 100, 0, OverrunPolicy.SKIP, TimeUnit.MILLISECONDS);
+        task.setAdaptiveInterval(new AdaptiveInterval(1000, 1000, 100));
+
+        Thread.sleep(700);
+        task.cancel();
+        // The tick queued with the initial period is moved to the adapted one
+        assertEquals(1, runs.get());
+        assertEquals(1000, task.getPeriodMillis());
+    }
+
+    @Test
+    public void testTrigger_ShouldShareInFlightCycleAndCacheFreshData() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        CollectionTask task = scheduler.createOnDemand("pull", () -> sleep(200, runs), 0, TimeUnit.MILLISECONDS);
+
+        List<CompletableFuture<Void>> scrapes = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            scrapes.add(task.trigger(1000));
+        }
+        CompletableFuture.allOf(scrapes.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        assertEquals(1, runs.get());
+
+        // The data is younger than the minimal age, so no new cycle is started
+        task.trigger(1000).get(5, TimeUnit.SECONDS);
+        assertEquals(1, runs.get());
+
+        task.trigger(0).get(5, TimeUnit.SECONDS);
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void testAsyncCycle_ShouldReleaseThreadUntilStageCompletes() throws Exception {
+        // More pending async cycles than threads in the pool
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        List<CompletableFuture<Void>> triggers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            CompletableFuture<Void> stage = new CompletableFuture<>();
+            pending.add(stage);
+            CollectionTask task = scheduler.createOnDemand("async-" + i, (AsyncCycle) () -> stage, 0, TimeUnit.MILLISECONDS);
+            triggers.add(task.trigger(0));
+        }
+
+        // The threads are free for other cycles while the async ones wait
+        AtomicInteger runs = new AtomicInteger();
+        scheduler.createOnDemand("sync", () -> sleep(10, runs), 0, TimeUnit.MILLISECONDS).trigger(0).get(5, TimeUnit.SECONDS);
+        assertEquals(1, runs.get());
+        for (CompletableFuture<Void> trigger : triggers) {
+            assertFalse(trigger.isDone());
+        }
+
+        for (CompletableFuture<Void> stage : pending) {
+            stage.complete(null);
+        }
+        CompletableFuture.allOf(triggers.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testAsyncCycle_ShouldBeCancelledAtTimeout() throws Exception {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        CollectionTask task = scheduler.createOnDemand("async", () -> {
+            CycleContext.current().onCancel(() -> cancelled.set(true));
+            return new CompletableFuture<>(); // Never completes
+        }, 200, TimeUnit.MILLISECONDS);
+
+        task.trigger(0).get(5, TimeUnit.SECONDS);
+        assertTrue(cancelled.get());
+        assertEquals(1, task.getTimeouts());
+    }
+
+    @Test
+    public void testAsyncCycle_ShouldFinishStageWhenTimeoutPassedWhileStarting() throws Exception {
+        AtomicBoolean returned = new AtomicBoolean();
+        CollectionTask task = scheduler.createOnDemand("slow-start", () -> {
+            long end = System.currentTimeMillis() + 300;
+            while (System.currentTimeMillis() < end) {
+                try {
+                    Thread.sleep(end - System.currentTimeMillis());
+                } catch (InterruptedException ignored) {
+                }
+            }
+            returned.set(true);
+            return new CompletableFuture<>(); // Never completes
+        }, 100, TimeUnit.MILLISECONDS);
+
+        // The cycle is finished once start has returned its stage, not while start is running
+        task.trigger(0).get(5, TimeUnit.SECONDS);
+        assertTrue(returned.get());
+        assertEquals(1, task.getTimeouts());
+    }
+
+    @Test
+    public void testCycle_ShouldHoldNextCycleUntilBlockedStartReturns() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger starts = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        CountDownLatch restarted = new CountDownLatch(1);
+        CollectionTask task = scheduler.schedule("blocked", () -> {
+            if (running.incrementAndGet() > 1) {
+                overlapped.set(true);
+            }
+            try {
+                if (starts.incrementAndGet() == 1) {
+                    // Blocks past the timeout and ignores the interrupt of the cancellation
+                    while (release.getCount() > 0) {
+                        try {
+                            release.await();
+                        } catch (InterruptedException ignored) {
+                        }
+                    }
+                } else {
+                    restarted.countDown();
+                }
+            } finally {
+                running.decrementAndGet();
+            }
+            return CompletableFuture.completedFuture(null);
+        }, 0, 50, 100, OverrunPolicy.DELAY, TimeUnit.MILLISECONDS);
+
+        try {
+            // The timed out cycle is cancelled, but the next one waits until its start returns
+            assertFalse(restarted.await(400, TimeUnit.MILLISECONDS));
+            assertEquals(1, task.getTimeouts());
+            assertEquals(1, starts.get());
+            release.countDown();
+            assertTrue(restarted.await(5, TimeUnit.SECONDS));
+            assertFalse(overlapped.get());
+        } finally {
+            release.countDown();
+            task.cancel();
+        }
+    }
+
+    private static void sleep(long millis, AtomicInteger runs) {
+        runs.incrementAndGet();
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
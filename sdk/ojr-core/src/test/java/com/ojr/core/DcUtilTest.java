@@ -1,20 +1,30 @@
 package com.ojr.core;
 
+import com.ojr.core.metric.HistogramHandle;
+import com.ojr.core.metric.MetricColumns;
+import com.ojr.core.metric.MetricInstrumentType;
+import com.ojr.core.metric.RawMetric;
 import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.api.metrics.Meter;
 import io.opentelemetry.api.metrics.ObservableDoubleMeasurement;
 import io.opentelemetry.api.metrics.ObservableLongMeasurement;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.HistogramPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
 import io.opentelemetry.sdk.resources.Resource;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -31,9 +41,24 @@ public class DcUtilTest {
     @Mock
     private ObservableDoubleMeasurement observableDoubleMeasurement;
 
+    @Mock
+    private IDc<?> dc;
+
+    private TestMetricReader reader;
+    private SdkMeterProvider provider;
+
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.openMocks(this);
+        Mockito.when(dc.preRecordMetric(Mockito.any(RawMetric.class))).thenReturn(true);
+        Mockito.when(dc.preRecordMetric(Mockito.anyString(), Mockito.any(), Mockito.any())).thenReturn(true);
+        reader = new TestMetricReader();
+        provider = SdkMeterProvider.builder().registerMetricReader(reader).build();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        provider.shutdown();
     }
 
     @Test
@@ -88,6 +113,140 @@ public class DcUtilTest {
         assertEquals("value", attributes.get(AttributeKey.stringKey("key4")));
     }
 
+    @Test
+    public void testRegisterMetric_ShouldRecordHistogramThroughCachedHandles() {
+        RawMetric rawMetric = register(new RawMetric(MetricInstrumentType.HISTOGRAM, "db.sql.elapsed_time", "Elapsed time", "ms", true, "sql_id"));
+        assertNotNull(rawMetric.getLongHistogram());
+
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("sql_id", "abc");
+        HistogramHandle handle = rawMetric.getHistogramHandle(attributes);
+        assertSame(handle, rawMetric.getHistogramHandle(new HashMap<>(attributes)));
+        handle.record(10L);
+        handle.record(20L);
+
+        MetricColumns columns = new MetricColumns("sql_id");
+        columns.setAttribute(columns.addRow("abc", 30L), 0, "abc");
+        columns.setAttribute(columns.addRow("def", 5L), 0, "def");
+        rawMetric.setValues(columns);
+        rawMetric.setValues(columns);
+        assertSame(handle, rawMetric.getHistogramHandle(attributes));
+
+        Map<String, HistogramPointData> points = histogramPoints(collect().get("db.sql.elapsed_time"), "sql_id");
+        assertEquals(4, points.get("abc").getCount());
+        assertEquals(90.0, points.get("abc").getSum());
+        assertEquals(2, points.get("def").getCount());
+    }
+
+    @Test
+    public void testRegisterMetric_ShouldCheckRestrictionsOfColumnarHistogramRows() {
+        Mockito.when(dc.preRecordMetric(Mockito.anyString(), Mockito.any(), Mockito.any()))
+                .thenAnswer(invocation -> !"def".equals(((Map<?, ?>) invocation.getArgument(2)).get("sql_id")));
+        RawMetric rawMetric = register(new RawMetric(MetricInstrumentType.HISTOGRAM, "db.sql.elapsed_time", "Elapsed time", "ms", true, "sql_id"));
+
+        MetricColumns columns = new MetricColumns("sql_id");
+        columns.setAttribute(columns.addRow("abc", 30L), 0, "abc");
+        columns.setAttribute(columns.addRow("def", 5L), 0, "def");
+        rawMetric.setValues(columns);
+        Mockito.verify(dc).preRecordMetric(Mockito.eq("db.sql.elapsed_time"), Mockito.eq(30L), Mockito.any());
+
+        Map<String, HistogramPointData> points = histogramPoints(collect().get("db.sql.elapsed_time"), "sql_id");
+        assertEquals(1, points.get("abc").getCount());
+        assertFalse(points.containsKey("def"));
+    }
+
+    @Test
+    public void testGetHistogramHandle_ShouldEvictHandlesUnusedForOutdatedTime() throws InterruptedException {
+        RawMetric rawMetric = new RawMetric(MetricInstrumentType.HISTOGRAM, "db.sql.elapsed_time", "Elapsed time", "ms", true, "sql_id").setOutdatedTime(50);
+        HistogramHandle unused = rawMetric.getHistogramHandle(Collections.singletonMap("sql_id", "abc"));
+        HistogramHandle used = rawMetric.getHistogramHandle(Collections.singletonMap("sql_id", "def"));
+        Thread.sleep(60);
+        rawMetric.getHistogramHandle(Collections.singletonMap("sql_id", "ghi"));
+        assertSame(used, rawMetric.getHistogramHandle(Collections.singletonMap("sql_id", "def")));
+        Thread.sleep(60);
+
+        // The next new handle sweeps the cache, abc was not used since the previous sweep
+        rawMetric.getHistogramHandle(Collections.singletonMap("sql_id", "jkl"));
+        assertSame(used, rawMetric.getHistogramHandle(Collections.singletonMap("sql_id", "def")));
+        assertNotSame(unused, rawMetric.getHistogramHandle(Collections.singletonMap("sql_id", "abc")));
+    }
+
+    @Test
+    public void testRegisterMetric_ShouldSuppressUnchangedValuesUntilHeartbeat() throws InterruptedException {
+        RawMetric rawMetric = register(new RawMetric(MetricInstrumentType.GAUGE, "db.status", "Database status", "{status}", true, null).setHeartbeat(60000));
+        rawMetric.setLongValue(1, Collections.singletonMap("db.name", "orcl"));
+
+        assertEquals(1, collect().size());
+        rawMetric.setLongValue(1, Collections.singletonMap("db.name", "orcl"));
+        assertTrue(collect().isEmpty());
+        assertEquals(1, rawMetric.getSuppressedPoints());
+        assertTrue(rawMetric.getSuppressedBytes() > 0);
+
+        rawMetric.setLongValue(0, Collections.singletonMap("db.name", "orcl"));
+        assertEquals(0, collect().get("db.status").getLongGaugeData().getPoints().iterator().next().getValue());
+        rawMetric.setHeartbeat(1);
+        Thread.sleep(5);
+        assertEquals(1, collect().size());
+    }
+
+    @Test
+    public void testRegisterMetric_ShouldExportWindowSinceLastExport() {
+        RawMetric rawMetric = register(new RawMetric(MetricInstrumentType.GAUGE, "queue.depth", "Queue depth", "{message}", true, null).setWindowed(true));
+        for (long value : new long[]{5, 900, 20}) {
+            rawMetric.setLongValue(value, null);
+        }
+
+        Map<String, MetricData> exported = collect();
+        assertEquals(20, exported.get("queue.depth").getLongGaugeData().getPoints().iterator().next().getValue());
+        assertEquals(5.0, exported.get("queue.depth.min").getDoubleGaugeData().getPoints().iterator().next().getValue());
+        assertEquals(900.0, exported.get("queue.depth.max").getDoubleGaugeData().getPoints().iterator().next().getValue());
+        assertEquals(925.0, exported.get("queue.depth.sum").getDoubleGaugeData().getPoints().iterator().next().getValue());
+        assertEquals(3, exported.get("queue.depth.count").getLongGaugeData().getPoints().iterator().next().getValue());
+
+        rawMetric.setLongValue(7, null);
+        exported = collect();
+        assertEquals(7.0, exported.get("queue.depth.max").getDoubleGaugeData().getPoints().iterator().next().getValue());
+        assertEquals(1, exported.get("queue.depth.count").getLongGaugeData().getPoints().iterator().next().getValue());
+    }
+
+    @Test
+    public void testRegisterMetric_ShouldReadSameWindowUntilNextExport() {
+        Mockito.when(dc.getCallbackInterval()).thenReturn(60);
+        RawMetric rawMetric = register(new RawMetric(MetricInstrumentType.GAUGE, "queue.depth", "Queue depth", "{message}", true, null).setWindowed(true));
+        for (long value : new long[]{5, 900, 20}) {
+            rawMetric.setLongValue(value, null);
+        }
+        assertEquals(3, collect().get("queue.depth.count").getLongGaugeData().getPoints().iterator().next().getValue());
+
+        // A collection before the next export, e.g. a forced flush, reads the same window and does not drain the values
+        rawMetric.setLongValue(7, null);
+        assertEquals(3, collect().get("queue.depth.count").getLongGaugeData().getPoints().iterator().next().getValue());
+        assertEquals(1, rawMetric.getDataPoint(null).getWindow().getCount());
+    }
+
+    // Registers a metric with the meter provider of the test reader
+    private RawMetric register(RawMetric rawMetric) {
+        DcUtil.registerMetric(Collections.singletonMap(DcUtil.DEFAULT, provider.get(DcUtil.DEFAULT)), rawMetric, dc);
+        return rawMetric;
+    }
+
+    // Collects the metrics of the test reader by name
+    private Map<String, MetricData> collect() {
+        Map<String, MetricData> exported = new HashMap<>();
+        for (MetricData data : reader.collect()) {
+            exported.put(data.getName(), data);
+        }
+        return exported;
+    }
+
+    private static Map<String, HistogramPointData> histogramPoints(MetricData data, String key) {
+        Map<String, HistogramPointData> points = new HashMap<>();
+        for (HistogramPointData point : data.getHistogramData().getPoints()) {
+            points.put(point.getAttributes().get(AttributeKey.stringKey(key)), point);
+        }
+        return points;
+    }
+
     @Test
     public void testGetPid() {
         long pid = DcUtil.getPid();
@@ -101,4 +260,4 @@ public class DcUtilTest {
 
         assertEquals("test", decodedStr);
     }
-}
\ No newline at end of file
+}
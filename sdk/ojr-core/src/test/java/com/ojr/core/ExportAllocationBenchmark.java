@@ -0,0 +1,138 @@
+package com.ojr.core;
+
+import com.ojr.core.metric.MetricColumns;
+import com.ojr.core.metric.MetricInstrumentType;
+import com.ojr.core.metric.MetricQueryResult;
+import com.ojr.core.metric.RawMetric;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.common.export.MemoryMode;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.export.CollectionRegistration;
+import io.opentelemetry.sdk.metrics.export.MetricReader;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the bytes allocated by the collection thread per poll (recording unchanged results, as MetricQueryResults
+ * and as MetricColumns) and per export (collecting all observable metrics through the SDK).
+ * <p>
+ * Run it with "gradle exportBenchmark". Arguments: metrics, data points per metric and iterations.
+ */
+public class ExportAllocationBenchmark {
+    public static void main(String[] args) {
+        int metrics = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int dps = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+
+        ManualReader reader = new ManualReader();
+        SdkMeterProvider provider = SdkMeterProvider.builder().registerMetricReader(reader).build();
+        Meter meter = provider.get(DcUtil.DEFAULT);
+        Map<String, Meter> meters = Collections.singletonMap(DcUtil.DEFAULT, meter);
+        // A Data Collector which lets every metric be recorded
+        IDc<?> dc = (IDc<?>) Proxy.newProxyInstance(IDc.class.getClassLoader(), new Class<?>[]{IDc.class},
+                (proxy, method, arguments) -> method.getReturnType() == boolean.class ? Boolean.TRUE : null);
+
+        List<RawMetric> rawMetrics = new ArrayList<>();
+        List<List<MetricQueryResult>> results = new ArrayList<>();
+        List<MetricColumns> columns = new ArrayList<>();
+        for (int m = 0; m < metrics; m++) {
+            RawMetric rawMetric = new RawMetric(MetricInstrumentType.GAUGE, "bench.metric." + m, "Benchmark metric", "1", m % 2 == 0, "key");
+            DcUtil.registerMetric(meters, rawMetric, dc);
+            rawMetrics.add(rawMetric);
+            List<MetricQueryResult> list = new ArrayList<>();
+            for (int i = 0; i < dps; i++) {
+                MetricQueryResult result = new MetricQueryResult(i);
+                result.setKey("dp-" + i);
+                result.setAttribute("db.name", "db-" + i);
+                result.setAttribute("db.table", "table-" + (i % 10));
+                result.setAttribute("ojr.index", (long) i);
+                list.add(result);
+            }
+            results.add(list);
+            columns.add(MetricColumns.of(list));
+        }
+
+        Runnable poll = () -> {
+            for (int m = 0; m < metrics; m++) {
+                rawMetrics.get(m).setValue(results.get(m));
+            }
+        };
+        Runnable pollColumns = () -> {
+            for (int m = 0; m < metrics; m++) {
+                rawMetrics.get(m).setValues(columns.get(m));
+            }
+        };
+        Runnable export = reader::collect;
+
+        // Warm up, then measure
+        measure(poll, export, iterations / 4);
+        measure(pollColumns, export, iterations / 4);
+        long[] bytes = measure(poll, export, iterations);
+        long[] columnBytes = measure(pollColumns, export, iterations);
+        System.out.printf("metrics=%d, data points=%d, iterations=%d%n", metrics, metrics * dps, iterations);
+        System.out.printf("poll:   %,d bytes/op (%.1f bytes per data point)%n", bytes[0], (double) bytes[0] / (metrics * dps));
+        System.out.printf("poll with columns: %,d bytes/op (%.1f bytes per data point)%n", columnBytes[0], (double) columnBytes[0] / (metrics * dps));
+        System.out.printf("export: %,d bytes/op (%.1f bytes per data point)%n", bytes[1], (double) bytes[1] / (metrics * dps));
+        provider.shutdown();
+    }
+
+    private static long[] measure(Runnable poll, Runnable export, int iterations) {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long pollBytes = 0, exportBytes = 0;
+        for (int i = 0; i < iterations; i++) {
+            long start = threadMXBean.getThreadAllocatedBytes(thread);
+            poll.run();
+            long mid = threadMXBean.getThreadAllocatedBytes(thread);
+            export.run();
+            long end = threadMXBean.getThreadAllocatedBytes(thread);
+            pollBytes += mid - start;
+            exportBytes += end - mid;
+        }
+        return new long[]{pollBytes / iterations, exportBytes / iterations};
+    }
+
+    /**
+     * A pull reader collecting on demand, with reusable data so the SDK allocates as little as possible.
+     */
+    private static class ManualReader implements MetricReader {
+        private volatile CollectionRegistration registration = CollectionRegistration.noop();
+
+        void collect() {
+            registration.collectAllMetrics();
+        }
+
+        @Override
+        public void register(CollectionRegistration registration) {
+            this.registration = registration;
+        }
+
+        @Override
+        public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+            return AggregationTemporality.CUMULATIVE;
+        }
+
+        @Override
+        public MemoryMode getMemoryMode() {
+            return MemoryMode.REUSABLE_DATA;
+        }
+
+        @Override
+        public CompletableResultCode forceFlush() {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.ojr.core;
+
+import com.ojr.core.metric.MetricHandle;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricHandleTest {
+
+    @Test
+    public void testGetMetricHandle_ShouldResolveToSameRawMetric() {
+        TestDc dc = new TestDc();
+        dc.getRawMetricsMap().putAll(dc.provideInitRawMetricsMap());
+
+        MetricHandle depth = dc.getMetricHandle("queue.depth");
+        MetricHandle age = dc.getMetricHandle("queue.age");
+        assertNotEquals(depth.getIndex(), age.getIndex());
+        assertSame(depth, dc.getMetricHandle("queue.depth"));
+        assertTrue(depth.isInteger());
+        assertFalse(age.isInteger());
+        assertSame(dc.getRawMetric("queue.depth"), dc.getRawMetric(depth));
+        assertSame(dc.getRawMetric("queue.age"), dc.getRawMetric(age));
+        assertNull(dc.getMetricHandle("unknown"));
+    }
+}
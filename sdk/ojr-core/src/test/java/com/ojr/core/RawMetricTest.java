@@ -1,13 +1,27 @@
 package com.ojr.core;
 
+import com.ojr.core.metric.GenerationClock;
 import com.ojr.core.metric.MetricCalculationMode;
+import com.ojr.core.metric.MetricColumns;
 import com.ojr.core.metric.MetricInstrumentType;
 import com.ojr.core.metric.MetricQueryResult;
 import com.ojr.core.metric.RawMetric;
+import com.ojr.core.metric.SeriesBudget;
+import com.ojr.core.metric.SeriesLimiter;
+import com.ojr.core.metric.SeriesPriority;
+import com.ojr.core.schedule.CollectionScheduler;
+import com.ojr.core.schedule.CycleContext;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -44,12 +58,55 @@ public class RawMetricTest {
         assertTrue(dataPoints.containsKey("testKey2"));
     }
 
+    @Test
+    public void testPurgeOutdatedDps_ShouldRemoveOnlyExpiredDataPoints() throws InterruptedException {
+        rawMetric.setOutdatedTime(40);
+        for (int i = 0; i < 1000; i++) {
+            rawMetric.getDataPoint("q" + i).setValue(i);
+        }
+        rawMetric.getDataPoint("never-set");
+        Thread.sleep(100);
+        rawMetric.getDataPoint("q7").setValue(8);
+        rawMetric.purgeOutdatedDps();
+        assertEquals(1, rawMetric.getDataPoints().size());
+        assertTrue(rawMetric.getDataPoints().containsKey("q7"));
+
+        // Purging again visits nothing until the updated data point is outdated
+        rawMetric.purgeOutdatedDps();
+        assertTrue(rawMetric.getDataPoints().containsKey("q7"));
+    }
+
+    @Test
+    public void testSetDefaultOutdatedTime_ShouldNotOverrideExplicitOutdatedTime() {
+        rawMetric.setDefaultOutdatedTime(50000);
+        assertEquals(50000, rawMetric.getOutdatedTime());
+        rawMetric.setPollInterval(60);
+        rawMetric.setDefaultOutdatedTime(50000);
+        assertEquals(300000, rawMetric.getOutdatedTime());
+
+        rawMetric.setOutdatedTime(1000);
+        rawMetric.setDefaultOutdatedTime(50000);
+        assertEquals(1000, rawMetric.getOutdatedTime());
+    }
+
     @Test
     public void testSetOutdatedTime_ShouldSetAndGetCorrectOutdatedTime() {
         rawMetric.setOutdatedTime(1000);
         assertEquals(1000, rawMetric.getOutdatedTime());
     }
 
+    @Test
+    public void testClaimPoll_ShouldHonorPollInterval() {
+        assertTrue(rawMetric.claimPoll(1000));
+        assertTrue(rawMetric.claimPoll(2000));
+
+        rawMetric.setPollInterval(300);
+        assertEquals(1500000, rawMetric.getOutdatedTime());
+        assertTrue(rawMetric.claimPoll(1000));
+        assertFalse(rawMetric.claimPoll(26000));
+        assertTrue(rawMetric.claimPoll(301000));
+    }
+
     @Test
     public void testSetValueWithNullValue_ShouldNotSetValues() {
         rawMetric.setValue((Long)null);
@@ -73,6 +130,442 @@ public class RawMetricTest {
         assertEquals("testValue", rawMetric.getDataPoint(null).getAttributes().get("testKey"));
     }
 
+    @Test
+    public void testRead_ShouldReturnPrimitiveValueAndRate() throws InterruptedException {
+        RawMetric.DataPoint dp = rawMetric.getDataPoint("primitive");
+        RawMetric.DataPoint.Sample sample = new RawMetric.DataPoint.Sample();
+        assertFalse(dp.read(sample));
+
+        dp.setLongValue(100);
+        assertTrue(dp.read(sample));
+        assertEquals(100, sample.getLongValue());
+        assertEquals(100L, dp.getValue());
+
+        // A rate needs two values
+        rawMetric.setCalculationMode(MetricCalculationMode.RATE);
+        assertFalse(dp.read(sample));
+        Thread.sleep(20);
+        dp.setLongValue(200);
+        assertTrue(dp.read(sample));
+        assertTrue(sample.getDoubleValue() > 0 && sample.getDoubleValue() <= 5000);
+        assertEquals(sample.getDoubleValue(), dp.getDoubleValue());
+    }
+
+    @Test
+    public void testRead_ShouldNotTearConcurrentUpdates() throws InterruptedException {
+        RawMetric metric = new RawMetric(MetricInstrumentType.GAUGE, "testMetric", "This is a test metric", "unit", false, "testAttributeKey");
+        RawMetric.DataPoint dp = metric.getDataPoint("concurrent");
+        int count = 200000;
+        Thread writer = new Thread(() -> {
+            for (int i = 1; i <= count; i++) {
+                dp.setDoubleValue(i + 0.5);
+            }
+        });
+        writer.start();
+
+        RawMetric.DataPoint.Sample sample = new RawMetric.DataPoint.Sample();
+        double last = 0;
+        while (writer.isAlive() || last < count) {
+            if (dp.read(sample)) {
+                assertEquals(0.5, sample.getDoubleValue() - sample.getLongValue());
+                assertTrue(sample.getDoubleValue() >= last);
+                last = sample.getDoubleValue();
+            }
+        }
+        writer.join();
+    }
+
+    @Test
+    public void testSetAttributes_ShouldRebuildOtelAttributesOnlyOnChange() {
+        RawMetric.DataPoint dp = rawMetric.getDataPoint("attributes");
+        dp.setValue(1, Collections.singletonMap("db.name", "db1"));
+        Attributes attributes = dp.getOtelAttributes();
+        assertEquals("db1", attributes.get(AttributeKey.stringKey("db.name")));
+
+        dp.setValue(2, Collections.singletonMap("db.name", "db1"));
+        assertSame(attributes, dp.getOtelAttributes());
+
+        dp.setValue(3, Collections.singletonMap("db.name", "db2"));
+        assertEquals("db2", dp.getOtelAttributes().get(AttributeKey.stringKey("db.name")));
+        assertEquals("db2", dp.getAttributes().get("db.name"));
+
+        dp.setValue(4, null);
+        assertTrue(dp.getOtelAttributes().isEmpty());
+    }
+
+    @Test
+    public void testSetValues_ShouldUpdateDataPointsFromColumns() {
+        MetricColumns columns = new MetricColumns("queue.name");
+        for (int i = 0; i < 100; i++) {
+            int row = columns.addRow("queue" + i, (long) i);
+            columns.setAttribute(row, 0, "queue" + i);
+        }
+        rawMetric.setValues(columns);
+        assertEquals(100, rawMetric.getDataPoints().size());
+        assertEquals(42L, rawMetric.getDataPoint("queue42").getLongValue());
+        Attributes attributes = rawMetric.getDataPoint("queue42").getOtelAttributes();
+        assertEquals("queue42", attributes.get(AttributeKey.stringKey("queue.name")));
+
+        // Reused for the next poll, the unchanged attributes are kept
+        columns.clear();
+        columns.setAttribute(columns.addRow("queue42", 43.0), 0, "queue42");
+        rawMetric.setValues(columns);
+        assertEquals(43L, rawMetric.getDataPoint("queue42").getLongValue());
+        assertSame(attributes, rawMetric.getDataPoint("queue42").getOtelAttributes());
+    }
+
+    @Test
+    public void testSetValueWithResultList_ShouldMergeAttributeColumns() {
+        MetricQueryResult first = new MetricQueryResult(1).setKey("a").setAttribute("x", "1");
+        MetricQueryResult second = new MetricQueryResult(2.5).setKey("b").setAttribute("y", 2L);
+        rawMetric.setValue(Arrays.asList(first, second, new MetricQueryResult(null).setKey("c")));
+
+        assertEquals(Collections.singletonMap("x", "1"), rawMetric.getDataPoint("a").getAttributes());
+        assertEquals(Collections.singletonMap("y", 2L), rawMetric.getDataPoint("b").getAttributes());
+        assertEquals(2L, rawMetric.getDataPoint("b").getLongValue());
+        assertFalse(rawMetric.getDataPoints().containsKey("c"));
+    }
+
+    @Test
+    public void testMaxSeries_ShouldRecordNewSeriesIntoOverflowSeries() {
+        SeriesLimiter limiter = new SeriesLimiter(0);
+        rawMetric.setSeriesLimiter(limiter).setMaxSeries(2);
+        rawMetric.getDataPoint("q1").setValue(1);
+        rawMetric.getDataPoint("q2").setValue(2);
+        rawMetric.getDataPoint("q3").setValue(3);
+        rawMetric.getDataPoint("q4").setValue(4, Collections.singletonMap("queue", "q4"));
+
+        assertFalse(rawMetric.getDataPoints().containsKey("q3"));
+        RawMetric.DataPoint overflow = rawMetric.getDataPoints().get(RawMetric.OVERFLOW_KEY);
+        assertEquals(7L, overflow.getLongValue());
+        assertEquals("true", overflow.getAttributes().get(RawMetric.OVERFLOW_KEY));
+        assertEquals(2, rawMetric.getOverflowedRows());
+
+        // The overflow series sums the rows of one cycle
+        limiter.nextCycle();
+        rawMetric.getDataPoint("q5").setValue(5);
+        assertEquals(5L, overflow.getLongValue());
+    }
+
+    @Test
+    public void testMaxSeries_ShouldEvictStaleSeriesAndShareInstanceLimit() throws InterruptedException {
+        SeriesLimiter limiter = new SeriesLimiter(2);
+        RawMetric other = new RawMetric(MetricInstrumentType.GAUGE, "otherMetric", "Another metric", "unit", true, "key").setSeriesLimiter(limiter);
+        rawMetric.setSeriesLimiter(limiter).setEvictAfter(50);
+        rawMetric.getDataPoint("q1").setValue(1);
+        other.getDataPoint("x1").setValue(1);
+        assertEquals(2, limiter.getSeries());
+
+        // Limit of the instance reached, q1 is not stale yet
+        rawMetric.getDataPoint("q2").setValue(2);
+        assertTrue(rawMetric.getDataPoints().containsKey(RawMetric.OVERFLOW_KEY));
+        assertFalse(rawMetric.getDataPoints().containsKey("q2"));
+
+        Thread.sleep(100);
+        rawMetric.getDataPoint("q3").setValue(3);
+        assertTrue(rawMetric.getDataPoints().containsKey("q3"));
+        assertFalse(rawMetric.getDataPoints().containsKey("q1"));
+        assertEquals(1, rawMetric.getEvictedSeries());
+        assertEquals(2, limiter.getSeries());
+
+        rawMetric.setOutdatedTime(0);
+        Thread.sleep(10);
+        rawMetric.purgeOutdatedDps();
+        assertEquals(1, limiter.getSeries());
+    }
+
+    @Test
+    public void testOffHeap_ShouldStoreAndExportSeriesFromColumns() {
+        rawMetric.setOffHeap(true).setCalculationMode(MetricCalculationMode.DIRECT);
+        MetricColumns columns = new MetricColumns("queue");
+        for (int i = 0; i < 1000; i++) {
+            columns.setAttribute(columns.addRow("q" + i, (long) i), 0, "Q" + i);
+        }
+        rawMetric.setValues(columns);
+        rawMetric.setValues(columns);
+        assertEquals(1000, rawMetric.getOffHeapSeriesCount());
+        assertTrue(rawMetric.getDataPoints().isEmpty());
+
+        Map<String, Long> exported = new HashMap<>();
+        rawMetric.forEachOffHeapSample(new RawMetric.DataPoint.Sample(), (sample, attributes) ->
+                exported.put(attributes.get(AttributeKey.stringKey("queue")), sample.getLongValue()));
+        assertEquals(1000, exported.size());
+        assertEquals(Long.valueOf(999), exported.get("Q999"));
+    }
+
+    @Test
+    public void testOffHeap_ShouldPurgeOutdatedSeriesAndKeepTheOthers() throws InterruptedException {
+        rawMetric.setOffHeap(true).setOutdatedTime(50);
+        MetricColumns columns = new MetricColumns("queue");
+        for (int i = 0; i < 500; i++) {
+            columns.setAttribute(columns.addRow("q" + i, (long) i), 0, "Q" + i);
+        }
+        rawMetric.setValues(columns);
+        Thread.sleep(100);
+        // Update every third series, the others are outdated
+        MetricColumns updates = new MetricColumns("queue");
+        for (int i = 0; i < 500; i += 3) {
+            updates.setAttribute(updates.addRow("q" + i, (long) i * 2), 0, "Q" + i);
+        }
+        rawMetric.setValues(updates);
+
+        Map<String, Long> exported = new HashMap<>();
+        RawMetric.DataPoint.Sample sample = new RawMetric.DataPoint.Sample();
+        rawMetric.forEachOffHeapSample(sample, (s, attributes) -> exported.put(attributes.get(AttributeKey.stringKey("queue")), s.getLongValue()));
+        assertEquals(167, exported.size());
+        assertEquals(167, rawMetric.getOffHeapSeriesCount());
+        assertEquals(Long.valueOf(996), exported.get("Q498"));
+
+        // The remaining series are still found by their keys
+        rawMetric.setValues(updates);
+        assertEquals(167, rawMetric.getOffHeapSeriesCount());
+    }
+
+    @Test
+    public void testOffHeap_ShouldRecordRowsOverTheLimitIntoOverflowSeries() {
+        rawMetric.setOffHeap(true).setMaxSeries(2);
+        MetricColumns columns = new MetricColumns();
+        columns.addRow("q1", 1L);
+        columns.addRow("q2", 2L);
+        columns.addRow("q3", 3L);
+        columns.addRow("q4", 4L);
+        rawMetric.setValues(columns);
+        assertEquals(2, rawMetric.getOffHeapSeriesCount());
+        assertEquals(7L, rawMetric.getDataPoints().get(RawMetric.OVERFLOW_KEY).getLongValue());
+        assertEquals(2, rawMetric.getOverflowedRows());
+    }
+
+    @Test
+    public void testOffHeap_ShouldEvictStaleSeriesWhenFull() throws InterruptedException {
+        rawMetric.setOffHeap(true).setMaxSeries(2).setEvictAfter(50);
+        MetricColumns columns = new MetricColumns("queue");
+        columns.setAttribute(columns.addRow("q1", 1L), 0, "Q1");
+        columns.setAttribute(columns.addRow("q2", 2L), 0, "Q2");
+        rawMetric.setValues(columns);
+        Thread.sleep(60);
+
+        // q2 is updated before the new series, q1 is stale and evicted for q3
+        columns.clear();
+        columns.setAttribute(columns.addRow("q2", 20L), 0, "Q2");
+        columns.setAttribute(columns.addRow("q3", 3L), 0, "Q3");
+        columns.setAttribute(columns.addRow("q4", 4L), 0, "Q4");
+        rawMetric.setValues(columns);
+        assertEquals(2, rawMetric.getOffHeapSeriesCount());
+        assertEquals(1, rawMetric.getEvictedSeries());
+        assertEquals(4L, rawMetric.getDataPoints().get(RawMetric.OVERFLOW_KEY).getLongValue());
+        assertEquals(1, rawMetric.getOverflowedRows());
+
+        Map<String, Long> exported = new HashMap<>();
+        rawMetric.forEachOffHeapSample(new RawMetric.DataPoint.Sample(), (sample, attributes) -> exported.put(attributes.get(AttributeKey.stringKey("queue")), sample.getLongValue()));
+        assertEquals(2, exported.size());
+        assertTrue(exported.containsKey("Q2"));
+        assertTrue(exported.containsKey("Q3"));
+    }
+
+    @Test
+    public void testMaxSeries_ShouldEvictLeastRecentlyUpdatedSeries() throws InterruptedException {
+        rawMetric.setMaxSeries(3).setEvictAfter(50).setOutdatedTime(200);
+        rawMetric.getDataPoint("q1").setValue(1);
+        rawMetric.getDataPoint("q2").setValue(2);
+        Thread.sleep(60);
+        rawMetric.getDataPoint("q3").setValue(3);
+        rawMetric.getDataPoint("q1").setValue(10);
+        Thread.sleep(60);
+
+        // q2 is the only series not updated for the eviction time
+        rawMetric.getDataPoint("q4").setValue(4);
+        assertEquals(1, rawMetric.getEvictedSeries());
+        assertFalse(rawMetric.getDataPoints().containsKey("q2"));
+        assertTrue(rawMetric.getDataPoints().containsKey("q1"));
+        assertTrue(rawMetric.getDataPoints().containsKey("q4"));
+
+        // q1 and q3 were updated at the same time, the next new series evicts one of them
+        rawMetric.getDataPoint("q5").setValue(5);
+        assertEquals(2, rawMetric.getEvictedSeries());
+        assertTrue(rawMetric.getDataPoints().containsKey("q4"));
+        assertTrue(rawMetric.getDataPoints().containsKey("q5"));
+        assertFalse(rawMetric.getDataPoints().containsKey(RawMetric.OVERFLOW_KEY));
+    }
+
+    @Test
+    public void testSeriesBudget_ShouldShedLowPrioritySeriesFirst() {
+        SeriesBudget budget = new SeriesBudget(0, 10 * SeriesBudget.BYTES_PER_SERIES);
+        assertEquals(10, budget.getMaxSeries());
+        RawMetric status = new RawMetric(MetricInstrumentType.GAUGE, "db.status", "Status", "1", true, "db").setSeriesLimiter(new SeriesLimiter(0, budget));
+        rawMetric.setSeriesLimiter(new SeriesLimiter(0, budget)).setPriority(SeriesPriority.LOW);
+        assertEquals(SeriesPriority.HIGH, status.getPriority());
+
+        for (int i = 0; i < 10; i++) {
+            rawMetric.getDataPoint("q" + i).setValue(i);
+        }
+        // LOW series may use 75% of the budget
+        assertEquals(7, budget.getSeries());
+        assertEquals(3, budget.getShedRows(SeriesPriority.LOW));
+        assertTrue(rawMetric.getDataPoints().containsKey(RawMetric.OVERFLOW_KEY));
+
+        for (int i = 0; i < 5; i++) {
+            status.getDataPoint("db" + i).setValue(1);
+        }
+        assertEquals(10, budget.getSeries());
+        assertEquals(1.0, budget.getUtilization());
+        assertEquals(2, budget.getShedRows(SeriesPriority.HIGH));
+
+        rawMetric.getSeriesLimiter().release();
+        assertEquals(9, budget.getSeries());
+        assertTrue(status.getSeriesLimiter().tryAcquire(SeriesPriority.HIGH));
+    }
+
+    @Test
+    public void testGenerationClock_ShouldReadOnlyPublishedCycles() {
+        GenerationClock clock = new GenerationClock();
+        RawMetric used = new RawMetric(MetricInstrumentType.GAUGE, "used", "Used space", "By", true, "tablespace").setGenerationClock(clock);
+        RawMetric size = new RawMetric(MetricInstrumentType.GAUGE, "size", "Size", "By", true, "tablespace").setGenerationClock(clock);
+        used.getDataPoint("USERS").setValue(10);
+        size.getDataPoint("USERS").setValue(100);
+        assertEquals(10L, used.getDataPoint("USERS").getLongValue());
+
+        long generation = clock.begin();
+        used.getDataPoint("USERS").setValue(20);
+        used.getDataPoint("USERS").setValue(30);
+        used.getDataPoint("NEW").setValue(1);
+        // The running cycle is not visible yet
+        assertEquals(10L, used.getDataPoint("USERS").getLongValue());
+        assertNull(used.getDataPoint("NEW").getValue());
+
+        // A second cycle keeps the first one unpublished while it runs
+        long second = clock.begin();
+        clock.publish(second);
+        assertEquals(10L, used.getDataPoint("USERS").getLongValue());
+
+        size.getDataPoint("USERS").setValue(200);
+        clock.publish(generation);
+        assertEquals(30L, used.getDataPoint("USERS").getLongValue());
+        assertEquals(200L, size.getDataPoint("USERS").getLongValue());
+        assertEquals(1L, used.getDataPoint("NEW").getLongValue());
+    }
+
+    @Test
+    public void testGenerationClock_ShouldTagUpdatesWithGenerationOfCycle() throws InterruptedException {
+        GenerationClock clock = new GenerationClock();
+        RawMetric used = new RawMetric(MetricInstrumentType.GAUGE, "used", "Used space", "By", true, "tablespace").setGenerationClock(clock);
+        long first = clock.begin();
+        long second = clock.begin();
+        CountDownLatch latch = new CountDownLatch(1);
+        CollectionScheduler scheduler = new CollectionScheduler(1);
+        try {
+            // The older cycle updates the metric after the newer one has begun
+            scheduler.schedule("first", () -> {
+                CycleContext.current().setGeneration(first);
+                used.getDataPoint("USERS").setValue(20);
+                latch.countDown();
+            }, 0, 10000, TimeUnit.MILLISECONDS);
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } finally {
+            scheduler.shutdown();
+        }
+        assertNull(used.getDataPoint("USERS").getValue());
+
+        clock.publish(first);
+        assertEquals(first, clock.getPublished());
+        assertEquals(20L, used.getDataPoint("USERS").getLongValue());
+        clock.publish(second);
+    }
+
+    @Test
+    public void testGenerationClock_ShouldDropGenerationsOlderThanMaxAge() throws InterruptedException {
+        GenerationClock clock = new GenerationClock();
+        clock.setMaxAge(100);
+        RawMetric used = new RawMetric(MetricInstrumentType.GAUGE, "used", "Used space", "By", true, "tablespace").setGenerationClock(clock);
+        long hung = clock.begin();
+        used.getDataPoint("USERS").setValue(10);
+        assertNull(used.getDataPoint("USERS").getValue());
+        assertEquals(1, clock.getRunning());
+
+        Thread.sleep(200);
+        // The hung cycle no longer holds back the publication
+        assertEquals(10L, used.getDataPoint("USERS").getLongValue());
+        assertEquals(0, clock.getRunning());
+        long next = clock.begin();
+        clock.publish(next);
+        clock.publish(hung);
+        assertEquals(next, clock.getPublished());
+    }
+
+    @Test
+    public void testGenerationClock_ShouldComputeRateOfPublishedValues() throws InterruptedException {
+        GenerationClock clock = new GenerationClock();
+        rawMetric.setCalculationMode(MetricCalculationMode.RATE).setGenerationClock(clock);
+        RawMetric.DataPoint dp = rawMetric.getDataPoint("q1");
+        for (long value : new long[]{100, 200}) {
+            long generation = clock.begin();
+            dp.setValue(value);
+            clock.publish(generation);
+            Thread.sleep(20);
+        }
+        RawMetric.DataPoint.Sample sample = new RawMetric.DataPoint.Sample();
+        assertTrue(dp.read(sample));
+        double rate = sample.getDoubleValue();
+
+        clock.begin();
+        dp.setValue(10000);
+        assertTrue(dp.read(sample));
+        assertEquals(rate, sample.getDoubleValue());
+    }
+
+    @Test
+    public void testCounterRate_ShouldDetectWrapsAndResets() throws InterruptedException {
+        rawMetric.setCalculationMode(MetricCalculationMode.COUNTER_RATE);
+        RawMetric.DataPoint dp = rawMetric.getDataPoint("ifInOctets");
+        RawMetric.DataPoint.Sample sample = new RawMetric.DataPoint.Sample();
+        long[][] steps = {
+                {(1L << 32) - 6, 4, 10, 32}, // 32-bit wrap
+                {1000000, 3, 3, 32}, // Reset
+                {(1L << 32) - 6, 4, 4, 64}, // Reset of a 64-bit counter between 2^31 and 2^32
+                {(1L << 31) + 100, 7, 7, 64}, // Reset of a 64-bit counter between 2^31 and 2^32
+                {-10, 5, 15, 64}, // 64-bit wrap
+                {5, 105, 100, 64}
+        };
+        for (long[] step : steps) {
+            rawMetric.setCounterBits((int) step[3]);
+            dp.setLongValue(step[0]);
+            Thread.sleep(20);
+            dp.setLongValue(step[1]);
+            assertTrue(dp.read(sample));
+            // The increase over at least 20 ms, per second
+            assertTrue(sample.getDoubleValue() > 0 && sample.getDoubleValue() <= step[2] * 1000 / 20.0, step[1] + ": " + sample.getDoubleValue());
+        }
+    }
+
+    @Test
+    public void testStatefulModes_ShouldCalculateDeltaEwmaAndWindowRate() throws InterruptedException {
+        RawMetric.DataPoint dp = rawMetric.getDataPoint("sessions");
+        RawMetric.DataPoint.Sample sample = new RawMetric.DataPoint.Sample();
+        rawMetric.setCalculationMode(MetricCalculationMode.of("delta", MetricCalculationMode.DIRECT));
+        assertEquals(MetricCalculationMode.DELTA, rawMetric.getCalculationMode());
+        dp.setLongValue(10);
+        assertFalse(dp.read(sample));
+        dp.setLongValue(4);
+        assertTrue(dp.read(sample));
+        assertEquals(-6, sample.getLongValue());
+
+        rawMetric.setCalculationMode(MetricCalculationMode.EWMA).setEwmaAlpha(0.5);
+        assertFalse(dp.read(sample));
+        dp.setLongValue(10);
+        dp.setLongValue(20);
+        assertEquals(15.0, dp.getValue());
+
+        RawMetric windowed = new RawMetric(MetricInstrumentType.GAUGE, "windowed", "Windowed rate", "1/s", false, null)
+                .setCalculationMode(MetricCalculationMode.WINDOW_RATE).setRateWindow(2);
+        RawMetric.DataPoint windowedDp = windowed.getDataPoint(null);
+        for (double value : new double[]{0, 10, 20, 30}) {
+            windowedDp.setDoubleValue(value);
+            Thread.sleep(10);
+        }
+        assertTrue(windowedDp.read(sample));
+        // 20 over the last two intervals of at least 10 ms each
+        assertTrue(sample.getDoubleValue() > 0 && sample.getDoubleValue() <= 1000, String.valueOf(sample.getDoubleValue()));
+    }
+
     @Test
     public void testGetDataPoint_WithNullKey_ShouldReturnDefaultDataPoint() {
         assertNotNull(rawMetric.getDataPoint(null));
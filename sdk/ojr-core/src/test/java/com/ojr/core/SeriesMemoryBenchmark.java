@@ -0,0 +1,61 @@
+package com.ojr.core;
+
+import com.ojr.core.metric.MetricInstrumentType;
+import com.ojr.core.metric.MetricQueryResult;
+import com.ojr.core.metric.RawMetric;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the heap retained per series of a high-cardinality metric, e.g. the network interfaces of many devices with
+ * a direction each. The attribute strings are created anew for every result, as parsing a response does.
+ * <p>
+ * Run it with "gradle seriesBenchmark". Arguments: series, polls and "offheap" to store the series off the heap.
+ */
+public class SeriesMemoryBenchmark {
+    public static void main(String[] args) {
+        int series = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int polls = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        boolean offHeap = args.length > 2 && "offheap".equals(args[2]);
+        String[] directions = {"receive", "transmit"};
+
+        long before = usedHeap();
+        RawMetric rawMetric = new RawMetric(MetricInstrumentType.COUNTER, "bench.network.io", "Benchmark metric", "By", true, "device").setOffHeap(offHeap);
+        for (int poll = 0; poll < polls; poll++) {
+            List<MetricQueryResult> results = new ArrayList<>();
+            for (int i = 0; i < series; i++) {
+                String direction = directions[i % 2];
+                String device = "eth" + (i / 2);
+                MetricQueryResult result = new MetricQueryResult((long) poll * i);
+                result.setKey(device + ':' + direction);
+                result.setAttribute(new String("device"), device);
+                result.setAttribute(new String("direction"), new String(direction));
+                result.setAttribute(new String("host.name"), new String("host-1"));
+                results.add(result);
+            }
+            rawMetric.setValue(results);
+        }
+        long after = usedHeap();
+
+        System.out.printf("series=%d, polls=%d, off heap=%b%n", series, polls, offHeap);
+        System.out.printf("retained: %,d bytes (%.1f bytes per series)%n", after - before, (double) (after - before) / series);
+        int stored = rawMetric.getDataPoints().size() + rawMetric.getOffHeapSeriesCount();
+        if (stored != series) {
+            throw new IllegalStateException("Unexpected number of series: " + stored);
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
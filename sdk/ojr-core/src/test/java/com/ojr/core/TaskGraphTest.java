@@ -0,0 +1,111 @@
+package com.ojr.core;
+
+import com.ojr.core.schedule.TaskGraph;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TaskGraphTest {
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testRun_ShouldRunIndependentTasksConcurrentlyWithinCap() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        TaskGraph graph = new TaskGraph(executor, 3);
+        for (int i = 0; i < 9; i++) {
+            graph.add("query" + i, () -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(100);
+                running.decrementAndGet();
+            });
+        }
+
+        long start = System.currentTimeMillis();
+        assertTrue(graph.run(5000));
+        long elapsed = System.currentTimeMillis() - start;
+        assertEquals(3, peak.get());
+        assertTrue(elapsed < 800, "elapsed: " + elapsed);
+        assertEquals(9, graph.getDurations().size());
+    }
+
+    @Test
+    public void testRun_ShouldHonorDependenciesAndSkipAfterFailure() {
+        List<String> order = new CopyOnWriteArrayList<>();
+        TaskGraph graph = new TaskGraph(executor, 4)
+                .add("version", () -> order.add("version"))
+                .add("sessions", () -> order.add("sessions"), "version")
+                .add("broken", () -> {
+                    throw new IllegalStateException("query failed");
+                })
+                .add("details", () -> order.add("details"), "broken", "version");
+
+        assertFalse(graph.run(5000));
+        assertEquals(2, order.size());
+        assertTrue(order.indexOf("version") < order.indexOf("sessions"));
+        assertTrue(graph.getFailures().containsKey("broken"));
+        assertTrue(graph.getSkipped().contains("details"));
+    }
+
+    @Test
+    public void testRun_ShouldProgressWhenExecutorIsBusy() {
+        ExecutorService busy = Executors.newSingleThreadExecutor();
+        try {
+            busy.execute(() -> {
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            AtomicInteger runs = new AtomicInteger();
+            TaskGraph graph = new TaskGraph(busy, 2).add("a", runs::incrementAndGet).add("b", runs::incrementAndGet, "a");
+
+            assertTrue(graph.run(1000));
+            assertEquals(2, runs.get());
+        } finally {
+            busy.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRunTaskGraph_ShouldReplaceDurationsOfPreviousGraph() {
+        TestDc dc = new TestDc();
+        assertTrue(dc.runTaskGraph(new TaskGraph(executor, 2).add("a", () -> {
+        }).add("b", () -> {
+        })));
+        assertEquals(2, dc.getTaskDurations().size());
+
+        assertTrue(dc.runTaskGraph(new TaskGraph(executor, 2).add("c", () -> {
+        })));
+        assertEquals(1, dc.getTaskDurations().size());
+        assertTrue(dc.getTaskDurations().containsKey("c"));
+    }
+
+    @Test
+    public void testRun_ShouldRejectCycles() {
+        TaskGraph graph = new TaskGraph(executor, 2).add("a", () -> {
+        }, "b").add("b", () -> {
+        }, "a");
+        assertThrows(IllegalArgumentException.class, () -> graph.run(1000));
+    }
+}
@@ -0,0 +1,37 @@
+package com.ojr.core;
+
+import com.ojr.core.metric.MetricInstrumentType;
+import com.ojr.core.metric.RawMetric;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A Data Collector with a few metrics and no collection, for the tests of AbstractDc.
+ */
+class TestDc extends AbstractDc<BasicDcConfig> {
+    @Override
+    public Map<String, RawMetric> provideInitRawMetricsMap() {
+        Map<String, RawMetric> map = new HashMap<>();
+        map.put("queue.depth", new RawMetric(MetricInstrumentType.GAUGE, "queue.depth", "Queue depth", "{message}", true, "queue"));
+        map.put("queue.age", new RawMetric(MetricInstrumentType.GAUGE, "queue.age", "Queue age", "s", false, "queue"));
+        map.put("message.latency", new RawMetric(MetricInstrumentType.HISTOGRAM, "message.latency", "Message latency", "ms", false, "queue"));
+        return map;
+    }
+
+    @Override
+    public void enrichResourceAttributes(ResourceEnricher enricher) {
+    }
+
+    @Override
+    public void readExtraParameters(Map<String, Object> properties, BasicDcConfig config) {
+    }
+
+    @Override
+    public void processParameters(Map<String, Object> properties, BasicDcConfig config) {
+    }
+
+    @Override
+    public void collectData() {
+    }
+}
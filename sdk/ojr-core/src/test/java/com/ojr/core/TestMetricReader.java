@@ -0,0 +1,41 @@
+package com.ojr.core;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.CollectionRegistration;
+import io.opentelemetry.sdk.metrics.export.MetricReader;
+
+import java.util.Collection;
+
+/**
+ * A reader collecting the metrics on demand, for the tests of the registered instruments.
+ */
+class TestMetricReader implements MetricReader {
+    private volatile CollectionRegistration registration = CollectionRegistration.noop();
+
+    Collection<MetricData> collect() {
+        return registration.collectAllMetrics();
+    }
+
+    @Override
+    public void register(CollectionRegistration registration) {
+        this.registration = registration;
+    }
+
+    @Override
+    public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+        return AggregationTemporality.CUMULATIVE;
+    }
+
+    @Override
+    public CompletableResultCode forceFlush() {
+        return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        return CompletableResultCode.ofSuccess();
+    }
+}